@@ -23,7 +23,8 @@ public class SVMParser extends Parser {
 		PUSH=1, POP=2, ADD=3, SUB=4, MULT=5, DIV=6, STOREW=7, LOADW=8, BRANCH=9, 
 		BRANCHEQ=10, BRANCHLESSEQ=11, JS=12, LOADRA=13, STORERA=14, LOADTM=15, 
 		STORETM=16, LOADFP=17, STOREFP=18, COPYFP=19, LOADHP=20, STOREHP=21, PRINT=22, 
-		HALT=23, COL=24, LABEL=25, INTEGER=26, COMMENT=27, WHITESP=28, ERR=29;
+		HALT=23, ALLOC=24, GETFIELD=25, INVOKEVIRTUAL=26, FORK=27, JOIN=28, DATA=29, 
+		COL=30, LABEL=31, INTEGER=32, COMMENT=33, WHITESP=34, ERR=35;
 	public static final int
 		RULE_assembly = 0, RULE_instruction = 1;
 	private static String[] makeRuleNames() {
@@ -38,6 +39,7 @@ public class SVMParser extends Parser {
 			null, "'push'", "'pop'", "'add'", "'sub'", "'mult'", "'div'", "'sw'", 
 			"'lw'", "'b'", "'beq'", "'bleq'", "'js'", "'lra'", "'sra'", "'ltm'", 
 			"'stm'", "'lfp'", "'sfp'", "'cfp'", "'lhp'", "'shp'", "'print'", "'halt'", 
+			"'alloc'", "'getfield'", "'invokevirtual'", "'fork'", "'join'", "'data'", 
 			"':'"
 		};
 	}
@@ -47,7 +49,8 @@ public class SVMParser extends Parser {
 			null, "PUSH", "POP", "ADD", "SUB", "MULT", "DIV", "STOREW", "LOADW", 
 			"BRANCH", "BRANCHEQ", "BRANCHLESSEQ", "JS", "LOADRA", "STORERA", "LOADTM", 
 			"STORETM", "LOADFP", "STOREFP", "COPYFP", "LOADHP", "STOREHP", "PRINT", 
-			"HALT", "COL", "LABEL", "INTEGER", "COMMENT", "WHITESP", "ERR"
+			"HALT", "ALLOC", "GETFIELD", "INVOKEVIRTUAL", "FORK", "JOIN", "DATA", 
+			"COL", "LABEL", "INTEGER", "COMMENT", "WHITESP", "ERR"
 		};
 	}
 	private static final String[] _SYMBOLIC_NAMES = makeSymbolicNames();
@@ -102,6 +105,21 @@ public class SVMParser extends Parser {
 	private Map<String,Integer> labelDef = new HashMap<>();
 	private Map<Integer,String> labelRef = new HashMap<>();
 
+	public int[] data; // segmento dati, copiato all'inizio dello heap prima dell'esecuzione
+	private List<Integer> dataWords = new ArrayList<>();
+	private Map<Integer,String> dataLabelRef = new HashMap<>();
+
+	private void emit(int word) {
+	    if (i == code.length) code = Arrays.copyOf(code, 2 * code.length);
+	    code[i++] = word;
+	}
+
+	public int codeSize() { return i; }
+	public Integer labelAddress(String label) { return labelDef.get(label); }
+	// posizioni di code e data che contengono indirizzi di codice (label risolte)
+	public Set<Integer> codeAddressRefs() { return labelRef.keySet(); }
+	public Set<Integer> dataAddressRefs() { return dataLabelRef.keySet(); }
+
 	public SVMParser(TokenStream input) {
 		super(input);
 		_interp = new ParserATNSimulator(this,_ATN,_decisionToDFA,_sharedContextCache);
@@ -145,7 +163,7 @@ public class SVMParser extends Parser {
 			setState(7);
 			_errHandler.sync(this);
 			_la = _input.LA(1);
-			while ((((_la) & ~0x3f) == 0 && ((1L << _la) & 50331646L) != 0)) {
+			while ((((_la) & ~0x3f) == 0 && ((1L << _la) & 3221225470L) != 0)) {
 				{
 				{
 				setState(4);
@@ -160,6 +178,10 @@ public class SVMParser extends Parser {
 			match(EOF);
 			 for (Integer j: labelRef.keySet()) 
 											code[j]=labelDef.get(labelRef.get(j)); 
+										  for (Integer j: dataLabelRef.keySet())
+											dataWords.set(j,labelDef.get(dataLabelRef.get(j)));
+										  data = new int[dataWords.size()];
+										  for (int j = 0; j < data.length; j++) data[j] = dataWords.get(j);
 										
 			}
 		}
@@ -204,6 +226,12 @@ public class SVMParser extends Parser {
 		public TerminalNode STOREHP() { return getToken(SVMParser.STOREHP, 0); }
 		public TerminalNode PRINT() { return getToken(SVMParser.PRINT, 0); }
 		public TerminalNode HALT() { return getToken(SVMParser.HALT, 0); }
+		public TerminalNode ALLOC() { return getToken(SVMParser.ALLOC, 0); }
+		public TerminalNode GETFIELD() { return getToken(SVMParser.GETFIELD, 0); }
+		public TerminalNode INVOKEVIRTUAL() { return getToken(SVMParser.INVOKEVIRTUAL, 0); }
+		public TerminalNode FORK() { return getToken(SVMParser.FORK, 0); }
+		public TerminalNode JOIN() { return getToken(SVMParser.JOIN, 0); }
+		public TerminalNode DATA() { return getToken(SVMParser.DATA, 0); }
 		public InstructionContext(ParserRuleContext parent, int invokingState) {
 			super(parent, invokingState);
 		}
@@ -227,7 +255,7 @@ public class SVMParser extends Parser {
 		InstructionContext _localctx = new InstructionContext(_ctx, getState());
 		enterRule(_localctx, 2, RULE_instruction);
 		try {
-			setState(69);
+			setState(90);
 			_errHandler.sync(this);
 			switch ( getInterpreter().adaptivePredict(_input,1,_ctx) ) {
 			case 1:
@@ -237,8 +265,8 @@ public class SVMParser extends Parser {
 				match(PUSH);
 				setState(14);
 				((InstructionContext)_localctx).n = match(INTEGER);
-				code[i++] = PUSH; 
-							              code[i++] = Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null));
+				emit(PUSH); 
+							              emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
 				}
 				break;
 			case 2:
@@ -248,8 +276,8 @@ public class SVMParser extends Parser {
 				match(PUSH);
 				setState(17);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = PUSH; 
-					    		             labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(PUSH); 
+					    		             labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 3:
@@ -257,7 +285,7 @@ public class SVMParser extends Parser {
 				{
 				setState(19);
 				match(POP);
-				code[i++] = POP;
+				emit(POP);
 				}
 				break;
 			case 4:
@@ -265,7 +293,7 @@ public class SVMParser extends Parser {
 				{
 				setState(21);
 				match(ADD);
-				code[i++] = ADD;
+				emit(ADD);
 				}
 				break;
 			case 5:
@@ -273,7 +301,7 @@ public class SVMParser extends Parser {
 				{
 				setState(23);
 				match(SUB);
-				code[i++] = SUB;
+				emit(SUB);
 				}
 				break;
 			case 6:
@@ -281,7 +309,7 @@ public class SVMParser extends Parser {
 				{
 				setState(25);
 				match(MULT);
-				code[i++] = MULT;
+				emit(MULT);
 				}
 				break;
 			case 7:
@@ -289,7 +317,7 @@ public class SVMParser extends Parser {
 				{
 				setState(27);
 				match(DIV);
-				code[i++] = DIV;
+				emit(DIV);
 				}
 				break;
 			case 8:
@@ -297,7 +325,7 @@ public class SVMParser extends Parser {
 				{
 				setState(29);
 				match(STOREW);
-				code[i++] = STOREW;
+				emit(STOREW);
 				}
 				break;
 			case 9:
@@ -305,7 +333,7 @@ public class SVMParser extends Parser {
 				{
 				setState(31);
 				match(LOADW);
-				code[i++] = LOADW;
+				emit(LOADW);
 				}
 				break;
 			case 10:
@@ -325,8 +353,8 @@ public class SVMParser extends Parser {
 				match(BRANCH);
 				setState(37);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = BRANCH;
-				                       labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(BRANCH);
+				                       labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 12:
@@ -336,8 +364,8 @@ public class SVMParser extends Parser {
 				match(BRANCHEQ);
 				setState(40);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = BRANCHEQ;
-				                        labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(BRANCHEQ);
+				                        labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 13:
@@ -347,8 +375,8 @@ public class SVMParser extends Parser {
 				match(BRANCHLESSEQ);
 				setState(43);
 				((InstructionContext)_localctx).l = match(LABEL);
-				code[i++] = BRANCHLESSEQ;
-				                          labelRef.put(i++,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+				emit(BRANCHLESSEQ);
+				                          labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
 				}
 				break;
 			case 14:
@@ -356,7 +384,7 @@ public class SVMParser extends Parser {
 				{
 				setState(45);
 				match(JS);
-				code[i++] = JS;
+				emit(JS);
 				}
 				break;
 			case 15:
@@ -364,7 +392,7 @@ public class SVMParser extends Parser {
 				{
 				setState(47);
 				match(LOADRA);
-				code[i++] = LOADRA;
+				emit(LOADRA);
 				}
 				break;
 			case 16:
@@ -372,7 +400,7 @@ public class SVMParser extends Parser {
 				{
 				setState(49);
 				match(STORERA);
-				code[i++] = STORERA;
+				emit(STORERA);
 				}
 				break;
 			case 17:
@@ -380,7 +408,7 @@ public class SVMParser extends Parser {
 				{
 				setState(51);
 				match(LOADTM);
-				code[i++] = LOADTM;
+				emit(LOADTM);
 				}
 				break;
 			case 18:
@@ -388,7 +416,7 @@ public class SVMParser extends Parser {
 				{
 				setState(53);
 				match(STORETM);
-				code[i++] = STORETM;
+				emit(STORETM);
 				}
 				break;
 			case 19:
@@ -396,7 +424,7 @@ public class SVMParser extends Parser {
 				{
 				setState(55);
 				match(LOADFP);
-				code[i++] = LOADFP;
+				emit(LOADFP);
 				}
 				break;
 			case 20:
@@ -404,7 +432,7 @@ public class SVMParser extends Parser {
 				{
 				setState(57);
 				match(STOREFP);
-				code[i++] = STOREFP;
+				emit(STOREFP);
 				}
 				break;
 			case 21:
@@ -412,7 +440,7 @@ public class SVMParser extends Parser {
 				{
 				setState(59);
 				match(COPYFP);
-				code[i++] = COPYFP;
+				emit(COPYFP);
 				}
 				break;
 			case 22:
@@ -420,7 +448,7 @@ public class SVMParser extends Parser {
 				{
 				setState(61);
 				match(LOADHP);
-				code[i++] = LOADHP;
+				emit(LOADHP);
 				}
 				break;
 			case 23:
@@ -428,7 +456,7 @@ public class SVMParser extends Parser {
 				{
 				setState(63);
 				match(STOREHP);
-				code[i++] = STOREHP;
+				emit(STOREHP);
 				}
 				break;
 			case 24:
@@ -436,7 +464,7 @@ public class SVMParser extends Parser {
 				{
 				setState(65);
 				match(PRINT);
-				code[i++] = PRINT;
+				emit(PRINT);
 				}
 				break;
 			case 25:
@@ -444,7 +472,83 @@ public class SVMParser extends Parser {
 				{
 				setState(67);
 				match(HALT);
-				code[i++] = HALT;
+				emit(HALT);
+				}
+				break;
+			case 26:
+				enterOuterAlt(_localctx, 26);
+				{
+				setState(69);
+				match(ALLOC);
+				setState(70);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(ALLOC);
+					                     emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 27:
+				enterOuterAlt(_localctx, 27);
+				{
+				setState(72);
+				match(GETFIELD);
+				setState(73);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(GETFIELD);
+					                        emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 28:
+				enterOuterAlt(_localctx, 28);
+				{
+				setState(75);
+				match(INVOKEVIRTUAL);
+				setState(76);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(INVOKEVIRTUAL);
+					                             emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 29:
+				enterOuterAlt(_localctx, 29);
+				{
+				setState(78);
+				match(FORK);
+				setState(79);
+				((InstructionContext)_localctx).l = match(LABEL);
+				emit(FORK);
+					                     labelRef.put(i,(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null)); emit(0);
+				}
+				break;
+			case 30:
+				enterOuterAlt(_localctx, 30);
+				{
+				setState(81);
+				match(JOIN);
+				setState(82);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				emit(JOIN);
+					                     emit(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 31:
+				enterOuterAlt(_localctx, 31);
+				{
+				setState(84);
+				match(DATA);
+				setState(85);
+				((InstructionContext)_localctx).n = match(INTEGER);
+				dataWords.add(Integer.parseInt((((InstructionContext)_localctx).n!=null?((InstructionContext)_localctx).n.getText():null)));
+				}
+				break;
+			case 32:
+				enterOuterAlt(_localctx, 32);
+				{
+				setState(87);
+				match(DATA);
+				setState(88);
+				((InstructionContext)_localctx).l = match(LABEL);
+				dataLabelRef.put(dataWords.size(),(((InstructionContext)_localctx).l!=null?((InstructionContext)_localctx).l.getText():null));
+					                     dataWords.add(0);
 				}
 				break;
 			}
@@ -461,9 +565,13 @@ public class SVMParser extends Parser {
 	}
 
 	public static final String _serializedATN =
-		"\u0004\u0001\u001dH\u0002\u0000\u0007\u0000\u0002\u0001\u0007\u0001\u0001"+
-		"\u0000\u0005\u0000\u0006\b\u0000\n\u0000\f\u0000\t\t\u0000\u0001\u0000"+
-		"\u0001\u0000\u0001\u0000\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0004\u0001#]\u0002\u0000\u0007\u0000\u0002\u0001\u0007\u0001\u0001\u0000"+
+		"\u0005\u0000\u0006\b\u0000\n\u0000\f\u0000\t\t\u0000\u0001\u0000\u0001"+
+		"\u0000\u0001\u0000\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
+		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
@@ -472,48 +580,58 @@ public class SVMParser extends Parser {
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
 		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001"+
-		"\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0001\u0003\u0001F\b\u0001"+
-		"\u0001\u0001\u0000\u0000\u0002\u0000\u0002\u0000\u0000^\u0000\u0007\u0001"+
-		"\u0000\u0000\u0000\u0002E\u0001\u0000\u0000\u0000\u0004\u0006\u0003\u0002"+
-		"\u0001\u0000\u0005\u0004\u0001\u0000\u0000\u0000\u0006\t\u0001\u0000\u0000"+
-		"\u0000\u0007\u0005\u0001\u0000\u0000\u0000\u0007\b\u0001\u0000\u0000\u0000"+
-		"\b\n\u0001\u0000\u0000\u0000\t\u0007\u0001\u0000\u0000\u0000\n\u000b\u0005"+
-		"\u0000\u0000\u0001\u000b\f\u0006\u0000\uffff\uffff\u0000\f\u0001\u0001"+
-		"\u0000\u0000\u0000\r\u000e\u0005\u0001\u0000\u0000\u000e\u000f\u0005\u001a"+
-		"\u0000\u0000\u000fF\u0006\u0001\uffff\uffff\u0000\u0010\u0011\u0005\u0001"+
-		"\u0000\u0000\u0011\u0012\u0005\u0019\u0000\u0000\u0012F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0013\u0014\u0005\u0002\u0000\u0000\u0014F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0015\u0016\u0005\u0003\u0000\u0000\u0016F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0017\u0018\u0005\u0004\u0000\u0000\u0018F\u0006\u0001\uffff"+
-		"\uffff\u0000\u0019\u001a\u0005\u0005\u0000\u0000\u001aF\u0006\u0001\uffff"+
-		"\uffff\u0000\u001b\u001c\u0005\u0006\u0000\u0000\u001cF\u0006\u0001\uffff"+
-		"\uffff\u0000\u001d\u001e\u0005\u0007\u0000\u0000\u001eF\u0006\u0001\uffff"+
-		"\uffff\u0000\u001f \u0005\b\u0000\u0000 F\u0006\u0001\uffff\uffff\u0000"+
-		"!\"\u0005\u0019\u0000\u0000\"#\u0005\u0018\u0000\u0000#F\u0006\u0001\uffff"+
-		"\uffff\u0000$%\u0005\t\u0000\u0000%&\u0005\u0019\u0000\u0000&F\u0006\u0001"+
-		"\uffff\uffff\u0000\'(\u0005\n\u0000\u0000()\u0005\u0019\u0000\u0000)F"+
-		"\u0006\u0001\uffff\uffff\u0000*+\u0005\u000b\u0000\u0000+,\u0005\u0019"+
-		"\u0000\u0000,F\u0006\u0001\uffff\uffff\u0000-.\u0005\f\u0000\u0000.F\u0006"+
-		"\u0001\uffff\uffff\u0000/0\u0005\r\u0000\u00000F\u0006\u0001\uffff\uffff"+
-		"\u000012\u0005\u000e\u0000\u00002F\u0006\u0001\uffff\uffff\u000034\u0005"+
-		"\u000f\u0000\u00004F\u0006\u0001\uffff\uffff\u000056\u0005\u0010\u0000"+
-		"\u00006F\u0006\u0001\uffff\uffff\u000078\u0005\u0011\u0000\u00008F\u0006"+
-		"\u0001\uffff\uffff\u00009:\u0005\u0012\u0000\u0000:F\u0006\u0001\uffff"+
-		"\uffff\u0000;<\u0005\u0013\u0000\u0000<F\u0006\u0001\uffff\uffff\u0000"+
-		"=>\u0005\u0014\u0000\u0000>F\u0006\u0001\uffff\uffff\u0000?@\u0005\u0015"+
-		"\u0000\u0000@F\u0006\u0001\uffff\uffff\u0000AB\u0005\u0016\u0000\u0000"+
-		"BF\u0006\u0001\uffff\uffff\u0000CD\u0005\u0017\u0000\u0000DF\u0006\u0001"+
-		"\uffff\uffff\u0000E\r\u0001\u0000\u0000\u0000E\u0010\u0001\u0000\u0000"+
-		"\u0000E\u0013\u0001\u0000\u0000\u0000E\u0015\u0001\u0000\u0000\u0000E"+
-		"\u0017\u0001\u0000\u0000\u0000E\u0019\u0001\u0000\u0000\u0000E\u001b\u0001"+
-		"\u0000\u0000\u0000E\u001d\u0001\u0000\u0000\u0000E\u001f\u0001\u0000\u0000"+
-		"\u0000E!\u0001\u0000\u0000\u0000E$\u0001\u0000\u0000\u0000E\'\u0001\u0000"+
-		"\u0000\u0000E*\u0001\u0000\u0000\u0000E-\u0001\u0000\u0000\u0000E/\u0001"+
-		"\u0000\u0000\u0000E1\u0001\u0000\u0000\u0000E3\u0001\u0000\u0000\u0000"+
-		"E5\u0001\u0000\u0000\u0000E7\u0001\u0000\u0000\u0000E9\u0001\u0000\u0000"+
-		"\u0000E;\u0001\u0000\u0000\u0000E=\u0001\u0000\u0000\u0000E?\u0001\u0000"+
-		"\u0000\u0000EA\u0001\u0000\u0000\u0000EC\u0001\u0000\u0000\u0000F\u0003"+
-		"\u0001\u0000\u0000\u0000\u0002\u0007E";
+		"\u0001\u0003\u0001[\b\u0001\u0001\u0001\u0000\u0000\u0002\u0000\u0002"+
+		"\u0000\u0000z\u0000\u0007\u0001\u0000\u0000\u0000\u0002Z\u0001\u0000\u0000"+
+		"\u0000\u0004\u0006\u0003\u0002\u0001\u0000\u0005\u0004\u0001\u0000\u0000"+
+		"\u0000\u0006\t\u0001\u0000\u0000\u0000\u0007\u0005\u0001\u0000\u0000\u0000"+
+		"\u0007\b\u0001\u0000\u0000\u0000\b\n\u0001\u0000\u0000\u0000\t\u0007\u0001"+
+		"\u0000\u0000\u0000\n\u000b\u0005\u0000\u0000\u0001\u000b\f\u0006\u0000"+
+		"\uffff\uffff\u0000\f\u0001\u0001\u0000\u0000\u0000\r\u000e\u0005\u0001"+
+		"\u0000\u0000\u000e\u000f\u0005 \u0000\u0000\u000f[\u0006\u0001\uffff\uffff"+
+		"\u0000\u0010\u0011\u0005\u0001\u0000\u0000\u0011\u0012\u0005\u001f\u0000"+
+		"\u0000\u0012[\u0006\u0001\uffff\uffff\u0000\u0013\u0014\u0005\u0002\u0000"+
+		"\u0000\u0014[\u0006\u0001\uffff\uffff\u0000\u0015\u0016\u0005\u0003\u0000"+
+		"\u0000\u0016[\u0006\u0001\uffff\uffff\u0000\u0017\u0018\u0005\u0004\u0000"+
+		"\u0000\u0018[\u0006\u0001\uffff\uffff\u0000\u0019\u001a\u0005\u0005\u0000"+
+		"\u0000\u001a[\u0006\u0001\uffff\uffff\u0000\u001b\u001c\u0005\u0006\u0000"+
+		"\u0000\u001c[\u0006\u0001\uffff\uffff\u0000\u001d\u001e\u0005\u0007\u0000"+
+		"\u0000\u001e[\u0006\u0001\uffff\uffff\u0000\u001f \u0005\b\u0000\u0000"+
+		" [\u0006\u0001\uffff\uffff\u0000!\"\u0005\u001f\u0000\u0000\"#\u0005\u001e"+
+		"\u0000\u0000#[\u0006\u0001\uffff\uffff\u0000$%\u0005\t\u0000\u0000%&\u0005"+
+		"\u001f\u0000\u0000&[\u0006\u0001\uffff\uffff\u0000\'(\u0005\n\u0000\u0000"+
+		"()\u0005\u001f\u0000\u0000)[\u0006\u0001\uffff\uffff\u0000*+\u0005\u000b"+
+		"\u0000\u0000+,\u0005\u001f\u0000\u0000,[\u0006\u0001\uffff\uffff\u0000"+
+		"-.\u0005\f\u0000\u0000.[\u0006\u0001\uffff\uffff\u0000/0\u0005\r\u0000"+
+		"\u00000[\u0006\u0001\uffff\uffff\u000012\u0005\u000e\u0000\u00002[\u0006"+
+		"\u0001\uffff\uffff\u000034\u0005\u000f\u0000\u00004[\u0006\u0001\uffff"+
+		"\uffff\u000056\u0005\u0010\u0000\u00006[\u0006\u0001\uffff\uffff\u0000"+
+		"78\u0005\u0011\u0000\u00008[\u0006\u0001\uffff\uffff\u00009:\u0005\u0012"+
+		"\u0000\u0000:[\u0006\u0001\uffff\uffff\u0000;<\u0005\u0013\u0000\u0000"+
+		"<[\u0006\u0001\uffff\uffff\u0000=>\u0005\u0014\u0000\u0000>[\u0006\u0001"+
+		"\uffff\uffff\u0000?@\u0005\u0015\u0000\u0000@[\u0006\u0001\uffff\uffff"+
+		"\u0000AB\u0005\u0016\u0000\u0000B[\u0006\u0001\uffff\uffff\u0000CD\u0005"+
+		"\u0017\u0000\u0000D[\u0006\u0001\uffff\uffff\u0000EF\u0005\u0018\u0000"+
+		"\u0000FG\u0005 \u0000\u0000G[\u0006\u0001\uffff\uffff\u0000HI\u0005\u0019"+
+		"\u0000\u0000IJ\u0005 \u0000\u0000J[\u0006\u0001\uffff\uffff\u0000KL\u0005"+
+		"\u001a\u0000\u0000LM\u0005 \u0000\u0000M[\u0006\u0001\uffff\uffff\u0000"+
+		"NO\u0005\u001b\u0000\u0000OP\u0005\u001f\u0000\u0000P[\u0006\u0001\uffff"+
+		"\uffff\u0000QR\u0005\u001c\u0000\u0000RS\u0005 \u0000\u0000S[\u0006\u0001"+
+		"\uffff\uffff\u0000TU\u0005\u001d\u0000\u0000UV\u0005 \u0000\u0000V[\u0006"+
+		"\u0001\uffff\uffff\u0000WX\u0005\u001d\u0000\u0000XY\u0005\u001f\u0000"+
+		"\u0000Y[\u0006\u0001\uffff\uffff\u0000Z\r\u0001\u0000\u0000\u0000Z\u0010"+
+		"\u0001\u0000\u0000\u0000Z\u0013\u0001\u0000\u0000\u0000Z\u0015\u0001\u0000"+
+		"\u0000\u0000Z\u0017\u0001\u0000\u0000\u0000Z\u0019\u0001\u0000\u0000\u0000"+
+		"Z\u001b\u0001\u0000\u0000\u0000Z\u001d\u0001\u0000\u0000\u0000Z\u001f"+
+		"\u0001\u0000\u0000\u0000Z!\u0001\u0000\u0000\u0000Z$\u0001\u0000\u0000"+
+		"\u0000Z\'\u0001\u0000\u0000\u0000Z*\u0001\u0000\u0000\u0000Z-\u0001\u0000"+
+		"\u0000\u0000Z/\u0001\u0000\u0000\u0000Z1\u0001\u0000\u0000\u0000Z3\u0001"+
+		"\u0000\u0000\u0000Z5\u0001\u0000\u0000\u0000Z7\u0001\u0000\u0000\u0000"+
+		"Z9\u0001\u0000\u0000\u0000Z;\u0001\u0000\u0000\u0000Z=\u0001\u0000\u0000"+
+		"\u0000Z?\u0001\u0000\u0000\u0000ZA\u0001\u0000\u0000\u0000ZC\u0001\u0000"+
+		"\u0000\u0000ZE\u0001\u0000\u0000\u0000ZH\u0001\u0000\u0000\u0000ZK\u0001"+
+		"\u0000\u0000\u0000ZN\u0001\u0000\u0000\u0000ZQ\u0001\u0000\u0000\u0000"+
+		"ZT\u0001\u0000\u0000\u0000ZW\u0001\u0000\u0000\u0000[\u0003\u0001\u0000"+
+		"\u0000\u0000\u0002\u0007Z";
 	public static final ATN _ATN =
 		new ATNDeserializer().deserialize(_serializedATN.toCharArray());
 	static {
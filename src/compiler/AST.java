@@ -46,6 +46,7 @@ public class AST {
 		final List<ParNode> parlist;//lista di parametri
 		final List<DecNode> declist; //lista di dichiarazioni locali (quello che è dentro il let)
 		final Node exp; // corpo della funzione
+		STentry entry; // dichiarazione della funzione, per il grafo delle chiamate
 		FunNode(String i, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
 	    	id=i; 
 	    	retType=rt; 
@@ -208,6 +209,7 @@ public class AST {
 		final List<Node> arglist;
 		STentry entry;
 		int nl;
+		boolean[] forkArgs; // argomenti da valutare in parallelo (vedi ParallelismASTVisitor), null se nessuno
 		CallNode(String i, List<Node> p) {
 			id = i; 
 			arglist = Collections.unmodifiableList(p);
@@ -228,7 +230,7 @@ public class AST {
 	}
 	
 	public static class BoolNode extends Node {
-		final Boolean val;
+		final boolean val;
 		BoolNode(boolean n) {val = n;}
 
 		@Override
@@ -236,8 +238,8 @@ public class AST {
 	}
 	
 	public static class IntNode extends Node {
-		final Integer val;
-		IntNode(Integer n) {val = n;}
+		final int val;
+		IntNode(int n) {val = n;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -367,6 +369,7 @@ public class AST {
 		STentry entry; //first identifier
 		STentry methodEntry; //second identifier
 		int nestingLevel;
+		boolean[] forkArgs; // argomenti da valutare in parallelo (vedi ParallelismASTVisitor), null se nessuno
 
 		public ClassCallNode(String id1, String id2, List<Node> args) {
 			this.id1 = id1;
@@ -402,10 +405,12 @@ public class AST {
 	}
 
 	public static class ClassTypeNode extends TypeNode {
-		final List<TypeNode> allFields;
-		final List<ArrowTypeNode> allMethods;
+		// persistenti: quelli di una sottoclasse condividono la struttura con quelli della superclasse.
+		// SymbolTableASTVisitor li aggiorna mentre visita la classe, poi non cambiano più
+		PersistentVector<TypeNode> allFields;
+		PersistentVector<ArrowTypeNode> allMethods;
 
-		public ClassTypeNode(List<TypeNode> fields, List<ArrowTypeNode> methods) {
+		public ClassTypeNode(PersistentVector<TypeNode> fields, PersistentVector<ArrowTypeNode> methods) {
 			this.allFields = fields;
 			this.allMethods = methods;
 		}
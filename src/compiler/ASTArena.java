@@ -0,0 +1,220 @@
+package compiler;
+
+import java.util.*;
+import compiler.AST.*;
+import compiler.lib.*;
+
+import static compiler.lib.NodeKind.*;
+
+/**
+ * AST piatto: tutti i nodi di una compilazione stanno in un'unica arena, come indici in array paralleli
+ * di tipi primitivi (tipo, linea, dati, figli) invece che come oggetti con liste di figli e valori boxed.
+ * I nodi vengono aggiunti dopo i propri figli (vedi ASTArenaGenerationSTVisitor), quindi i figli di un
+ * nodo hanno indici minori del suo e la radice è l'ultimo nodo.
+ *
+ * Per ogni nodo (kind è una costante di NodeKind):
+ * - payload: il valore di INT, 1 o 0 per BOOL, il simbolo (vedi name) dell'identificatore di FUN, PAR,
+ *   VAR, FIELD, METHOD, ID, CALL, NEW, CLASS, CLASS_CALL (il primo) e REF_TYPE;
+ * - extra: il simbolo della superclasse di CLASS (NONE se non estende), il metodo di CLASS_CALL;
+ * - figli, nell'ordine dei campi del nodo: i tipi di PAR, VAR e FIELD; tipo di ritorno, parametri,
+ *   dichiarazioni e corpo di FUN e METHOD; campi e metodi di CLASS; dichiarazioni e corpo di
+ *   PROG_LET_IN; argomenti di CALL, NEW e CLASS_CALL. Un figlio mancante (albero incompleto) è NONE.
+ *
+ * I visitor lavorano ancora sull'AST a oggetti: view() lo costruisce dall'arena, senza ricorsione.
+ */
+
+public class ASTArena {
+
+	public static final int NONE = -1;
+
+	private int size = 0;
+	private byte[] kind = new byte[64];
+	private int[] line = new int[64];
+	private int[] payload = new int[64];
+	private int[] extra = new int[64];
+	private int[] childStart = new int[65]; // figli del nodo n: children[childStart[n] .. childStart[n+1]-1]
+	private int[] children = new int[64];
+
+	private final List<String> names = new ArrayList<>();
+	private final Map<String, Integer> symbols = new HashMap<>();
+
+	// nodi (o NONE) già aggiunti ma non ancora figli di un altro nodo
+	private int[] pending = new int[64];
+	private int pendingSize = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public int root() {
+		return size - 1;
+	}
+
+	public int kind(int n) {
+		return kind[n];
+	}
+
+	public int line(int n) {
+		return line[n];
+	}
+
+	public int payload(int n) {
+		return payload[n];
+	}
+
+	public int extra(int n) {
+		return extra[n];
+	}
+
+	public int childCount(int n) {
+		return childStart[n + 1] - childStart[n];
+	}
+
+	public int child(int n, int i) {
+		return children[childStart[n] + i];
+	}
+
+	// simbolo dell'identificatore name, uguale per ogni sua occorrenza
+	int symbol(String name) {
+		Integer symbol = symbols.get(name);
+		if (symbol == null) {
+			symbol = names.size();
+			symbols.put(name, symbol);
+			names.add(name);
+		}
+		return symbol;
+	}
+
+	public String name(int symbol) {
+		return symbol == NONE ? null : names.get(symbol);
+	}
+
+	// figlio mancante per il prossimo nodo
+	void none() {
+		push(NONE);
+	}
+
+	/**
+	 * Aggiunge un nodo, i cui figli sono gli ultimi childCount nodi aggiunti che non sono ancora figli di
+	 * un altro nodo, e ne ritorna l'indice.
+	 */
+	int add(int nodeKind, int nodeLine, int nodePayload, int nodeExtra, int childCount) {
+		if (size == kind.length) {
+			int capacity = 2 * size;
+			kind = Arrays.copyOf(kind, capacity);
+			line = Arrays.copyOf(line, capacity);
+			payload = Arrays.copyOf(payload, capacity);
+			extra = Arrays.copyOf(extra, capacity);
+			childStart = Arrays.copyOf(childStart, capacity + 1);
+		}
+		int start = childStart[size];
+		if (start + childCount > children.length)
+			children = Arrays.copyOf(children, Math.max(2 * children.length, start + childCount));
+		System.arraycopy(pending, pendingSize - childCount, children, start, childCount);
+		pendingSize -= childCount;
+		kind[size] = (byte) nodeKind;
+		line[size] = nodeLine;
+		payload[size] = nodePayload;
+		extra[size] = nodeExtra;
+		childStart[size + 1] = start + childCount;
+		push(size);
+		return size++;
+	}
+
+	private void push(int n) {
+		if (pendingSize == pending.length)
+			pending = Arrays.copyOf(pending, 2 * pendingSize);
+		pending[pendingSize++] = n;
+	}
+
+	/**
+	 * AST a oggetti equivalente, con i numeri di linea: i nodi vengono creati in ordine di indice, quindi
+	 * i figli di ognuno esistono già. Ritorna la radice (null per un'arena vuota).
+	 */
+	public Node view() {
+		Node[] nodes = new Node[size];
+		for (int n = 0; n < size; n++) {
+			nodes[n] = node(n, nodes);
+			nodes[n].setLine(line[n]);
+		}
+		return size == 0 ? null : nodes[root()];
+	}
+
+	private Node node(int n, Node[] nodes) {
+		switch (kind[n]) {
+			case PROG_LET_IN: return new ProgLetInNode(children(n, 0, childCount(n) - 1, nodes), last(n, nodes));
+			case PROG: return new ProgNode(get(n, 0, nodes));
+			case FUN: {
+				int pars = leading(n, 1, PAR);
+				return new FunNode(id(n), get(n, 0, nodes), children(n, 1, pars, nodes),
+						children(n, 1 + pars, childCount(n) - 2 - pars, nodes), last(n, nodes));
+			}
+			case METHOD: {
+				int pars = leading(n, 1, PAR);
+				return new MethodNode(id(n), get(n, 0, nodes), children(n, 1, pars, nodes),
+						children(n, 1 + pars, childCount(n) - 2 - pars, nodes), last(n, nodes));
+			}
+			case PAR: return new ParNode(id(n), get(n, 0, nodes));
+			case VAR: return new VarNode(id(n), get(n, 0, nodes), get(n, 1, nodes));
+			case FIELD: return new FieldNode(id(n), get(n, 0, nodes));
+			case CLASS: {
+				int fields = leading(n, 0, FIELD);
+				return new ClassNode(id(n), children(n, 0, fields, nodes), children(n, fields, childCount(n) - fields, nodes),
+						name(extra[n]));
+			}
+			case PRINT: return new PrintNode(get(n, 0, nodes));
+			case IF: return new IfNode(get(n, 0, nodes), get(n, 1, nodes), get(n, 2, nodes));
+			case EQUAL: return new EqualNode(get(n, 0, nodes), get(n, 1, nodes));
+			case GREATER_EQUAL: return new GreaterEqualNode(get(n, 0, nodes), get(n, 1, nodes));
+			case LESS_EQUAL: return new LessEqualNode(get(n, 0, nodes), get(n, 1, nodes));
+			case TIMES: return new TimesNode(get(n, 0, nodes), get(n, 1, nodes));
+			case DIV: return new DivNode(get(n, 0, nodes), get(n, 1, nodes));
+			case PLUS: return new PlusNode(get(n, 0, nodes), get(n, 1, nodes));
+			case MINUS: return new MinusNode(get(n, 0, nodes), get(n, 1, nodes));
+			case AND: return new AndNode(get(n, 0, nodes), get(n, 1, nodes));
+			case OR: return new OrNode(get(n, 0, nodes), get(n, 1, nodes));
+			case NOT: return new NotNode(get(n, 0, nodes));
+			case ID: return new IdNode(id(n));
+			case INT: return new IntNode(payload[n]);
+			case BOOL: return new BoolNode(payload[n] != 0);
+			case EMPTY: return new EmptyNode();
+			case CALL: return new CallNode(id(n), children(n, 0, childCount(n), nodes));
+			case NEW: return new NewNode(id(n), children(n, 0, childCount(n), nodes));
+			case CLASS_CALL: return new ClassCallNode(id(n), name(extra[n]), children(n, 0, childCount(n), nodes));
+			case INT_TYPE: return new IntTypeNode();
+			case BOOL_TYPE: return new BoolTypeNode();
+			case REF_TYPE: return new RefTypeNode(id(n));
+			default: throw new IllegalStateException("Node kind " + kind[n] + " is not stored in the arena");
+		}
+	}
+
+	// identificatore del nodo n, solo per i tipi di nodo che ne hanno uno
+	private String id(int n) {
+		return name(payload[n]);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Node> T get(int n, int i, Node[] nodes) {
+		int c = child(n, i);
+		return c == NONE ? null : (T) nodes[c];
+	}
+
+	private <T extends Node> T last(int n, Node[] nodes) {
+		return get(n, childCount(n) - 1, nodes);
+	}
+
+	private <T extends Node> List<T> children(int n, int from, int count, Node[] nodes) {
+		List<T> list = new ArrayList<>(count);
+		for (int i = from; i < from + count; i++)
+			list.add(get(n, i, nodes));
+		return list;
+	}
+
+	// quanti figli di n, a partire da from, sono di tipo childKind
+	private int leading(int n, int from, int childKind) {
+		int i = from;
+		while (i < childCount(n) && child(n, i) != NONE && kind[child(n, i)] == childKind)
+			i++;
+		return i - from;
+	}
+}
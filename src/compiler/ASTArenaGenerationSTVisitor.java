@@ -0,0 +1,299 @@
+package compiler;
+
+import java.util.List;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import compiler.FOOLParser.*;
+import compiler.lib.*;
+
+import static compiler.lib.NodeKind.*;
+
+/**
+ * Come ASTGenerationSTVisitor, ma genera l'AST piatto in un ASTArena invece che oggetti Node: ogni visita
+ * aggiunge all'arena esattamente un nodo (o NONE, dove ASTGenerationSTVisitor ritorna null), dopo i suoi
+ * figli. Non stampa l'albero sintattico.
+ */
+public class ASTArenaGenerationSTVisitor extends FOOLBaseVisitor<Void> {
+
+	private final ASTArena arena;
+	private final StackSegments segments = new StackSegments(); // l'albero sintattico può essere molto profondo
+
+	ASTArenaGenerationSTVisitor(ASTArena arena) {
+		this.arena = arena;
+	}
+
+	// genera nell'arena l'AST del programma t
+	ASTArena generate(ParseTree t) {
+		visit(t);
+		return arena;
+	}
+
+	@Override
+	public Void visit(ParseTree t) {
+		if (t == null) {
+			arena.none();
+			return null;
+		}
+		if (segments.full())
+			return segments.<Void, RuntimeException>inNewSegment(() -> visit(t));
+		segments.enter();
+		try {
+			return super.visit(t);
+		} finally {
+			segments.exit();
+		}
+	}
+
+	private int symbol(Token id) {
+		return arena.symbol(id.getText());
+	}
+
+	private void add(int kind, Token t, int payload, int children) {
+		arena.add(kind, t == null ? -1 : t.getLine(), payload, ASTArena.NONE, children);
+	}
+
+	// nodo con figli le espressioni visitate
+	private void add(int kind, Token t, int payload, List<ExpContext> exps) {
+		for (ExpContext exp : exps)
+			visit(exp);
+		add(kind, t, payload, exps.size());
+	}
+
+	@Override
+	public Void visitProg(ProgContext c) {
+		return visit(c.progbody());
+	}
+
+	@Override
+	public Void visitLetInProg(LetInProgContext c) {
+		for (CldecContext clDec : c.cldec())
+			visit(clDec);
+		for (DecContext dec : c.dec())
+			visit(dec);
+		visit(c.exp());
+		add(PROG_LET_IN, null, ASTArena.NONE, c.cldec().size() + c.dec().size() + 1);
+		return null;
+	}
+
+	@Override
+	public Void visitNoDecProg(NoDecProgContext c) {
+		visit(c.exp());
+		add(PROG, null, ASTArena.NONE, 1);
+		return null;
+	}
+
+	@Override
+	public Void visitTimesDiv(TimesDivContext c) {
+		visit(c.exp(0));
+		visit(c.exp(1));
+		if (c.TIMES() != null)
+			add(TIMES, c.TIMES().getSymbol(), ASTArena.NONE, 2);
+		else
+			add(DIV, c.DIV().getSymbol(), ASTArena.NONE, 2);
+		return null;
+	}
+
+	@Override
+	public Void visitPlusMinus(PlusMinusContext c) {
+		visit(c.exp(0));
+		visit(c.exp(1));
+		if (c.PLUS() != null)
+			add(PLUS, c.PLUS().getSymbol(), ASTArena.NONE, 2);
+		else
+			add(MINUS, c.MINUS().getSymbol(), ASTArena.NONE, 2);
+		return null;
+	}
+
+	@Override
+	public Void visitAndOr(AndOrContext c) {
+		visit(c.exp(0));
+		visit(c.exp(1));
+		if (c.AND() != null)
+			add(AND, c.AND().getSymbol(), ASTArena.NONE, 2);
+		else
+			add(OR, c.OR().getSymbol(), ASTArena.NONE, 2);
+		return null;
+	}
+
+	@Override
+	public Void visitNot(NotContext c) {
+		visit(c.exp());
+		add(NOT, c.NOT().getSymbol(), ASTArena.NONE, 1);
+		return null;
+	}
+
+	@Override
+	public Void visitComp(CompContext c) {
+		if (c.EQ() == null && c.GE() == null && c.LE() == null)
+			throw new RuntimeException("Unknown comparison operator");
+		visit(c.exp(0));
+		visit(c.exp(1));
+		if (c.EQ() != null)
+			add(EQUAL, c.EQ().getSymbol(), ASTArena.NONE, 2);
+		else if (c.GE() != null)
+			add(GREATER_EQUAL, c.GE().getSymbol(), ASTArena.NONE, 2);
+		else
+			add(LESS_EQUAL, c.LE().getSymbol(), ASTArena.NONE, 2);
+		return null;
+	}
+
+	@Override
+	public Void visitVardec(VardecContext c) {
+		if (c.ID() == null) { // incomplete ST
+			arena.none();
+			return null;
+		}
+		visit(c.type());
+		visit(c.exp());
+		add(VAR, c.VAR().getSymbol(), symbol(c.ID().getSymbol()), 2);
+		return null;
+	}
+
+	// figli comuni di FUN e METHOD: tipo di ritorno, parametri, dichiarazioni e corpo
+	private int function(List<TerminalNode> ids, List<TypeContext> types, List<DecContext> decs, ExpContext exp) {
+		visit(types.get(0));
+		for (int i = 1; i < ids.size(); i++) {
+			visit(types.get(i));
+			add(PAR, ids.get(i).getSymbol(), symbol(ids.get(i).getSymbol()), 1);
+		}
+		for (DecContext dec : decs)
+			visit(dec);
+		visit(exp);
+		return 1 + (ids.size() - 1) + decs.size() + 1;
+	}
+
+	@Override
+	public Void visitFundec(FundecContext c) {
+		if (c.ID().size() == 0) { // incomplete ST
+			arena.none();
+			return null;
+		}
+		int children = function(c.ID(), c.type(), c.dec(), c.exp());
+		add(FUN, c.FUN().getSymbol(), symbol(c.ID(0).getSymbol()), children);
+		return null;
+	}
+
+	@Override
+	public Void visitIntType(IntTypeContext c) {
+		add(INT_TYPE, null, ASTArena.NONE, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitBoolType(BoolTypeContext c) {
+		add(BOOL_TYPE, null, ASTArena.NONE, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitInteger(IntegerContext c) {
+		int v = Integer.parseInt(c.NUM().getText());
+		add(INT, null, c.MINUS() == null ? v : -v, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitTrue(TrueContext c) {
+		add(BOOL, null, 1, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitFalse(FalseContext c) {
+		add(BOOL, null, 0, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitIf(IfContext c) {
+		visit(c.exp(0));
+		visit(c.exp(1));
+		visit(c.exp(2));
+		add(IF, c.IF().getSymbol(), ASTArena.NONE, 3);
+		return null;
+	}
+
+	@Override
+	public Void visitPrint(PrintContext c) {
+		visit(c.exp());
+		add(PRINT, null, ASTArena.NONE, 1);
+		return null;
+	}
+
+	@Override
+	public Void visitPars(ParsContext c) {
+		return visit(c.exp()); // le parentesi non sono nell'AST
+	}
+
+	@Override
+	public Void visitId(IdContext c) {
+		add(ID, c.ID().getSymbol(), symbol(c.ID().getSymbol()), 0);
+		return null;
+	}
+
+	@Override
+	public Void visitCall(CallContext c) {
+		add(CALL, c.ID().getSymbol(), symbol(c.ID().getSymbol()), c.exp());
+		return null;
+	}
+
+	@Override
+	public Void visitCldec(CldecContext c) {
+		int firstField = c.EXTENDS() != null ? 2 : 1;
+		for (int i = firstField; i < c.ID().size(); i++) {
+			visit(c.type(i - firstField));
+			add(FIELD, c.ID(i).getSymbol(), symbol(c.ID(i).getSymbol()), 1);
+		}
+		for (MethdecContext method : c.methdec())
+			visit(method);
+		arena.add(CLASS, c.ID(0).getSymbol().getLine(), symbol(c.ID(0).getSymbol()),
+				c.EXTENDS() != null ? symbol(c.ID(1).getSymbol()) : ASTArena.NONE,
+				c.ID().size() - firstField + c.methdec().size());
+		return null;
+	}
+
+	@Override
+	public Void visitMethdec(MethdecContext c) {
+		if (c.ID().size() == 0) {
+			arena.none();
+			return null;
+		}
+		int children = function(c.ID(), c.type(), c.dec(), c.exp());
+		add(METHOD, c.ID(0).getSymbol(), symbol(c.ID(0).getSymbol()), children);
+		return null;
+	}
+
+	@Override
+	public Void visitNew(NewContext c) {
+		if (c.ID() == null) {
+			arena.none();
+			return null;
+		}
+		add(NEW, c.ID().getSymbol(), symbol(c.ID().getSymbol()), c.exp());
+		return null;
+	}
+
+	@Override
+	public Void visitNull(NullContext c) {
+		add(EMPTY, null, ASTArena.NONE, 0);
+		return null;
+	}
+
+	@Override
+	public Void visitDotCall(DotCallContext c) {
+		for (ExpContext arg : c.exp())
+			visit(arg);
+		arena.add(CLASS_CALL, c.ID(1).getSymbol().getLine(), symbol(c.ID(0).getSymbol()),
+				symbol(c.ID(1).getSymbol()), c.exp().size());
+		return null;
+	}
+
+	@Override
+	public Void visitIdType(IdTypeContext c) {
+		add(REF_TYPE, c.ID().getSymbol(), symbol(c.ID().getSymbol()), 0);
+		return null;
+	}
+}
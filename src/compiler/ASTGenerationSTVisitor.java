@@ -22,6 +22,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 	 */
 	String indent;
     public boolean print;
+    private final StackSegments segments = new StackSegments(); // l'albero sintattico può essere molto profondo
 	
     ASTGenerationSTVisitor() {}
 
@@ -45,11 +46,16 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
     @Override
 	public Node visit(ParseTree t) {
     	if (t==null) return null;
+    	if (segments.full()) return segments.<Node, RuntimeException>inNewSegment(() -> visit(t));
         String temp=indent;
-        indent=(indent==null)?"":indent+"  ";
-        Node result = super.visit(t);
-        indent=temp;
-        return result; 
+        if (print) indent=(indent==null)?"":indent+"  "; // lunga quanto la profondità: solo se serve
+        segments.enter();
+        try {
+        	return super.visit(t);
+        } finally {
+        	segments.exit();
+        	indent=temp;
+        }
 	}
 
 	/**
@@ -0,0 +1,115 @@
+package compiler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Compila molti programmi FOOL in parallelo, uno per thread, con Compiler.compile:
+ *
+ *   java compiler.BatchCompiler [-j thread] [-c cache] (file.fool | cartella) ...
+ *
+ * Le cartelle vengono visitate ricorsivamente cercando i file .fool. Come Test, per ogni programma
+ * compilato senza errori scrive l'assembly in file.fool.asm. Alla fine stampa, nell'ordine dei file,
+ * il tempo di compilazione e gli errori di ogni file (con la diagnostica), poi un riepilogo; termina
+ * con stato 1 se almeno un file ha errori. Un file illeggibile o un'eccezione del compilatore contano
+ * come un errore di quel file, con la relativa diagnostica, e non interrompono gli altri. Con -c gli
+ * EAST dei programmi corretti vengono salvati nella cartella cache (vedi EASTCache) e i file non
+ * modificati dalla compilazione precedente non ripetono lexer, parser, symbol table e type checking.
+ */
+
+public class BatchCompiler {
+
+	// esito della compilazione di un file
+	private static class Outcome {
+		final Path file;
+		final long nanos;
+		final int errors;
+		final List<String> diagnostics;
+
+		Outcome(Path file, long nanos, int errors, List<String> diagnostics) {
+			this.file = file;
+			this.nanos = nanos;
+			this.errors = errors;
+			this.diagnostics = diagnostics;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		EASTCache cache = null;
+		List<Path> files = new ArrayList<>();
+		for (int i = 0; i < args.length; i++)
+			if (args[i].equals("-j"))
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-c"))
+				cache = new EASTCache(Path.of(args[++i]));
+			else
+				files.addAll(foolFiles(Path.of(args[i])));
+		if (files.isEmpty()) {
+			System.err.println("Usage: BatchCompiler [-j threads] [-c cache] (file.fool | directory) ...");
+			System.exit(2);
+		}
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Outcome>> outcomes = new ArrayList<>();
+		Compiler.Options options = new Compiler.Options();
+		options.cache = cache;
+		for (Path file : files)
+			outcomes.add(pool.submit(() -> compile(file, options)));
+		pool.shutdown();
+
+		int failed = 0;
+		long total = 0;
+		for (int i = 0; i < outcomes.size(); i++) {
+			Outcome outcome;
+			try {
+				outcome = outcomes.get(i).get();
+			} catch (ExecutionException e) {
+				outcome = failure(files.get(i), 0, e.getCause());
+			}
+			total += outcome.nanos;
+			if (outcome.errors > 0)
+				failed++;
+			System.out.printf("%-40s %8.1f ms  %s%n", outcome.file, outcome.nanos / 1e6,
+					outcome.errors == 0 ? "ok" : outcome.errors + (outcome.errors == 1 ? " error" : " errors"));
+			for (String message : outcome.diagnostics)
+				System.out.println("    " + message);
+		}
+		System.out.printf("%d files, %d with errors: %.1f ms of compilation in %.1f ms on %d threads%n",
+				files.size(), failed, total / 1e6, (System.nanoTime() - start) / 1e6, threads);
+		System.exit(failed > 0 ? 1 : 0);
+	}
+
+	private static List<Path> foolFiles(Path path) throws IOException {
+		if (!Files.isDirectory(path))
+			return List.of(path);
+		try (Stream<Path> walk = Files.walk(path)) {
+			return walk.filter(p -> p.toString().endsWith(".fool") && Files.isRegularFile(p)).sorted().toList();
+		}
+	}
+
+	private static Outcome compile(Path file, Compiler.Options options) {
+		long start = System.nanoTime();
+		try {
+			String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			Compiler.Result result = Compiler.compile(source, options);
+			long nanos = System.nanoTime() - start;
+			if (result.program != null)
+				Files.writeString(Path.of(file + ".asm"), result.asm);
+			return new Outcome(file, nanos, result.frontEndErrors() + result.assemblyErrors, result.diagnostics);
+		} catch (IOException | RuntimeException | StackOverflowError e) {
+			return failure(file, System.nanoTime() - start, e);
+		}
+	}
+
+	// un file che non si è potuto compilare conta come un errore, con l'eccezione come diagnostica
+	private static Outcome failure(Path file, long nanos, Throwable cause) {
+		String message = cause instanceof IOException ? "Cannot read or write file: " + cause : "Compiler failure: " + cause;
+		return new Outcome(file, nanos, 1, List.of(message));
+	}
+}
@@ -0,0 +1,81 @@
+package compiler;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Client a riga di comando di Daemon, al posto dell'invocazione diretta di Test:
+ *
+ *   java compiler.Client [check|asm|run] file.fool [porta]
+ *   java compiler.Client stop [porta]
+ *
+ * Stampa la diagnostica e poi l'assembly (asm) o l'output del programma (run); termina con stato 1 se
+ * ci sono errori. Se il daemon non è in ascolto lo avvia, con lo stesso classpath, e lo lascia attivo
+ * per le invocazioni successive.
+ * Usa solo la libreria standard, così la sua JVM non carica né ANTLR né il compilatore.
+ * */
+
+public class Client {
+
+	private static final int START_ATTEMPTS = 50; // attese di 100ms per l'avvio del daemon
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 0) {
+			System.err.println("Usage: Client [check|asm|run] file.fool [port] | stop [port]");
+			System.exit(2);
+		}
+		String command = args[0].equals("check") || args[0].equals("asm") || args[0].equals("run")
+				|| args[0].equals("stop") ? args[0] : "run";
+		int first = command.equals(args[0]) ? 1 : 0; // il comando si può omettere
+		String source = command.equals("stop") ? "" : new String(Files.readAllBytes(Path.of(args[first++])), StandardCharsets.UTF_8);
+		int port = args.length > first ? Integer.parseInt(args[first]) : Daemon.PORT;
+
+		try (Socket socket = connect(port, !command.equals("stop"))) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			writeString(out, command);
+			writeString(out, source);
+			out.flush();
+			int errors = in.readInt();
+			System.out.print(readString(in));
+			System.out.print(readString(in));
+			System.exit(errors > 0 ? 1 : 0);
+		}
+	}
+
+	private static Socket connect(int port, boolean start) throws IOException, InterruptedException {
+		try {
+			return new Socket(InetAddress.getLoopbackAddress(), port);
+		} catch (ConnectException e) {
+			if (!start) throw e;
+		}
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "compiler.Daemon", String.valueOf(port))
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+		for (int attempt = 1; ; attempt++)
+			try {
+				return new Socket(InetAddress.getLoopbackAddress(), port);
+			} catch (ConnectException e) {
+				if (attempt == START_ATTEMPTS) throw e;
+				Thread.sleep(100);
+			}
+	}
+
+	// stringhe precedute dalla lunghezza in byte: writeUTF è limitato a 64KB
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
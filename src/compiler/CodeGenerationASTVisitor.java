@@ -4,11 +4,12 @@ import compiler.AST.*;
 import compiler.lib.*;
 import compiler.exc.*;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static compiler.lib.FOOLlib.*;
-import static svm.ExecuteVM.MEMSIZE;
 
 /**
  * In lab si è iniziato senza considerare le funzioni, per evitare gli scope
@@ -16,40 +17,298 @@ import static svm.ExecuteVM.MEMSIZE;
  * Abbiamo dunque variabili globali e variabili locali alle funzioni.
  * Viene ritornata una intera stringa e non ho problema di incompletezza
  * dell'albero.
+ *
+ * Il corpo di ogni funzione e metodo globale è una unità generata da un proprio visitor, con un
+ * proprio contesto (CompilationContext.fork): le sue etichette iniziano con quella della funzione e
+ * il suo codice viene raccolto a parte. Le etichette delle funzioni globali, le dispatch table ed il
+ * segmento dati vengono prima costruiti dalla visita delle dichiarazioni, poi le unità li leggono
+ * soltanto, quindi con un ForkJoinPool vengono generate in parallelo. Alla fine il codice delle unità
+ * viene unito nell'ordine delle dichiarazioni: il risultato è lo stesso della generazione sequenziale.
  */
 
 public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidException> {
 
 	private List<List<String>> dispatchTables = new ArrayList<>();
+	private List<Integer> dispatchPointers = new ArrayList<>(); // indirizzo di ogni dispatch table nel segmento dati
+	private List<String> dataSegment = new ArrayList<>(); // parole dell'immagine iniziale dello heap
+
+	/**
+	 * Grafo delle chiamate, per i limiti di memoria calcolati da svm.ResourceBounds:
+	 * ad ogni funzione (etichetta, MAIN per il programma principale) associa i
+	 * possibili chiamati di ogni suo punto di chiamata. Per le chiamate a metodo
+	 * i chiamati sono i metodi della classe statica e di tutte le sue sottoclassi.
+	 */
+	public static final String MAIN = "main";
+	private Map<String, List<String>> callGraph = new LinkedHashMap<>();
+	private List<String> functionLabels = new ArrayList<>(); // funzioni e metodi, anche mai chiamati
+	private Map<STentry, String> funLabels = new ConcurrentHashMap<>(); // etichetta di ogni funzione dichiarata, anche dalle unità
+	private List<String[]> methodCalls = new ArrayList<>(); // chiamante, classe statica, offset del metodo
+	private Map<String, Integer> classIndex = new HashMap<>(); // posizione della dispatch table
+	private Map<String, String> superClass = new HashMap<>();
+	private String currentFunction = MAIN;
+	private String currentClass;
+
+	/**
+	 * Parole del segmento dati che contengono argomenti interi degli oggetti costanti globali, per
+	 * eseguire lo stesso programma con valori diversi (svm.BatchVM): la chiave è il nome della
+	 * variabile seguito dagli indici degli argomenti, ad esempio "bl.0.1" per il secondo argomento
+	 * del primo argomento della new assegnata a bl. Solo per gli oggetti annidati fino a
+	 * PARAMETER_DEPTH livelli, altrimenti le chiavi di un letterale molto annidato occuperebbero
+	 * memoria quadratica nella sua profondità.
+	 */
+	private Map<String, Integer> dataParameters = new LinkedHashMap<>();
+	static final int PARAMETER_DEPTH = 64;
+
+	private final CompilationContext context;
+	private ForkJoinPool pool; // null se le unità vengono generate in sequenza
 
 	CodeGenerationASTVisitor() {
+		this(new CompilationContext(System.out));
 	}
 
 	CodeGenerationASTVisitor(boolean debug) {
+		this(new CompilationContext(System.out), debug);
+	}
+
+	CodeGenerationASTVisitor(CompilationContext context) {
+		this.context = context;
+	}
+
+	CodeGenerationASTVisitor(CompilationContext context, boolean debug) {
 		super(false, debug);
+		this.context = context;
 	} // enables print for debugging
 
+	CodeGenerationASTVisitor(CompilationContext context, ForkJoinPool pool) {
+		this(context);
+		this.pool = pool;
+	} // generates function bodies in parallel
+
+	// visitor di una unità: condivide le tabelle delle dichiarazioni globali di parent, che legge soltanto
+	private CodeGenerationASTVisitor(CodeGenerationASTVisitor parent, String function, String currentClass) {
+		super(false, parent.print);
+		this.context = parent.context.fork(function);
+		this.dispatchTables = parent.dispatchTables;
+		this.dispatchPointers = parent.dispatchPointers;
+		this.funLabels = parent.funLabels;
+		this.classIndex = parent.classIndex;
+		this.superClass = parent.superClass;
+		this.currentFunction = function;
+		this.currentClass = currentClass;
+	}
+
+	public Map<String, List<String>> getCallGraph() {
+		return callGraph;
+	}
+
+	public List<String> getFunctionLabels() {
+		return functionLabels;
+	}
+
+	public Map<String, Integer> getDataParameters() {
+		return dataParameters;
+	}
+
+	private void addCall(String callee) {
+		callGraph.computeIfAbsent(currentFunction, f -> new ArrayList<>()).add(callee);
+	}
+
+	// i possibili chiamati di una chiamata a metodo sono noti solo dopo aver visto tutte le classi
+	private void resolveMethodCalls() {
+		for (String[] call : methodCalls)
+			for (var c : classIndex.entrySet())
+				if (isSubclass(c.getKey(), call[1]))
+					callGraph.computeIfAbsent(call[0], f -> new ArrayList<>())
+							.add(dispatchTables.get(c.getValue()).get(Integer.parseInt(call[2])));
+	}
+
+	/**
+	 * Argomento i di una chiamata: se ParallelismASTVisitor lo ha marcato, il suo codice viene messo
+	 * dopo l'halt, terminato da halt, e valutato con fork; join, dopo gli argomenti, ne attende il
+	 * risultato. Il codice eseguito da fork usa il frame del chiamante, quindi si genera come gli altri
+	 * argomenti.
+	 */
+	private String visitArg(List<Node> args, boolean[] forkArgs, int i) {
+		if (forkArgs == null || !forkArgs[i])
+			return visit(args.get(i));
+		String forkl = context.freshFunLabel();
+		functionLabels.add(forkl);
+		addCall(forkl); // può essere eseguito sullo stack del chiamante
+		String caller = currentFunction;
+		currentFunction = forkl;
+		String argCode = visit(args.get(i));
+		currentFunction = caller;
+		context.putCode(nlJoin(forkl + ":", argCode, "halt"));
+		return "fork " + forkl;
+	}
+
+	private String joinCode(boolean[] forkArgs) {
+		int forks = 0;
+		if (forkArgs != null)
+			for (boolean fork : forkArgs)
+				if (fork)
+					forks++;
+		return forks > 0 ? "join " + forks : null;
+	}
+
+	// aggiunge a questo visitor il codice ed il grafo delle chiamate raccolti dal visitor di una unità
+	private void join(CodeGenerationASTVisitor unit) {
+		context.join(unit.context);
+		for (var caller : unit.callGraph.entrySet())
+			callGraph.computeIfAbsent(caller.getKey(), f -> new ArrayList<>()).addAll(caller.getValue());
+		functionLabels.addAll(unit.functionLabels);
+		methodCalls.addAll(unit.methodCalls);
+	}
+
+	private String declareFunction(STentry entry) {
+		String funl = context.freshFunLabel(); // per fare function0: codice_generato, così si può saltare
+		funLabels.put(entry, funl); // prima del corpo, per le chiamate ricorsive
+		functionLabels.add(funl);
+		return funl;
+	}
+
+	private boolean isSubclass(String classId, String superId) {
+		for (String c = classId; c != null; c = superClass.get(c))
+			if (c.equals(superId))
+				return true;
+		return false;
+	}
+
 	/**
 	 * Dobbiamo allocare le variabili rispettando l'ordine degli offset
 	 * Visito le dichiarazioni di variabili, in ordine, concatenandole (attraverso
 	 * la visita vengono poi messe sullo stack).
 	 */
+	/**
+	 * Le variabili globali inizializzate con oggetti costanti vengono allocate
+	 * direttamente nel segmento dati: basta mettere sullo stack il loro object
+	 * pointer.
+	 *
+	 * Per le funzioni ed i metodi globali la visita delle dichiarazioni produce
+	 * solo etichette e dispatch table, i corpi sono unità generate dopo, anche in
+	 * parallelo al codice del programma principale.
+	 */
 	@Override
 	public String visitNode(ProgLetInNode n) {
 		if (print)
 			printNode(n);
 		String declCode = null;
+		List<CodeGenerationASTVisitor> units = new ArrayList<>();
+		List<Runnable> bodies = new ArrayList<>();
 		for (Node dec : n.declist)
-			declCode = nlJoin(declCode, visit(dec));
+			if (dec instanceof VarNode var && isConstantObject(var.exp)) {
+				if (print)
+					printNode(var, var.id);
+				declCode = nlJoin(declCode, "push " + staticObject((NewNode) var.exp, var.id));
+			} else if (dec instanceof FunNode fun) {
+				if (print)
+					printNode(fun, fun.id);
+				String funl = declareFunction(fun.entry);
+				CodeGenerationASTVisitor unit = new CodeGenerationASTVisitor(this, funl, null);
+				units.add(unit);
+				bodies.add(() -> unit.functionBody(funl, fun.parlist.size(), fun.declist, fun.exp));
+				declCode = nlJoin(declCode, "push " + funl); // indirizzo della funzione
+			} else {
+				declCode = nlJoin(declCode, visit(dec));
+				if (dec instanceof ClassNode classNode)
+					for (MethodNode method : classNode.methods) {
+						CodeGenerationASTVisitor unit = new CodeGenerationASTVisitor(this, method.label, classNode.classId);
+						units.add(unit);
+						bodies.add(() -> unit.visit(method));
+					}
+			}
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		if (pool != null && !print)
+			for (Runnable body : bodies)
+				tasks.add(pool.submit(body));
+		String mainCode = visit(n.exp);
+		for (int i = 0; i < units.size(); i++) {
+			if (tasks.isEmpty())
+				bodies.get(i).run();
+			else
+				tasks.get(i).join();
+			join(units.get(i));
+		}
+		resolveMethodCalls();
+		String dataCode = dataSegment.isEmpty() ? null : "data " + String.join("\ndata ", dataSegment);
 		return nlJoin(
 				"push 0", // address fittizzio 0 per sistemare l'offset
 				declCode, // generate code for declarations (allocation)
-				visit(n.exp),
+				mainCode,
 				"halt",
-				getCode() // elenco delle funzioni
+				context.getCode(), // elenco delle funzioni
+				dataCode // segmento dati (dispatch table ed oggetti costanti)
 		);
 	}
 
+	// un oggetto è costante se è una new i cui argomenti sono costanti o, a loro volta, oggetti costanti
+	// (visita con una pila esplicita: i letterali generati possono essere annidati a piacere)
+	private boolean isConstantObject(Node n) {
+		Deque<Node> pending = new ArrayDeque<>();
+		pending.push(n);
+		while (!pending.isEmpty()) {
+			if (!(pending.pop() instanceof NewNode newNode))
+				return false;
+			for (Node arg : newNode.args)
+				if (!(arg instanceof IntNode || arg instanceof BoolNode || arg instanceof EmptyNode))
+					pending.push(arg);
+		}
+		return true;
+	}
+
+	// oggetto costante in costruzione in staticObject, con i campi già calcolati (dall'ultimo)
+	private static class StaticObject {
+		final NewNode n;
+		final String path; // null oltre PARAMETER_DEPTH
+		final List<String> fields = new ArrayList<>();
+		int next; // indice del prossimo argomento, a scendere
+
+		StaticObject(NewNode n, String path) {
+			this.n = n;
+			this.path = path;
+			this.next = n.args.size() - 1;
+		}
+	}
+
+	/**
+	 * Dispone nel segmento dati un oggetto costante con lo stesso layout prodotto
+	 * da alloc (campi dall'ultimo al primo, poi il dispatch pointer) e ne ritorna
+	 * l'object pointer. Gli oggetti annidati vengono disposti prima: la pila
+	 * esplicita contiene gli oggetti di cui si sta disponendo un argomento.
+	 */
+	private int staticObject(NewNode root, String rootPath) {
+		Deque<StaticObject> pending = new ArrayDeque<>();
+		pending.push(new StaticObject(root, rootPath));
+		while (true) {
+			StaticObject o = pending.peek();
+			if (o.next >= 0) {
+				int i = o.next--;
+				Node arg = o.n.args.get(i);
+				if (arg instanceof IntNode intNode)
+					o.fields.add(String.valueOf(intNode.val));
+				else if (arg instanceof BoolNode boolNode)
+					o.fields.add(boolNode.val ? "1" : "0");
+				else if (arg instanceof EmptyNode)
+					o.fields.add("-1");
+				else
+					pending.push(new StaticObject((NewNode) arg,
+							o.path != null && pending.size() < PARAMETER_DEPTH ? o.path + "." + i : null));
+				continue;
+			}
+			if (o.path != null)
+				for (int i = 0; i < o.n.args.size(); i++)
+					if (o.n.args.get(i) instanceof IntNode)
+						dataParameters.put(o.path + "." + i, dataSegment.size() + o.n.args.size() - 1 - i);
+			dataSegment.addAll(o.fields);
+			dataSegment.add(String.valueOf(dispatchPointers.get(-o.n.sTentry.offset - 2)));
+			int address = dataSegment.size() - 1;
+			pending.pop();
+			if (pending.isEmpty())
+				return address;
+			pending.peek().fields.add(String.valueOf(address));
+		}
+	}
+
 	@Override
 	public String visitNode(ProgNode n) {
 		if (print)
@@ -60,69 +319,57 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	}
 
 	/**
-	 * Genero il codice per il corpo della funzione. Io ho una funzione putCode()
+	 * Genero il codice per il corpo della funzione. Io ho una funzione context.putCode()
 	 * che mi memorizza il codice generato
 	 * del corpo della funzione, che metterò dopo l'halt. Ovvero ho una collezione
 	 * di funzioni alla fine, in cui saltare
-	 * Questo è dunque consentito da putCode()
+	 * Questo è dunque consentito da context.putCode()
 	 *
+	 * Qui arrivano solo le funzioni annidate, quelle globali sono unità (vedi
+	 * visitNode(ProgLetInNode)).
 	 */
 	@Override
 	public String visitNode(FunNode n) {
 		if (print)
 			printNode(n, n.id);
-		String declCode = null, popDecl = null, popParl = null;
-		for (Node dec : n.declist) {
-			declCode = nlJoin(declCode, visit(dec));
-			popDecl = nlJoin(popDecl, "pop");
-		}
-		for (int i = 0; i < n.parlist.size(); i++)
-			popParl = nlJoin(popParl, "pop");
-		String funl = freshFunLabel(); // per fare function0: codice_generato, così si può saltare
-		putCode(
-				nlJoin(
-						funl + ":", // function_i :
-						"cfp", // set $fp to $sp value
-						"lra", // load $ra value
-						declCode, // generate code for local declarations (they use the new $fp!!!)
-						visit(n.exp), // generate code for function body expression
-						"stm", // set $tm to popped value (function result)
-						popDecl, // remove local declarations from stack
-						"sra", // set $ra to popped value
-						"pop", // remove Access Link from stack
-						popParl, // remove parameters from stack
-						"sfp", // set $fp to popped value (Control Link)
-						"ltm", // load $tm value (function result)
-						"lra", // load $ra value
-						"js" // jump to popped address
-				));
+		String funl = declareFunction(n.entry);
+		functionBody(funl, n.parlist.size(), n.declist, n.exp);
 		return "push " + funl; // indirizzo della funzione da ritornare
 	}
 
 	/**
-	 * Differenza con funNode: non ritorna il push label ma l'etichetta che genera
-	 * la mette nel suo campo label.
-	 * Perché verrà usata a livello di class node, per popolare la dispatch table.
+	 * Differenza con funNode: non ritorna il push label, l'etichetta è già nel
+	 * suo campo label, assegnata dalla visita della classe per popolare la
+	 * dispatch table.
 	 */
 	@Override
 	public String visitNode(MethodNode n) throws VoidException {
 		if (print)
 			printNode(n, n.id);
+		functionBody(n.label, n.parlist.size(), n.declist, n.exp);
+		return null;
+	}
+
+	// codice di una funzione o di un metodo con etichetta funl, messo dopo l'halt
+	private void functionBody(String funl, int parameters, List<DecNode> declist, Node exp) {
+		String caller = currentFunction;
+		currentFunction = funl;
 		String declCode = null, popDecl = null, popParl = null;
-		for (Node dec : n.declist) {
+		for (Node dec : declist) {
 			declCode = nlJoin(declCode, visit(dec));
 			popDecl = nlJoin(popDecl, "pop");
 		}
-		for (int i = 0; i < n.parlist.size(); i++)
+		for (int i = 0; i < parameters; i++)
 			popParl = nlJoin(popParl, "pop");
-		String generatedCode = freshFunLabel();
-		putCode(
+		String bodyCode = visit(exp);
+		currentFunction = caller;
+		context.putCode(
 				nlJoin(
-						generatedCode + ":",
+						funl + ":", // function_i :
 						"cfp", // set $fp to $sp value
 						"lra", // load $ra value
 						declCode, // generate code for local declarations (they use the new $fp!!!)
-						visit(n.exp), // generate code for function body expression
+						bodyCode, // generate code for function body expression
 						"stm", // set $tm to popped value (function result)
 						popDecl, // remove local declarations from stack
 						"sra", // set $ra to popped value
@@ -133,8 +380,6 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 						"lra", // load $ra value
 						"js" // jump to popped address
 				));
-		n.label = generatedCode;
-		return null;
 	}
 
 	/**
@@ -152,15 +397,10 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	}
 
 	/**
-	 * Dichiarazione Classe: codice ritornato
-	 * 1. metto valore di $hp sullo stack, sarà il dispatch
-	 * pointer da ritornare alla fine.
-	 * 2. Creo sullo heap la dispatch table,
-	 * lavorando sullo stack, ogni volta, parto dalla posizione 0
-	 * della dispatch table (dove c'è il primo metodo),
-	 * caricherò la sua etichetta sullo stack e dovrò
-	 * poi fare in modo che questa etichetta finisca nell'indirizzo hp.
-	 * Uso le istruzioni della nostra vm per mettere la label dentro hp.
+	 * Dichiarazione Classe: la dispatch table non viene più costruita a runtime,
+	 * ma aggiunta al segmento dati, che la VM copia all'inizio dello heap prima
+	 * dell'esecuzione. Il suo indirizzo è quindi noto a tempo di compilazione:
+	 * il codice ritornato mette sullo stack il dispatch pointer.
 	 */
 	@Override
 	public String visitNode(ClassNode node) {
@@ -169,14 +409,17 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		}
 		// table which contains addresses to class methods
 		List<String> dispatchTable = new ArrayList<>();
+		classIndex.put(node.classId, dispatchTables.size());
+		superClass.put(node.classId, node.superId);
 		dispatchTables.add(dispatchTable);
 		if (node.superId != null) {
 			//dispatch table of inherited class
 			dispatchTable.addAll(dispatchTables.get(-node.superEntry.offset-2));
 		}
-		// add address for each method, it's needed to visit it first
+		// add address for each method, its body is generated later as a unit
 		for (var method: node.methods) {
-			visit(method);
+			method.label = context.freshFunLabel();
+			functionLabels.add(method.label);
 			// check override
 			if (method.offset < dispatchTable.size()) {
 				dispatchTable.set(method.offset, method.label);
@@ -184,26 +427,10 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 				dispatchTable.add(method.offset, method.label);
 			}
 		}
-		String codeGeneration = null;
-		for (String label : dispatchTable) {
-			codeGeneration = nlJoin(
-					codeGeneration,
-					"push " + label,
-					"lhp", // push(hp)
-					"sw",  // 1. address = pop() -> takes hp value, then memory[address] = pop(), to put
-						   // label in heap
-
-					"lhp", // increment hp
-					"push 1",
-					"add",
-
-					"shp" // hp = pop(), stores new hp address in stack, to setup for next cycle
-			);
-		}
-		return nlJoin(
-				"lhp",
-				codeGeneration
-		);
+		int dispatchPointer = dataSegment.size();
+		dispatchPointers.add(dispatchPointer);
+		dataSegment.addAll(dispatchTable); // una parola per metodo, contiene la sua etichetta
+		return "push " + dispatchPointer;
 	}
 	// sufficiente visitarla, per mettere il risultato sullo stack
 	@Override
@@ -230,8 +457,8 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(IfNode n) {
 		if (print)
 			printNode(n);
-		String l1 = freshLabel();
-		String l2 = freshLabel();
+		String l1 = context.freshLabel();
+		String l2 = context.freshLabel();
 		return nlJoin(
 				visit(n.cond),
 				"push 1", // aggiungo 1, ovvero true per confrontarlo con la condizione
@@ -256,8 +483,8 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(EqualNode n) {
 		if (print)
 			printNode(n);
-		String l1 = freshLabel(); // genero la nuova etichetta a cui saltare
-		String l2 = freshLabel();
+		String l1 = context.freshLabel(); // genero la nuova etichetta a cui saltare
+		String l2 = context.freshLabel();
 		return nlJoin(
 				visit(n.left),
 				visit(n.right),
@@ -273,10 +500,7 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(TimesNode n) {
 		if (print)
 			printNode(n);
-		return nlJoin(
-				visit(n.left),
-				visit(n.right),
-				"mult");
+		return arithmeticChain(n);
 	}
 
 	/**
@@ -287,18 +511,70 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(PlusNode n) {
 		if (print)
 			printNode(n);
-		return nlJoin(
-				visit(n.left),
-				visit(n.right),
-				"add");
+		return arithmeticChain(n);
+	}
+
+	/**
+	 * Una catena di operatori aritmetici (1+2-3*4...) è un albero profondo a sinistra: generandone il
+	 * codice con nlJoin ad ogni livello, ogni livello copierebbe il codice di tutti quelli sottostanti,
+	 * in tempo quadratico nella lunghezza della catena. Qui la catena viene percorsa iterativamente,
+	 * dall'operando più a sinistra, e il codice accumulato in un solo StringBuilder; il risultato e
+	 * l'ordine delle visite (quindi delle etichette) sono quelli della generazione ricorsiva.
+	 */
+	private String arithmeticChain(Node n) {
+		Deque<Node> chain = new ArrayDeque<>();
+		Node left = n;
+		for (; arithmeticInstruction(left) != null; left = leftOperand(left)) {
+			if (print && left != n)
+				printNode(left);
+			chain.push(left);
+		}
+		StringBuilder code = new StringBuilder(visit(left));
+		for (Node operation : chain) // dalla più interna
+			code.append('\n').append(visit(rightOperand(operation)))
+					.append('\n').append(arithmeticInstruction(operation));
+		return code.toString();
+	}
+
+	// istruzione di un nodo aritmetico, null per gli altri nodi
+	private static String arithmeticInstruction(Node n) {
+		if (n instanceof PlusNode)
+			return "add";
+		if (n instanceof MinusNode)
+			return "sub";
+		if (n instanceof TimesNode)
+			return "mult";
+		if (n instanceof DivNode)
+			return "div";
+		return null;
+	}
+
+	private static Node leftOperand(Node n) {
+		if (n instanceof PlusNode p)
+			return p.left;
+		if (n instanceof MinusNode m)
+			return m.left;
+		if (n instanceof TimesNode t)
+			return t.left;
+		return ((DivNode) n).left;
+	}
+
+	private static Node rightOperand(Node n) {
+		if (n instanceof PlusNode p)
+			return p.right;
+		if (n instanceof MinusNode m)
+			return m.right;
+		if (n instanceof TimesNode t)
+			return t.right;
+		return ((DivNode) n).right;
 	}
 
 	@Override
 	public String visitNode(LessEqualNode n) throws VoidException {
 		if (print)
 			printNode(n);
-		var l1 = freshLabel();
-		var l2 = freshLabel();
+		var l1 = context.freshLabel();
+		var l2 = context.freshLabel();
 		return nlJoin(
 				visit(n.left),
 				visit(n.right),
@@ -315,8 +591,8 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		if (print) {
 			printNode(node);
 		}
-		String l1 = freshLabel();
-		String l2 = freshLabel();
+		String l1 = context.freshLabel();
+		String l2 = context.freshLabel();
 		return nlJoin(
 				visit(node.right),
 				visit(node.left),
@@ -336,8 +612,8 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(NotNode n) throws VoidException {
 		if (print)
 			printNode(n);
-		var l1 = freshLabel();
-		var l2 = freshLabel();
+		var l1 = context.freshLabel();
+		var l2 = context.freshLabel();
 
 		return nlJoin(
 				visit(n.node),
@@ -354,18 +630,15 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(MinusNode n) throws VoidException {
 		if (print)
 			printNode(n);
-		return nlJoin(
-				visit(n.left),
-				visit(n.right),
-				"sub");
+		return arithmeticChain(n);
 	}
 
 	@Override
 	public String visitNode(OrNode n) throws VoidException {
 		if (print)
 			printNode(n);
-		var l1 = freshLabel();
-		var l2 = freshLabel();
+		var l1 = context.freshLabel();
+		var l2 = context.freshLabel();
 		return nlJoin(
 				visit(n.left),
 				"push 1",
@@ -384,19 +657,16 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(DivNode n) throws VoidException {
 		if (print)
 			printNode(n);
-		return nlJoin(
-				visit(n.left),
-				visit(n.right),
-				"div");
+		return arithmeticChain(n);
 	}
 
 	@Override
 	public String visitNode(AndNode n) throws VoidException {
 		if (print)
 			printNode(n);
-		var l1 = freshLabel();
-		var l2 = freshLabel();
-		var l3 = freshLabel();
+		var l1 = context.freshLabel();
+		var l2 = context.freshLabel();
+		var l3 = context.freshLabel();
 		return nlJoin(
 				visit(n.left),
 				"push 1",
@@ -460,14 +730,16 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	}
 
 	private String functionCall(CallNode n) {
+		addCall(funLabels.get(n.entry)); // la funzione è già stata visitata: è dichiarata prima dell'uso
 		String argCode = null, getAR = null;
 		for (int i = n.arglist.size() - 1; i >= 0; i--)
-			argCode = nlJoin(argCode, visit(n.arglist.get(i)));
+			argCode = nlJoin(argCode, visitArg(n.arglist, n.forkArgs, i));
 		for (int i = 0; i < n.nl - n.entry.nl; i++)
 			getAR = nlJoin(getAR, "lw"); // static chain of access links
 		return nlJoin(
 				"lfp", // load Control Link (pointer to frame of function "id" caller)
 				argCode, // generate code for argument expressions in reversed order
+				joinCode(n.forkArgs), // wait for arguments evaluated in parallel
 				"lfp", getAR, // retrieve address of frame containing "id" declaration
 				// by following the static chain (of Access Links)
 				"stm", // set $tm to popped value (with the aim of duplicating top of stack) -> tm =
@@ -481,28 +753,24 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	}
 
 	/**
-	 * A differenza dalla chiamata a funzione qui recupero il dispatch pointer dalla
-	 * memoria,
-	 * da lì calcolo l'offset, aggiungendolo, raggiungo l'object pointer.
+	 * A differenza dalla chiamata a funzione qui l'access link è l'object pointer:
+	 * invokevirtual recupera il dispatch pointer dall'oggetto e, aggiungendo
+	 * l'offset, l'indirizzo del metodo a cui saltare.
 	 */
 	private String methodCall(CallNode n) {
+		methodCalls.add(new String[] { currentFunction, currentClass, String.valueOf(n.entry.offset) });
 		String argCode = null, getAR = null;
 		for (int i = n.arglist.size() - 1; i >= 0; i--)
-			argCode = nlJoin(argCode, visit(n.arglist.get(i)));
+			argCode = nlJoin(argCode, visitArg(n.arglist, n.forkArgs, i));
 		for (int i = 0; i < n.nl - n.entry.nl; i++)
 			getAR = nlJoin(getAR, "lw"); // static chain of access links
 		return nlJoin(
 				"lfp", // load Control Link (pointer to frame of function "id" caller)
 				argCode, // generate code for argument expressions in reversed order
+				joinCode(n.forkArgs), // wait for arguments evaluated in parallel
 				"lfp", getAR, // retrieve address of frame containing "id" declaration
 				// by following the static chain (of Access Links)
-				"stm", // set $tm to popped value (with the aim of duplicating top of stack)
-				"ltm", // load Access Link (pointer to frame of function "id" declaration)
-				"ltm", // duplicate top of stack
-				"lw", // load dispatch pointer
-				"push " + n.entry.offset, "add", // compute address of "id" declaration
-				"lw", // load address of "id" method
-				"js" // jump to popped address (saving address of subsequent instruction in $ra)
+				"invokevirtual " + n.entry.offset // jump to "id" method through the dispatch table
 		);
 	}
 
@@ -512,28 +780,24 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	public String visitNode(ClassCallNode node) {
 		if (print)
 			printNode(node, node.id1);
+		methodCalls.add(new String[] { currentFunction, ((RefTypeNode) node.entry.type).id,
+				String.valueOf(node.methodEntry.offset) });
 		String getAR = "";
 		String argCode = "";
 		for (int i = node.args.size() - 1; i >= 0; i--)
-			argCode = nlJoin(argCode, visit(node.args.get(i)));
+			argCode = nlJoin(argCode, visitArg(node.args, node.forkArgs, i));
 		for (int i = 0; i < node.nestingLevel - node.entry.nl; i++)
 			getAR = nlJoin(getAR, "lw"); // static chain of access links
 		return nlJoin(
 				"lfp", // load Control link (pointer to frame of function)
 				argCode, // generate code for argument expressions in reversed order
+				joinCode(node.forkArgs), // wait for arguments evaluated in parallel
 				"lfp", getAR, // retrieve address of id1's frame pointer
 
 				"push " + node.entry.offset, // offset, that added to id1 address, will give us the object pointer
 				"add", // now I have the object pointer in the stack's top
-				"lw", // load object pointer
-				"stm", // set $tm to popped value (with the aim of duplicating top of stack)
-				"ltm", // load Access Link (pointer to frame of function "id" declaration)
-				"ltm", // duplicate top of stack
-				"lw", // load address, to join dispatch table
-				"push " + node.methodEntry.offset,
-				"add", // compute address of "id" declaration
-				"lw", // load address of "id" function
-				"js" // jump to popped address (saving address of subsequent instruction in $ra)
+				"lw", // load object pointer (Access Link of the method)
+				"invokevirtual " + node.methodEntry.offset // jump to "id2" method through the dispatch table
 		);
 	}
 
@@ -564,6 +828,11 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		String getAR = null;
 		for (int i = 0; i < n.nl - n.entry.nl; i++)
 			getAR = nlJoin(getAR, "lw"); // faccio svariati load word, uno per variabile
+		if (n.entry.isField) // l'access link del metodo è l'object pointer, leggo direttamente il campo
+			return nlJoin(
+					"lfp", getAR, // retrieve object pointer by following the static chain
+					"getfield " + n.entry.offset // load value of "id" field
+			);
 		return nlJoin(
 				"lfp", getAR, // retrieve address of frame containing "id" declaration
 								// by following the static chain (of Access Links)
@@ -573,54 +842,33 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		);
 	}
 
+	/**
+	 * Metto sullo stack gli argomenti ed il dispatch pointer, noto a tempo di
+	 * compilazione perché la dispatch table sta nel segmento dati, poi alloc copia
+	 * campi e dispatch pointer sullo heap, lascia l'object pointer sullo stack
+	 * ed incrementa hp una volta sola.
+	 */
 	@Override
 	public String visitNode(NewNode n) {
 		if (print)
 			printNode(n, n.id);
-		String argCode = "";
-		String generatedCode = "";
+		String argCode = null;
 		// put args into stack
 		for (int i = 0; i < n.args.size(); i++)
 			argCode = nlJoin(argCode, visit(n.args.get(i)));
-		for (int i = 0; i < n.args.size(); i++) {
-			generatedCode = nlJoin(generatedCode,
-					"lhp", // push(hp)
-					"sw", // 1. address = pop() -> takes hp value, then memory[address] = pop(), to put
-							// label in heap
-
-					"lhp", // increment hp
-					"push 1",
-					"add",
-					"shp");
-		}
 
 		return nlJoin(
 				argCode,
-				generatedCode,
-
-				// get dispatch pointer from heap
-				"push " + (MEMSIZE + n.sTentry.offset),
-				"lw", // takes dispatch pointer
-
-				// writes dispatch pointer at hp address (heap) -> serve per allocare spazio per
-				// il nuovo oggetto
-				"lhp", // push(hp)
-				"sw", // 1. address = pop() -> takes hp value, then memory[address] = pop()
 
-				// put on stack the object pointer
-				"lhp", // Object pointer, which needs to be returned
-
-				// incremento hp
-				"lhp",
-				"push 1",
-				"add",
-				"shp");
+				"push " + dispatchPointers.get(-n.sTentry.offset - 2), // dispatch pointer (static data segment)
+				"alloc " + n.args.size() // writes fields and dispatch pointer, pushes the object pointer
+		);
 	}
 
 	@Override
 	public String visitNode(BoolNode n) {
 		if (print)
-			printNode(n, n.val.toString());
+			printNode(n, String.valueOf(n.val));
 		return "push " + (n.val ? 1 : 0);
 	}
 
@@ -628,7 +876,7 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	@Override
 	public String visitNode(IntNode n) {
 		if (print)
-			printNode(n, n.val.toString());
+			printNode(n, String.valueOf(n.val));
 		return "push " + n.val;
 	}
 }
\ No newline at end of file
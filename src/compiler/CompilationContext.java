@@ -0,0 +1,101 @@
+package compiler;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import compiler.exc.*;
+
+/**
+ * Stato di una compilazione, condiviso dalle sue fasi: diagnostica, numero di errori di tipo, contatori
+ * delle etichette, codice delle funzioni già generato e relazione di sottotipo tra le classi.
+ *
+ * Ogni compilazione ne crea uno (vedi Compiler.compile), quindi più compilazioni nella stessa JVM, anche
+ * contemporanee su thread diversi, non interferiscono. Non va condiviso tra thread.
+ */
+
+public class CompilationContext {
+
+	private final PrintStream log; // se non è null, la diagnostica viene anche stampata subito
+	private final List<String> diagnostics = new ArrayList<>();
+	final TypeFactory types; // tipi canonici, condivisi con le parti (vedi fork)
+	final TypeRels typeRels;
+	private final String labelPrefix; // spazio dei nomi delle etichette (vedi fork)
+	int typeErrors = 0;
+	private int labCount = 0;
+	private int funlabCount = 0;
+	private final StringBuilder funCode = new StringBuilder(); // codice delle funzioni, in un solo buffer
+
+	public CompilationContext(PrintStream log) {
+		this(log, new TypeRels(new TypeFactory()), "");
+	}
+
+	private CompilationContext(PrintStream log, TypeRels typeRels, String labelPrefix) {
+		this.log = log;
+		this.types = typeRels.types;
+		this.typeRels = typeRels;
+		this.labelPrefix = labelPrefix;
+	}
+
+	public CompilationContext() {
+		this(null);
+	}
+
+	// messaggio di errore (o di avviso) della compilazione
+	public void report(String message) {
+		diagnostics.add(message);
+		if (log != null)
+			log.println(message);
+	}
+
+	void typeError(String where, TypeException e) {
+		typeErrors++;
+		report("Type checking error in " + where + ": " + e.text);
+	}
+
+	/**
+	 * Contesto per una parte della compilazione eseguita su un altro thread: condivide la relazione di
+	 * sottotipo (che a quel punto viene solo letta) e i tipi canonici ma raccoglie a parte diagnostica, errori e codice delle
+	 * funzioni, che join aggiunge poi a questo contesto. Chiamando join nell'ordine delle parti il
+	 * risultato non dipende dall'ordine in cui i thread terminano.
+	 * Le etichette della parte iniziano con labelPrefix, quindi non si confondono con quelle delle altre.
+	 */
+	CompilationContext fork(String labelPrefix) {
+		return new CompilationContext(null, typeRels, labelPrefix);
+	}
+
+	CompilationContext fork() {
+		return fork(labelPrefix);
+	}
+
+	void join(CompilationContext part) {
+		typeErrors += part.typeErrors;
+		for (String message : part.diagnostics)
+			report(message);
+		if (part.funCode.length() > 0)
+			putCode(part.funCode.toString());
+	}
+
+	public List<String> getDiagnostics() {
+		return Collections.unmodifiableList(diagnostics);
+	}
+
+	String freshLabel() {
+		return labelPrefix + "label" + (labCount++);
+	}
+
+	String freshFunLabel() {
+		return labelPrefix + "function" + (funlabCount++);
+	}
+
+	void putCode(String c) {
+		if (funCode.length() > 0)
+			funCode.append('\n');
+		funCode.append('\n').append(c); // linea vuota di separazione prima di codice funzione
+	}
+
+	String getCode() {
+		return funCode.length() == 0 ? null : funCode.toString();
+	}
+}
@@ -0,0 +1,251 @@
+package compiler;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import compiler.lib.*;
+import compiler.exc.*;
+import svm.*;
+
+/**
+ * Le fasi della compilazione, dal sorgente FOOL al Program eseguibile dalla SVM: lexer e parser, AST,
+ * symbol table, type checking, (analisi del parallelismo), generazione del codice, assemblaggio,
+ * verifica e limiti di memoria. Con Options.cache le fasi fino al type checking di un programma già
+ * compilato vengono sostituite dalla lettura del suo EAST (vedi EASTCache).
+ *
+ * compile non usa stato statico: ogni chiamata ha il proprio CompilationContext e i propri visitor,
+ * quindi si può chiamare contemporaneamente da più thread. Gli unici oggetti condivisi sono i DFA dei
+ * parser generati da ANTLR, che sono thread-safe.
+ */
+
+public class Compiler {
+
+	/**
+	 * Il parser generato da ANTLR è ricorsivo: ogni livello di parentesi (o di !) annidate usa meno di
+	 * PARSE_STACK_PER_LEVEL byte di stack. Oltre PARSE_NESTING livelli il parsing viene eseguito su un
+	 * thread con uno stack abbastanza grande (le visite successive usano StackSegments).
+	 */
+	static final int PARSE_NESTING = 500;
+	static final long PARSE_STACK_PER_LEVEL = 1L << 10;
+
+	// opzioni di una compilazione; i valori di default producono codice sequenziale a parole, senza stampe
+	public static class Options {
+		public boolean debug;     // stampa su System.out ST ed EAST
+		public boolean parallel;  // valuta con fork/join gli argomenti indipendenti delle chiamate
+		public boolean compact;   // codifica compatta del codice (vedi svm.CompactCode)
+		public PrintStream log;   // se non è null, la diagnostica viene stampata anche durante la compilazione
+		public ForkJoinPool pool; // se non è null, type checking e generazione del codice delle dichiarazioni sono paralleli
+		public boolean arena;     // genera l'AST piatto (ASTArena), le fasi successive ne usano la vista a oggetti (l'arena non viene tenuta)
+		public boolean scanner;   // lexer scritto a mano (FOOLScanner) al posto di FOOLLexer
+		public boolean sll;       // parsing prima in SLL, ripetuto in LL solo se fallisce (vedi frontEnd)
+		public EASTCache cache;   // se non è null, l'EAST dei programmi senza errori viene letto e salvato qui (non con debug)
+	}
+
+	/**
+	 * Risultato di una compilazione. Le fasi successive ad una con errori non vengono eseguite, quindi i
+	 * loro campi restano null: program è null se e solo se la compilazione è fallita.
+	 */
+	public static class Result {
+		public List<String> diagnostics;
+		public int lexicalErrors;
+		public int syntaxErrors;
+		public int symbolTableErrors;
+		public int typeErrors;
+		public int assemblyErrors;
+		public Node ast;
+		public boolean cached;          // EAST letto da Options.cache: lexer, parser, symbol table e type checking saltati
+		public TypeNode mainType;       // null se non è stato possibile determinarlo
+		public int forkedArgs;          // argomenti valutati in parallelo, con Options.parallel
+		public String asm;
+		public int codeSize;            // parole del codice assemblato
+		public int[] data;              // segmento dati
+		public Map<String, Integer> dataParameters; // vedi CodeGenerationASTVisitor.getDataParameters
+		public boolean verified;        // accettato da Verifier
+		public ResourceBounds bounds;   // null se il codice non è stato verificato
+		public Map<Integer, String> functionNames; // nomi delle funzioni per ResourceBounds.report
+		public int compactSize;         // byte della codifica compatta, con Options.compact
+		public Program program;
+
+		public int frontEndErrors() {
+			return lexicalErrors + syntaxErrors + symbolTableErrors + typeErrors;
+		}
+	}
+
+	public static Result compile(String source, Options options) {
+		CompilationContext context = new CompilationContext(options.log);
+		Result result = new Result();
+		result.diagnostics = context.getDiagnostics();
+
+		EASTCache.Entry cached = options.cache != null && !options.debug ? options.cache.load(source, context.types) : null;
+		if (cached != null) {
+			result.cached = true;
+			result.ast = cached.ast;
+			result.mainType = cached.mainType;
+		} else {
+			frontEnd(source, options, context, result);
+			if (result.frontEndErrors() > 0)
+				return result;
+			if (options.cache != null)
+				options.cache.store(source, result.ast, result.mainType);
+		}
+
+		if (options.parallel) {
+			ParallelismASTVisitor parallelismVisitor = new ParallelismASTVisitor();
+			parallelismVisitor.analyze(result.ast);
+			result.forkedArgs = parallelismVisitor.forkedArgs;
+		}
+		CodeGenerationASTVisitor codeGenVisitor = new CodeGenerationASTVisitor(context, options.pool);
+		result.asm = codeGenVisitor.visit(result.ast);
+		result.dataParameters = codeGenVisitor.getDataParameters();
+
+		SVMLexer lexerASM = new SVMLexer(CharStreams.fromString(result.asm));
+		SVMParser parserASM = new SVMParser(new CommonTokenStream(lexerASM));
+		parserASM.assembly();
+		result.assemblyErrors = lexerASM.lexicalErrors + parserASM.getNumberOfSyntaxErrors();
+		if (result.assemblyErrors > 0)
+			return result;
+		result.codeSize = parserASM.codeSize();
+		result.data = parserASM.data.clone();
+
+		int memSize = ExecuteVM.MEMSIZE;
+		try {
+			Map<Integer, ResourceBounds.FunctionUsage> usage = Verifier.verify(parserASM.code, parserASM.codeSize(),
+					parserASM.codeAddressRefs(), parserASM.data, parserASM.dataAddressRefs());
+			// grafo delle chiamate del compilatore, tradotto in indirizzi di ingresso delle funzioni
+			Map<Integer, List<Integer>> callSites = new HashMap<>();
+			for (var caller : codeGenVisitor.getCallGraph().entrySet()) {
+				List<Integer> callees = new ArrayList<>();
+				for (String callee : caller.getValue())
+					callees.add(entryAddress(parserASM, callee));
+				callSites.put(entryAddress(parserASM, caller.getKey()), callees);
+			}
+			result.functionNames = new HashMap<>();
+			result.functionNames.put(0, CodeGenerationASTVisitor.MAIN);
+			for (String label : codeGenVisitor.getFunctionLabels())
+				result.functionNames.put(parserASM.labelAddress(label), label);
+			result.bounds = new ResourceBounds(usage, callSites, parserASM.data.length);
+			result.verified = true;
+			memSize = result.bounds.memorySize();
+		} catch (VerifyException e) {
+			context.report("Verification error: " + e.text + ", running with dynamic checks.");
+		}
+
+		int stackBound = result.verified ? result.bounds.stackBound : ResourceBounds.UNBOUNDED;
+		if (options.compact && result.verified) {
+			CompactCode compactCode = CompactCode.encode(parserASM.code, parserASM.codeSize(),
+					parserASM.codeAddressRefs(), parserASM.data, parserASM.dataAddressRefs());
+			result.compactSize = compactCode.code.length;
+			result.program = new Program(compactCode, result.verified, memSize, stackBound);
+		} else
+			result.program = new Program(parserASM.code, parserASM.data, Verifier.functionEntries(parserASM.code,
+					parserASM.codeAddressRefs(), parserASM.data, parserASM.dataAddressRefs()), result.verified, memSize, stackBound);
+		return result;
+	}
+
+	// lexer, parser, generazione dell'AST, symbol table e type checking: l'EAST va in result.ast
+	private static void frontEnd(String source, Options options, CompilationContext context, Result result) {
+		FOOLLexer lexer = null;
+		FOOLScanner scanner = null;
+		TokenSource tokenSource;
+		if (options.scanner) {
+			scanner = new FOOLScanner(source.toCharArray());
+			scanner.errorReporter = context::report;
+			tokenSource = scanner.tokenSource();
+		} else {
+			lexer = new FOOLLexer(CharStreams.fromString(source));
+			lexer.errorReporter = context::report;
+			tokenSource = lexer;
+		}
+		FOOLParser parser = new FOOLParser(new CommonTokenStream(tokenSource));
+		parser.removeErrorListeners(); // gli errori di sintassi vanno nella diagnostica, non su System.err
+		ANTLRErrorListener syntaxErrors = new BaseErrorListener() {
+			@Override
+			public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+					int charPositionInLine, String msg, RecognitionException e) {
+				context.report("line " + line + ":" + charPositionInLine + " " + msg);
+			}
+		};
+		int nesting = nesting(source);
+		/*
+		 * Con Options.sll il parsing avviene in due tentativi: il primo con predizione SLL, che non considera il contesto di chiamata
+		 * delle regole (ad esempio nella scelta delle alternative di exp, ricorsiva a sinistra) ed è quindi
+		 * molto più veloce, e che si interrompe al primo errore (BailErrorStrategy); solo se fallisce, per
+		 * un errore di sintassi o perché la decisione richiede il contesto, il programma viene analizzato di
+		 * nuovo in LL completo, con recupero e segnalazione degli errori (l'errore che interrompe SLL non
+		 * va in diagnostica). Se SLL riesce, l'albero è lo stesso di LL. Per questa grammatica la predizione
+		 * LL non ricorre mai al contesto completo, quindi il guadagno è piccolo; un programma con errori di
+		 * sintassi viene invece analizzato due volte.
+		 */
+		FOOLParser.ProgContext st = null;
+		if (options.sll) {
+			parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+			parser.setErrorHandler(new BailErrorStrategy());
+			try {
+				st = parse(parser, nesting);
+			} catch (ParseCancellationException e) {
+				parser.reset(); // riparte dal primo token, già letto: il lexer non viene ripetuto
+				parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+				parser.setErrorHandler(new DefaultErrorStrategy());
+			}
+		}
+		if (st == null) {
+			parser.addErrorListener(syntaxErrors);
+			st = parse(parser, nesting);
+		}
+		result.lexicalErrors = scanner != null ? scanner.lexicalErrors : lexer.lexicalErrors;
+		result.syntaxErrors = parser.getNumberOfSyntaxErrors();
+		if (result.lexicalErrors + result.syntaxErrors > 0)
+			return; // l'albero sintattico è incompleto
+
+		if (options.arena) {
+			ASTArena arena = new ASTArenaGenerationSTVisitor(new ASTArena()).generate(st);
+			st = null; // l'albero sintattico non serve più
+			result.ast = arena.view(); // neanche l'arena: in memoria resta solo la vista
+		} else
+			result.ast = new ASTGenerationSTVisitor(options.debug).visit(st);
+		SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(context);
+		symtableVisitor.visit(result.ast);
+		result.symbolTableErrors = symtableVisitor.stErrors;
+		if (options.debug)
+			new PrintEASTVisitor().visit(result.ast);
+		try {
+			result.mainType = new TypeCheckEASTVisitor(context, options.pool).visit(result.ast);
+		} catch (IncomplException e) {
+			context.report("Could not determine main program expression type due to errors detected before type checking.");
+		} catch (TypeException e) {
+			context.typeError("main program expression", e);
+		}
+		result.typeErrors = context.typeErrors;
+	}
+
+	// parsing del programma, su uno stack abbastanza grande per il suo annidamento
+	private static FOOLParser.ProgContext parse(FOOLParser parser, int nesting) {
+		return nesting <= PARSE_NESTING ? parser.prog()
+				: StackSegments.withStack(StackSegments.SEGMENT_STACK + nesting * PARSE_STACK_PER_LEVEL, parser::prog);
+	}
+
+	// massimo annidamento delle espressioni: parentesi aperte più operatori ! (contati tutti), fuori dai commenti
+	private static int nesting(String source) {
+		int depth = 0, max = 0, nots = 0;
+		for (int i = 0; i < source.length(); i++) {
+			char c = source.charAt(i);
+			if (c == '/' && source.startsWith("*", i + 1)) {
+				int end = source.indexOf("*/", i + 2);
+				i = end < 0 ? source.length() : end + 1;
+			} else if (c == '(' || c == '{')
+				max = Math.max(max, ++depth);
+			else if (c == ')' || c == '}')
+				depth--;
+			else if (c == '!')
+				nots++;
+		}
+		return max + nots;
+	}
+
+	private static int entryAddress(SVMParser parserASM, String label) {
+		return label.equals(CodeGenerationASTVisitor.MAIN) ? 0 : parserASM.labelAddress(label);
+	}
+}
@@ -0,0 +1,144 @@
+package compiler;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import svm.*;
+
+/**
+ * Processo che resta attivo e compila (ed esegue) i programmi FOOL ricevuti da Client su una porta TCP
+ * del loopback, evitando ad ogni compilazione l'avvio della JVM, il caricamento delle classi e la
+ * ricostruzione dei DFA di ANTLR: i DFA di FOOLParser e SVMParser sono statici, quindi restano nella
+ * JVM e si arricchiscono richiesta dopo richiesta, come il codice compilato dal JIT.
+ *
+ * I risultati delle compilazioni (diagnostica, assembly e Program) vengono tenuti in una cache LRU
+ * indicizzata dal sorgente: un programma già compilato viene solo eseguito.
+ * Compilazioni (Compiler.compile) ed esecuzioni, che usano solo il Program immutabile, procedono in
+ * parallelo, una per connessione.
+ *
+ * I programmi dei client non sono fidati: vengono eseguiti con tutti i controlli dinamici (ExecuteVM.cpu())
+ * e con al più MAX_FUEL istruzioni, e un'eccezione durante la compilazione o l'esecuzione diventa la
+ * diagnostica della risposta invece di chiudere la connessione.
+ *
+ * Protocollo (vedi Client): richiesta = comando (check, asm, run o stop) e sorgente;
+ * risposta = numero di errori, diagnostica e output (l'assembly per asm, la stampa del programma per run).
+ * */
+
+public class Daemon {
+
+	public static final int PORT = 5151;
+	static final int CACHE_SIZE = 64;
+	static final long MAX_FUEL = 1_000_000_000L; // un'esecuzione che ricorre troppo a lungo viene fermata
+
+	// risultato di una compilazione: program è null se ci sono errori
+	private static class Compiled {
+		final int errors;
+		final String diagnostics;
+		final String asm;
+		final Program program;
+
+		Compiled(int errors, String diagnostics, String asm, Program program) {
+			this.errors = errors;
+			this.diagnostics = diagnostics;
+			this.asm = asm;
+			this.program = program;
+		}
+	}
+
+	private final Map<String, Compiled> cache = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private final ServerSocket server;
+	private final ExecutorService connections = Executors.newCachedThreadPool();
+
+	Daemon(int port) throws IOException {
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	}
+
+	public static void main(String[] args) throws IOException {
+		Daemon daemon = new Daemon(args.length > 0 ? Integer.parseInt(args[0]) : PORT);
+		System.out.println("FOOL daemon listening on port " + daemon.server.getLocalPort());
+		daemon.serve();
+	}
+
+	private void serve() throws IOException {
+		try {
+			while (true) {
+				Socket socket = server.accept();
+				connections.execute(() -> handle(socket));
+			}
+		} catch (IOException e) {
+			if (!server.isClosed()) throw e; // altrimenti è stato chiuso da stop
+		} finally {
+			connections.shutdown();
+		}
+	}
+
+	private void handle(Socket socket) {
+		try (socket) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			String command = Client.readString(in);
+			String source = Client.readString(in);
+			if (command.equals("stop")) {
+				reply(out, 0, "", "");
+				server.close();
+				return;
+			}
+			Compiled compiled;
+			String output = "";
+			try {
+				compiled = compile(source);
+				if (compiled.program != null && command.equals("asm"))
+					output = compiled.asm;
+				else if (compiled.program != null && command.equals("run"))
+					output = execute(compiled.program);
+			} catch (RuntimeException | StackOverflowError e) {
+				reply(out, 1, "Internal error: " + e + "\n", "");
+				return;
+			}
+			reply(out, compiled.errors, compiled.diagnostics, output);
+		} catch (IOException e) {
+			// il client ha chiuso la connessione
+		}
+	}
+
+	private static void reply(DataOutputStream out, int errors, String diagnostics, String output) throws IOException {
+		out.writeInt(errors);
+		Client.writeString(out, diagnostics);
+		Client.writeString(out, output);
+		out.flush();
+	}
+
+	private static String execute(Program program) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output);
+		if (!new ExecuteVM(program, program.memSize, out).cpu(MAX_FUEL))
+			out.println("Error: Out of fuel");
+		out.flush();
+		return output.toString();
+	}
+
+	private Compiled compile(String source) {
+		synchronized (cache) {
+			Compiled compiled = cache.get(source);
+			if (compiled != null)
+				return compiled;
+		}
+		Compiler.Result result = Compiler.compile(source, new Compiler.Options());
+		int errors = result.frontEndErrors() + result.assemblyErrors;
+		String diagnostics = result.diagnostics.isEmpty() ? "" : String.join("\n", result.diagnostics) + "\n";
+		Compiled compiled = new Compiled(errors, diagnostics, result.asm, result.program);
+		synchronized (cache) {
+			cache.put(source, compiled);
+		}
+		return compiled;
+	}
+}
@@ -0,0 +1,658 @@
+package compiler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import compiler.AST.*;
+import compiler.lib.*;
+
+import static compiler.lib.NodeKind.*;
+
+/**
+ * Cache su disco degli AST arricchiti (EAST) dei programmi compilati senza errori: per un sorgente già
+ * compilato Compiler.compile salta lexer, parser, generazione dell'AST, symbol table e type checking e
+ * passa direttamente alla generazione del codice. Ogni programma è un file della cartella, il cui nome
+ * è lo SHA-256 del sorgente.
+ *
+ * Il file contiene l'AST in forma binaria compatta: i nodi in postordine (i figli prima del padre, quindi
+ * né la scrittura né la lettura sono ricorsive), ognuno con tipo, linea e campi; gli interi sono varint
+ * zigzag. Identificatori, STentry e tipi vengono scritti la prima volta che compaiono e poi indicati con
+ * il loro numero, così le STentry condivise dai nodi (ad esempio la dichiarazione di una funzione e le sue
+ * chiamate) restano un unico oggetto e i tipi letti vengono internati nella TypeFactory della compilazione.
+ *
+ * I file vengono scritti su un file temporaneo e poi rinominati, quindi più compilazioni, anche di processi
+ * diversi, possono usare la stessa cartella. Un file illeggibile, troncato o di una versione diversa del
+ * formato vale come assente; un errore di scrittura lascia semplicemente il programma fuori dalla cache.
+ */
+
+public class EASTCache {
+
+	private static final int MAGIC = 0x45415354; // "EAST"
+	static final int VERSION = 1; // da incrementare ad ogni modifica del formato o dell'AST arricchito
+
+	// un programma in cache: l'EAST e il tipo del programma principale
+	public static class Entry {
+		final Node ast;
+		final TypeNode mainType;
+
+		Entry(Node ast, TypeNode mainType) {
+			this.ast = ast;
+			this.mainType = mainType;
+		}
+	}
+
+	private final Path directory;
+
+	public EASTCache(Path directory) {
+		this.directory = directory;
+	}
+
+	private Path file(String source) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+			return directory.resolve(HexFormat.of().formatHex(hash) + ".east");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // ogni JVM ha SHA-256
+		}
+	}
+
+	// l'EAST di source, con i tipi canonici di types, oppure null se non è in cache
+	Entry load(String source, TypeFactory types) {
+		Path file = file(source);
+		if (!Files.isRegularFile(file))
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return null;
+			return new Decoder(in, types).entry();
+		} catch (IOException | RuntimeException e) {
+			return null; // file non valido: il programma viene ricompilato e il file riscritto
+		}
+	}
+
+	// mette in cache l'EAST di source, compilato senza errori
+	void store(String source, Node ast, TypeNode mainType) {
+		Path file = file(source);
+		Path temp = null;
+		try {
+			Files.createDirectories(directory);
+			temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				new Encoder(out).entry(ast, mainType);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			try {
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	private static void writeVarint(DataOutputStream out, int v) throws IOException {
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	private static int readVarint(DataInputStream in) throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static void writeInt(DataOutputStream out, int v) throws IOException {
+		writeVarint(out, (v << 1) ^ (v >> 31)); // zigzag: i valori piccoli, anche negativi, occupano un byte
+	}
+
+	private static int readInt(DataInputStream in) throws IOException {
+		int v = readVarint(in);
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Scrive un EAST. Identificatori, STentry e tipi sono indicati da 0 se null, dal loro numero più uno
+	 * se già scritti, altrimenti dal prossimo numero seguito dalla loro definizione.
+	 */
+	private static class Encoder {
+		private final DataOutputStream out;
+		private final Map<String, Integer> names = new HashMap<>();
+		private final Map<STentry, Integer> entries = new IdentityHashMap<>();
+		private final Map<TypeNode, Integer> types = new IdentityHashMap<>();
+
+		Encoder(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void entry(Node ast, TypeNode mainType) throws IOException {
+			type(mainType);
+			List<Node> postorder = postorder(ast);
+			writeVarint(out, postorder.size());
+			for (Node n : postorder)
+				node(n);
+		}
+
+		// i nodi dell'albero in postordine, con null per i figli mancanti
+		private static List<Node> postorder(Node root) {
+			List<Node> pending = new ArrayList<>(), reversed = new ArrayList<>();
+			pending.add(root);
+			while (!pending.isEmpty()) {
+				Node n = pending.remove(pending.size() - 1);
+				reversed.add(n);
+				if (n != null)
+					pending.addAll(children(n));
+			}
+			Collections.reverse(reversed);
+			return reversed;
+		}
+
+		// scrive il riferimento ad un elemento: true se è nuovo, quindi ne va scritta la definizione
+		private static <T> boolean reference(DataOutputStream out, Map<T, Integer> defined, T element) throws IOException {
+			if (element == null) {
+				writeVarint(out, 0);
+				return false;
+			}
+			Integer i = defined.get(element);
+			if (i != null) {
+				writeVarint(out, i + 1);
+				return false;
+			}
+			defined.put(element, defined.size());
+			writeVarint(out, defined.size());
+			return true;
+		}
+
+		private void name(String name) throws IOException {
+			if (reference(out, names, name))
+				out.writeUTF(name);
+		}
+
+		private void stEntry(STentry e) throws IOException {
+			if (!reference(out, entries, e))
+				return;
+			writeVarint(out, e.nl);
+			type(e.type);
+			writeInt(out, e.offset);
+			out.writeBoolean(e.isField);
+		}
+
+		// i componenti di un tipo vengono numerati dopo di lui (i tipi sono annidati al più su tre livelli)
+		private void type(TypeNode t) throws IOException {
+			if (!reference(out, types, t))
+				return;
+			out.writeByte(t.kind);
+			if (t instanceof RefTypeNode ref)
+				name(ref.id);
+			else if (t instanceof ArrowTypeNode arrow)
+				writeVarint(out, arrow.parlist.size());
+			else if (t instanceof ClassTypeNode classType) {
+				writeVarint(out, classType.allFields.size());
+				writeVarint(out, classType.allMethods.size());
+			}
+			for (TypeNode c : components(t))
+				type(c);
+		}
+
+		private static List<TypeNode> components(TypeNode t) {
+			if (t instanceof ArrowTypeNode arrow) {
+				List<TypeNode> components = new ArrayList<>(arrow.parlist);
+				components.add(arrow.ret);
+				return components;
+			}
+			if (t instanceof MethodTypeNode method)
+				return List.of(method.arrowTypeNode);
+			if (t instanceof ClassTypeNode classType) {
+				List<TypeNode> components = new ArrayList<>(classType.allFields);
+				components.addAll(classType.allMethods);
+				return components;
+			}
+			return List.of();
+		}
+
+		private void node(Node n) throws IOException {
+			if (n == null) {
+				out.writeByte(OTHER);
+				return;
+			}
+			out.writeByte(n.kind);
+			writeVarint(out, n.getLine() + 1);
+			switch (n.kind) {
+				case PROG_LET_IN:
+					writeVarint(out, ((ProgLetInNode) n).declist.size());
+					break;
+				case FUN: {
+					FunNode fun = (FunNode) n;
+					name(fun.id);
+					stEntry(fun.entry);
+					writeVarint(out, fun.parlist.size());
+					writeVarint(out, fun.declist.size());
+					break;
+				}
+				case METHOD: {
+					MethodNode method = (MethodNode) n;
+					name(method.id);
+					writeInt(out, method.offset);
+					writeVarint(out, method.parlist.size());
+					writeVarint(out, method.declist.size());
+					break;
+				}
+				case PAR:
+					name(((ParNode) n).id);
+					break;
+				case VAR:
+					name(((VarNode) n).id);
+					break;
+				case FIELD:
+					name(((FieldNode) n).id);
+					writeInt(out, ((FieldNode) n).offset);
+					break;
+				case CLASS: {
+					ClassNode c = (ClassNode) n;
+					name(c.classId);
+					name(c.superId);
+					stEntry(c.superEntry);
+					type(c.classType);
+					writeVarint(out, c.fields.size());
+					writeVarint(out, c.methods.size());
+					break;
+				}
+				case ID:
+					name(((IdNode) n).id);
+					stEntry(((IdNode) n).entry);
+					writeVarint(out, ((IdNode) n).nl);
+					break;
+				case CALL: {
+					CallNode call = (CallNode) n;
+					name(call.id);
+					stEntry(call.entry);
+					writeVarint(out, call.nl);
+					writeVarint(out, call.arglist.size());
+					break;
+				}
+				case NEW:
+					name(((NewNode) n).id);
+					stEntry(((NewNode) n).sTentry);
+					writeVarint(out, ((NewNode) n).args.size());
+					break;
+				case CLASS_CALL: {
+					ClassCallNode call = (ClassCallNode) n;
+					name(call.id1);
+					name(call.id2);
+					stEntry(call.entry);
+					stEntry(call.methodEntry);
+					writeVarint(out, call.nestingLevel);
+					writeVarint(out, call.args.size());
+					break;
+				}
+				case INT:
+					writeInt(out, ((IntNode) n).val);
+					break;
+				case BOOL:
+					out.writeBoolean(((BoolNode) n).val);
+					break;
+				case REF_TYPE:
+					name(((RefTypeNode) n).id);
+					break;
+				default: // nodi senza campi oltre ai figli
+			}
+		}
+	}
+
+	// figli di un nodo dell'EAST, nell'ordine dei campi (null se mancanti)
+	private static List<Node> children(Node n) {
+		switch (n.kind) {
+			case PROG_LET_IN: {
+				List<Node> children = new ArrayList<>(((ProgLetInNode) n).declist);
+				children.add(((ProgLetInNode) n).exp);
+				return children;
+			}
+			case PROG: return Collections.singletonList(((ProgNode) n).exp);
+			case FUN: {
+				FunNode fun = (FunNode) n;
+				return function(fun.retType, fun.parlist, fun.declist, fun.exp);
+			}
+			case METHOD: {
+				MethodNode method = (MethodNode) n;
+				return function(method.retType, method.parlist, method.declist, method.exp);
+			}
+			case PAR:
+			case FIELD: return Collections.singletonList(((DecNode) n).getType());
+			case VAR: return Arrays.asList(((VarNode) n).getType(), ((VarNode) n).exp);
+			case CLASS: {
+				List<Node> children = new ArrayList<>(((ClassNode) n).fields);
+				children.addAll(((ClassNode) n).methods);
+				return children;
+			}
+			case PRINT: return Collections.singletonList(((PrintNode) n).exp);
+			case NOT: return Collections.singletonList(((NotNode) n).node);
+			case IF: return Arrays.asList(((IfNode) n).cond, ((IfNode) n).th, ((IfNode) n).el);
+			case EQUAL: return Arrays.asList(((EqualNode) n).left, ((EqualNode) n).right);
+			case GREATER_EQUAL: return Arrays.asList(((GreaterEqualNode) n).left, ((GreaterEqualNode) n).right);
+			case LESS_EQUAL: return Arrays.asList(((LessEqualNode) n).left, ((LessEqualNode) n).right);
+			case TIMES: return Arrays.asList(((TimesNode) n).left, ((TimesNode) n).right);
+			case DIV: return Arrays.asList(((DivNode) n).left, ((DivNode) n).right);
+			case PLUS: return Arrays.asList(((PlusNode) n).left, ((PlusNode) n).right);
+			case MINUS: return Arrays.asList(((MinusNode) n).left, ((MinusNode) n).right);
+			case AND: return Arrays.asList(((AndNode) n).left, ((AndNode) n).right);
+			case OR: return Arrays.asList(((OrNode) n).left, ((OrNode) n).right);
+			case CALL: return ((CallNode) n).arglist;
+			case NEW: return ((NewNode) n).args;
+			case CLASS_CALL: return ((ClassCallNode) n).args;
+			case ID:
+			case INT:
+			case BOOL:
+			case EMPTY:
+			case INT_TYPE:
+			case BOOL_TYPE:
+			case REF_TYPE: return List.of();
+			default: throw new IllegalStateException("Node " + n.getClass().getSimpleName() + " cannot be cached");
+		}
+	}
+
+	private static List<Node> function(TypeNode retType, List<ParNode> parlist, List<DecNode> declist, Node exp) {
+		List<Node> children = new ArrayList<>();
+		children.add(retType);
+		children.addAll(parlist);
+		children.addAll(declist);
+		children.add(exp);
+		return children;
+	}
+
+	// legge un EAST scritto da Encoder: ogni nodo prende i suoi figli dalla cima della pila dei nodi letti
+	private static class Decoder {
+		private final DataInputStream in;
+		private final TypeFactory typeFactory;
+		private final List<String> names = new ArrayList<>();
+		private final List<STentry> entries = new ArrayList<>();
+		private final List<TypeNode> types = new ArrayList<>();
+		private final List<Node> stack = new ArrayList<>();
+
+		Decoder(DataInputStream in, TypeFactory typeFactory) {
+			this.in = in;
+			this.typeFactory = typeFactory;
+		}
+
+		Entry entry() throws IOException {
+			TypeNode mainType = type();
+			int size = readVarint(in);
+			for (int i = 0; i < size; i++)
+				stack.add(node());
+			if (stack.size() != 1 || in.read() != -1)
+				throw new IOException("Malformed EAST");
+			return new Entry(stack.get(0), mainType);
+		}
+
+		private static final int NULL_REFERENCE = -2, DEFINITION = -1; // NEW è un NodeKind
+
+		// numero di un elemento già letto, NULL_REFERENCE, oppure DEFINITION se segue la definizione del prossimo
+		private int reference(int defined) throws IOException {
+			int v = readVarint(in);
+			if (v == 0)
+				return NULL_REFERENCE;
+			if (v <= defined)
+				return v - 1;
+			if (v == defined + 1)
+				return DEFINITION;
+			throw new IOException("Malformed EAST reference");
+		}
+
+		private String name() throws IOException {
+			int i = reference(names.size());
+			if (i == NULL_REFERENCE)
+				return null;
+			if (i != DEFINITION)
+				return names.get(i);
+			String name = in.readUTF();
+			names.add(name);
+			return name;
+		}
+
+		private STentry stEntry() throws IOException {
+			int i = reference(entries.size());
+			if (i == NULL_REFERENCE)
+				return null;
+			if (i != DEFINITION)
+				return entries.get(i);
+			STentry e = new STentry(readVarint(in), type(), readInt(in), in.readBoolean());
+			entries.add(e);
+			return e;
+		}
+
+		private TypeNode type() throws IOException {
+			int i = reference(types.size());
+			if (i == NULL_REFERENCE)
+				return null;
+			if (i != DEFINITION)
+				return types.get(i);
+			int index = types.size();
+			types.add(null); // il numero del tipo precede quelli dei suoi componenti
+			TypeNode t;
+			int kind = in.readUnsignedByte();
+			switch (kind) {
+				case INT_TYPE: t = TypeFactory.INT; break;
+				case BOOL_TYPE: t = TypeFactory.BOOL; break;
+				case EMPTY_TYPE: t = TypeFactory.EMPTY; break;
+				case REF_TYPE: t = typeFactory.ref(name()); break;
+				case ARROW_TYPE: {
+					int pars = readVarint(in);
+					List<TypeNode> parlist = new ArrayList<>(pars);
+					for (int p = 0; p < pars; p++)
+						parlist.add(type());
+					t = typeFactory.arrow(parlist, type());
+					break;
+				}
+				case METHOD_TYPE: t = typeFactory.method((ArrowTypeNode) type()); break;
+				case CLASS_TYPE: {
+					int fields = readVarint(in), methods = readVarint(in);
+					PersistentVector<TypeNode> allFields = PersistentVector.empty();
+					PersistentVector<ArrowTypeNode> allMethods = PersistentVector.empty();
+					for (int f = 0; f < fields; f++)
+						allFields = allFields.plus(type());
+					for (int m = 0; m < methods; m++)
+						allMethods = allMethods.plus((ArrowTypeNode) type());
+					t = new ClassTypeNode(allFields, allMethods);
+					break;
+				}
+				default: throw new IOException("Malformed EAST type " + kind);
+			}
+			types.set(index, t);
+			return t;
+		}
+
+		// gli ultimi count nodi della pila, in ordine
+		@SuppressWarnings("unchecked")
+		private <T extends Node> List<T> pop(int count) throws IOException {
+			if (count > stack.size())
+				throw new IOException("Malformed EAST");
+			List<Node> top = stack.subList(stack.size() - count, stack.size());
+			List<T> nodes = new ArrayList<>(count);
+			for (Node n : top)
+				nodes.add((T) n);
+			top.clear();
+			return nodes;
+		}
+
+		@SuppressWarnings("unchecked")
+		private <T extends Node> T pop() throws IOException {
+			return (T) pop(1).get(0);
+		}
+
+		private Node node() throws IOException {
+			int kind = in.readUnsignedByte();
+			if (kind == OTHER)
+				return null;
+			int line = readVarint(in) - 1;
+			Node n;
+			switch (kind) {
+				case PROG_LET_IN: {
+					int decs = readVarint(in);
+					Node exp = pop();
+					n = new ProgLetInNode(pop(decs), exp);
+					break;
+				}
+				case PROG: n = new ProgNode(pop()); break;
+				case FUN: {
+					String id = name();
+					STentry entry = stEntry();
+					int pars = readVarint(in), decs = readVarint(in);
+					Node exp = pop();
+					List<DecNode> declist = pop(decs);
+					List<ParNode> parlist = pop(pars);
+					FunNode fun = new FunNode(id, pop(), parlist, declist, exp);
+					fun.entry = entry;
+					n = fun;
+					break;
+				}
+				case METHOD: {
+					String id = name();
+					int offset = readInt(in);
+					int pars = readVarint(in), decs = readVarint(in);
+					Node exp = pop();
+					List<DecNode> declist = pop(decs);
+					List<ParNode> parlist = pop(pars);
+					MethodNode method = new MethodNode(id, pop(), parlist, declist, exp);
+					method.offset = offset;
+					n = method;
+					break;
+				}
+				case PAR: n = new ParNode(name(), pop()); break;
+				case VAR: {
+					String id = name();
+					Node exp = pop();
+					n = new VarNode(id, pop(), exp);
+					break;
+				}
+				case FIELD: {
+					String id = name();
+					int offset = readInt(in);
+					FieldNode field = new FieldNode(id, pop());
+					field.offset = offset;
+					n = field;
+					break;
+				}
+				case CLASS: {
+					String classId = name(), superId = name();
+					STentry superEntry = stEntry();
+					TypeNode classType = type();
+					int fields = readVarint(in), methods = readVarint(in);
+					List<MethodNode> methodList = pop(methods);
+					ClassNode c = new ClassNode(classId, pop(fields), methodList, superId);
+					c.superEntry = superEntry;
+					c.classType = (ClassTypeNode) classType;
+					n = c;
+					break;
+				}
+				case PRINT: n = new PrintNode(pop()); break;
+				case NOT: n = new NotNode(pop()); break;
+				case IF: {
+					Node el = pop(), th = pop();
+					n = new IfNode(pop(), th, el);
+					break;
+				}
+				case EQUAL: {
+					Node right = pop();
+					n = new EqualNode(pop(), right);
+					break;
+				}
+				case GREATER_EQUAL: {
+					Node right = pop();
+					n = new GreaterEqualNode(pop(), right);
+					break;
+				}
+				case LESS_EQUAL: {
+					Node right = pop();
+					n = new LessEqualNode(pop(), right);
+					break;
+				}
+				case TIMES: {
+					Node right = pop();
+					n = new TimesNode(pop(), right);
+					break;
+				}
+				case DIV: {
+					Node right = pop();
+					n = new DivNode(pop(), right);
+					break;
+				}
+				case PLUS: {
+					Node right = pop();
+					n = new PlusNode(pop(), right);
+					break;
+				}
+				case MINUS: {
+					Node right = pop();
+					n = new MinusNode(pop(), right);
+					break;
+				}
+				case AND: {
+					Node right = pop();
+					n = new AndNode(pop(), right);
+					break;
+				}
+				case OR: {
+					Node right = pop();
+					n = new OrNode(pop(), right);
+					break;
+				}
+				case ID: {
+					IdNode id = new IdNode(name());
+					id.entry = stEntry();
+					id.nl = readVarint(in);
+					n = id;
+					break;
+				}
+				case CALL: {
+					String id = name();
+					STentry entry = stEntry();
+					int nl = readVarint(in);
+					CallNode call = new CallNode(id, pop(readVarint(in)));
+					call.entry = entry;
+					call.nl = nl;
+					n = call;
+					break;
+				}
+				case NEW: {
+					String id = name();
+					STentry entry = stEntry();
+					NewNode newNode = new NewNode(id, pop(readVarint(in)));
+					newNode.sTentry = entry;
+					n = newNode;
+					break;
+				}
+				case CLASS_CALL: {
+					String id1 = name(), id2 = name();
+					STentry entry = stEntry(), methodEntry = stEntry();
+					int nestingLevel = readVarint(in);
+					ClassCallNode call = new ClassCallNode(id1, id2, pop(readVarint(in)));
+					call.entry = entry;
+					call.methodEntry = methodEntry;
+					call.nestingLevel = nestingLevel;
+					n = call;
+					break;
+				}
+				case INT: n = new IntNode(readInt(in)); break;
+				case BOOL: n = new BoolNode(in.readBoolean()); break;
+				case EMPTY: n = new EmptyNode(); break;
+				case INT_TYPE: n = new IntTypeNode(); break;
+				case BOOL_TYPE: n = new BoolTypeNode(); break;
+				case REF_TYPE: n = new RefTypeNode(name()); break;
+				default: throw new IOException("Malformed EAST node " + kind);
+			}
+			n.setLine(line);
+			return n;
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package compiler;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Pair;
+
+import static compiler.FOOLLexer.*;
+
+/**
+ * Lexer di FOOL scritto a mano, con gli stessi token di FOOLLexer (le regole lessicali di FOOL.g4): il
+ * sorgente viene scandito una sola volta in array paralleli di interi (tipo, inizio, lunghezza, linea e
+ * colonna di ogni token), senza creare oggetti. Spazi e commenti non vengono memorizzati; i caratteri
+ * non validi (ERR) sì, perché vanno segnalati.
+ *
+ * Come FOOLLexer vale il match più lungo e, a parità di lunghezza, la prima regola: "iffy" è un ID, "007"
+ * sono tre NUM, un commento non chiuso è DIV seguito da TIMES. Le colonne contano i code point, come
+ * i CharStream di ANTLR.
+ *
+ * tokenSource() lo rende utilizzabile da FOOLParser al posto di FOOLLexer: crea i token (solo quelli del
+ * canale di default) man mano che il parser li chiede e, come FOOLLexer, segnala i caratteri non validi
+ * quando li attraversa, quindi la diagnostica ha lo stesso ordine.
+ */
+
+public class FOOLScanner {
+
+	public int lexicalErrors = 0;
+	public Consumer<String> errorReporter = System.out::println; // ad esempio CompilationContext::report
+
+	private final char[] chars;
+	private int size = 0;
+	private int[] kind;
+	private int[] start;
+	private int[] length;
+	private int[] line;
+	private int[] column;
+	private int endLine, endColumn; // posizione dell'EOF
+
+	public FOOLScanner(char[] chars) {
+		this.chars = chars;
+		int capacity = chars.length / 4 + 16;
+		kind = new int[capacity];
+		start = new int[capacity];
+		length = new int[capacity];
+		line = new int[capacity];
+		column = new int[capacity];
+		scan();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int kind(int t) {
+		return kind[t];
+	}
+
+	public int start(int t) {
+		return start[t];
+	}
+
+	public int length(int t) {
+		return length[t];
+	}
+
+	public int line(int t) {
+		return line[t];
+	}
+
+	public int column(int t) {
+		return column[t];
+	}
+
+	public String text(int t) {
+		return new String(chars, start[t], length[t]);
+	}
+
+	private void add(int tokenKind, int tokenStart, int tokenLength, int tokenLine, int tokenColumn) {
+		if (size == kind.length) {
+			int capacity = 2 * size;
+			kind = Arrays.copyOf(kind, capacity);
+			start = Arrays.copyOf(start, capacity);
+			length = Arrays.copyOf(length, capacity);
+			line = Arrays.copyOf(line, capacity);
+			column = Arrays.copyOf(column, capacity);
+		}
+		kind[size] = tokenKind;
+		start[size] = tokenStart;
+		length[size] = tokenLength;
+		line[size] = tokenLine;
+		column[size] = tokenColumn;
+		size++;
+	}
+
+	private void scan() {
+		int n = chars.length, i = 0, currentLine = 1, currentColumn = 0;
+		while (i < n) {
+			char c = chars[i];
+			int end; // fine del token che inizia in i
+			int tokenKind;
+			if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+				end = i;
+				while (end < n && ((c = chars[end]) == ' ' || c == '\t' || c == '\r' || c == '\n')) {
+					if (c == '\n') {
+						currentLine++;
+						currentColumn = 0;
+					} else
+						currentColumn++;
+					end++;
+				}
+				i = end;
+				continue;
+			}
+			if (c == '/' && i + 1 < n && chars[i + 1] == '*') {
+				int close = commentEnd(i + 2);
+				if (close >= 0) {
+					for (int k = i; k < close; k++)
+						if (chars[k] == '\n') {
+							currentLine++;
+							currentColumn = 0;
+						} else if (!isSecondHalf(k))
+							currentColumn++;
+					i = close;
+					continue;
+				}
+			}
+			if (isLetter(c)) {
+				end = i + 1;
+				while (end < n && (isLetter(chars[end]) || isDigit(chars[end])))
+					end++;
+				tokenKind = keyword(i, end - i);
+			} else if (c == '0') {
+				end = i + 1;
+				tokenKind = NUM;
+			} else if (isDigit(c)) {
+				end = i + 1;
+				while (end < n && isDigit(chars[end]))
+					end++;
+				tokenKind = NUM;
+			} else {
+				end = i + 1;
+				char next = i + 1 < n ? chars[i + 1] : 0;
+				switch (c) {
+					case '+': tokenKind = PLUS; break;
+					case '-': tokenKind = MINUS; break;
+					case '*': tokenKind = TIMES; break;
+					case '/': tokenKind = DIV; break;
+					case '(': tokenKind = LPAR; break;
+					case ')': tokenKind = RPAR; break;
+					case '{': tokenKind = CLPAR; break;
+					case '}': tokenKind = CRPAR; break;
+					case ';': tokenKind = SEMIC; break;
+					case ':': tokenKind = COLON; break;
+					case ',': tokenKind = COMMA; break;
+					case '.': tokenKind = DOT; break;
+					case '!': tokenKind = NOT; break;
+					case '|': tokenKind = next == '|' ? OR : ERR; break;
+					case '&': tokenKind = next == '&' ? AND : ERR; break;
+					case '>': tokenKind = next == '=' ? GE : ERR; break;
+					case '<': tokenKind = next == '=' ? LE : ERR; break;
+					case '=': tokenKind = next == '=' ? EQ : ASS; break;
+					default: tokenKind = ERR;
+				}
+				if (tokenKind == OR || tokenKind == AND || tokenKind == GE || tokenKind == LE || tokenKind == EQ)
+					end = i + 2;
+				else if (tokenKind == ERR && Character.isHighSurrogate(c) && next != 0 && Character.isLowSurrogate(next))
+					end = i + 2; // un carattere non valido è un code point
+			}
+			add(tokenKind, i, end - i, currentLine, currentColumn);
+			currentColumn += tokenKind == ERR ? 1 : end - i; // gli altri token sono ASCII
+			i = end;
+		}
+		endLine = currentLine;
+		endColumn = currentColumn;
+	}
+
+	// indice dopo il primo "*/" a partire da from, -1 se il commento non è chiuso
+	private int commentEnd(int from) {
+		for (int k = from; k + 1 < chars.length; k++)
+			if (chars[k] == '*' && chars[k + 1] == '/')
+				return k + 2;
+		return -1;
+	}
+
+	// true se chars[k] è la seconda metà di un code point (non conta come colonna)
+	private boolean isSecondHalf(int k) {
+		return k > 0 && Character.isLowSurrogate(chars[k]) && Character.isHighSurrogate(chars[k - 1]);
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	// parola chiave di chars[from .. from+count-1], oppure ID
+	private int keyword(int from, int count) {
+		switch (chars[from]) {
+			case 'b': return is(from, count, "bool") ? BOOL : ID;
+			case 'c': return is(from, count, "class") ? CLASS : ID;
+			case 'e': return is(from, count, "else") ? ELSE : is(from, count, "extends") ? EXTENDS : ID;
+			case 'f': return is(from, count, "false") ? FALSE : is(from, count, "fun") ? FUN : ID;
+			case 'i': return is(from, count, "if") ? IF : is(from, count, "in") ? IN : is(from, count, "int") ? INT : ID;
+			case 'l': return is(from, count, "let") ? LET : ID;
+			case 'n': return is(from, count, "new") ? NEW : is(from, count, "null") ? NULL : ID;
+			case 'p': return is(from, count, "print") ? PRINT : ID;
+			case 't': return is(from, count, "true") ? TRUE : is(from, count, "then") ? THEN : ID;
+			case 'v': return is(from, count, "var") ? VAR : ID;
+			default: return ID;
+		}
+	}
+
+	private boolean is(int from, int count, String word) {
+		if (count != word.length())
+			return false;
+		for (int k = 1; k < count; k++) // il primo carattere è già stato confrontato
+			if (chars[from + k] != word.charAt(k))
+				return false;
+		return true;
+	}
+
+	// i token per FOOLParser, da usare con un CommonTokenStream
+	public TokenSource tokenSource() {
+		return new Tokens();
+	}
+
+	// token con testo calcolato solo se richiesto (ad esempio per un ID o un messaggio di errore)
+	private final class ScannedToken extends CommonToken {
+		private static final long serialVersionUID = 1L;
+
+		ScannedToken(Pair<TokenSource, CharStream> source, int type, int start, int stop, int line, int column) {
+			super(source, type, Token.DEFAULT_CHANNEL, start, stop);
+			this.line = line;
+			this.charPositionInLine = column;
+		}
+
+		@Override
+		public String getText() {
+			if (text == null)
+				text = type == EOF ? "<EOF>" : new String(chars, start, stop - start + 1);
+			return text;
+		}
+	}
+
+	private final class Tokens implements TokenSource {
+		private final Pair<TokenSource, CharStream> source = new Pair<>(this, null);
+		private TokenFactory<?> factory = CommonTokenFactory.DEFAULT; // per i token inseriti dal recupero degli errori
+		private int next = 0;
+
+		@Override
+		public Token nextToken() {
+			while (next < size && kind[next] == ERR) {
+				errorReporter.accept("Invalid char: " + text(next) + " at line " + line[next]);
+				lexicalErrors++;
+				next++;
+			}
+			if (next == size)
+				return new ScannedToken(source, EOF, chars.length, chars.length - 1, endLine, endColumn);
+			int t = next++;
+			return new ScannedToken(source, kind[t], start[t], start[t] + length[t] - 1, line[t], column[t]);
+		}
+
+		@Override
+		public int getLine() {
+			return next < size ? line[next] : endLine;
+		}
+
+		@Override
+		public int getCharPositionInLine() {
+			return next < size ? column[next] : endColumn;
+		}
+
+		@Override
+		public CharStream getInputStream() {
+			return null; // i token leggono il testo direttamente dal sorgente
+		}
+
+		@Override
+		public String getSourceName() {
+			return IntStream.UNKNOWN_SOURCE_NAME;
+		}
+
+		@Override
+		public void setTokenFactory(TokenFactory<?> factory) {
+			this.factory = factory;
+		}
+
+		@Override
+		public TokenFactory<?> getTokenFactory() {
+			return factory;
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package compiler;
+
+import compiler.AST.*;
+import compiler.lib.*;
+import compiler.exc.*;
+
+import java.util.*;
+
+/**
+ * Analisi di purezza e di costo, per valutare in parallelo gli argomenti delle chiamate.
+ *
+ * A parte print, le espressioni FOOL non hanno effetti collaterali (variabili e campi sono immutabili):
+ * un'espressione è pura se non contiene print e chiama solo funzioni e metodi puri, quindi due argomenti
+ * puri della stessa chiamata sono indipendenti.
+ * Il costo è una stima del lavoro: ogni chiamata vale CALL_COST, perché può ricorrere, gli altri nodi uno.
+ *
+ * In una chiamata con almeno due argomenti puri di costo almeno CALL_COST, tutti tranne l'ultimo valutato
+ * (quello di indice minore, gli argomenti vengono messi sullo stack in ordine inverso) sono marcati in
+ * forkArgs: la generazione del codice li valuta con fork, il chiamante valuta l'ultimo e poi fa join.
+ *
+ * Una funzione è impura se lo è il suo corpo, che può chiamare la funzione stessa: la visita viene
+ * ripetuta finché l'insieme delle funzioni impure non cambia. I metodi sono identificati per nome,
+ * perché con il binding dinamico una chiamata può eseguire il metodo di una qualsiasi sottoclasse.
+ */
+
+public class ParallelismASTVisitor extends BaseASTVisitor<ParallelismASTVisitor.Effect, VoidException> {
+
+	static final int CALL_COST = 100;
+
+	// risultato della visita di un'espressione
+	static class Effect {
+		final boolean pure;
+		final int cost;
+
+		Effect(boolean pure, int cost) {
+			this.pure = pure;
+			this.cost = cost;
+		}
+	}
+
+	private static final Effect LEAF = new Effect(true, 1);
+
+	private final Set<STentry> impureFunctions = new HashSet<>();
+	private final Set<String> impureMethods = new HashSet<>();
+	private boolean changed;
+	int forkedArgs; // argomenti marcati nell'ultima visita
+
+	ParallelismASTVisitor() {
+	}
+
+	ParallelismASTVisitor(boolean debug) {
+		super(false, debug);
+	} // enables print for debugging
+
+	// visita ripetuta fino al punto fisso, i forkArgs dell'ultima visita sono quelli definitivi
+	public void analyze(Node ast) {
+		do {
+			changed = false;
+			forkedArgs = 0;
+			visit(ast);
+		} while (changed);
+	}
+
+	private static Effect combine(Effect... effects) {
+		boolean pure = true;
+		int cost = 1;
+		for (Effect e : effects) {
+			pure &= e.pure;
+			cost += e.cost;
+		}
+		return new Effect(pure, cost);
+	}
+
+	private List<Effect> visitArgs(List<Node> args) {
+		List<Effect> effects = new ArrayList<>();
+		for (Node arg : args)
+			effects.add(visit(arg));
+		return effects;
+	}
+
+	// argomenti da valutare con fork: i puri e costosi, tranne quello di indice minore
+	private boolean[] forkArgs(List<Effect> effects) {
+		boolean[] fork = new boolean[effects.size()];
+		int count = 0;
+		for (int i = 0; i < effects.size(); i++)
+			if (effects.get(i).pure && effects.get(i).cost >= CALL_COST) {
+				fork[i] = count > 0; // il primo, valutato per ultimo, resta al chiamante
+				count++;
+			}
+		if (count < 2)
+			return null;
+		forkedArgs += count - 1;
+		return fork;
+	}
+
+	private Effect call(boolean calleePure, List<Effect> args) {
+		Effect e = combine(args.toArray(new Effect[0]));
+		return new Effect(calleePure && e.pure, e.cost + CALL_COST);
+	}
+
+	// il corpo di una funzione o di un metodo, con le dichiarazioni locali
+	private Effect body(List<DecNode> declist, Node exp) {
+		List<Effect> effects = new ArrayList<>();
+		for (Node dec : declist)
+			effects.add(visit(dec));
+		effects.add(visit(exp));
+		return combine(effects.toArray(new Effect[0]));
+	}
+
+	@Override
+	public Effect visitNode(ProgLetInNode n) {
+		if (print)
+			printNode(n);
+		for (Node dec : n.declist)
+			visit(dec);
+		return visit(n.exp);
+	}
+
+	@Override
+	public Effect visitNode(ProgNode n) {
+		if (print)
+			printNode(n);
+		return visit(n.exp);
+	}
+
+	@Override
+	public Effect visitNode(FunNode n) {
+		if (print)
+			printNode(n, n.id);
+		if (!body(n.declist, n.exp).pure && impureFunctions.add(n.entry))
+			changed = true;
+		return LEAF;
+	}
+
+	@Override
+	public Effect visitNode(MethodNode n) {
+		if (print)
+			printNode(n, n.id);
+		if (!body(n.declist, n.exp).pure && impureMethods.add(n.id))
+			changed = true;
+		return LEAF;
+	}
+
+	@Override
+	public Effect visitNode(ClassNode n) {
+		if (print)
+			printNode(n, n.classId);
+		for (MethodNode method : n.methods)
+			visit(method);
+		return LEAF;
+	}
+
+	@Override
+	public Effect visitNode(VarNode n) {
+		if (print)
+			printNode(n, n.id);
+		return visit(n.exp);
+	}
+
+	@Override
+	public Effect visitNode(PrintNode n) {
+		if (print)
+			printNode(n);
+		return new Effect(false, visit(n.exp).cost + 1);
+	}
+
+	@Override
+	public Effect visitNode(IfNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.cond), visit(n.th), visit(n.el));
+	}
+
+	@Override
+	public Effect visitNode(EqualNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(TimesNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(PlusNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(GreaterEqualNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(LessEqualNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(OrNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(AndNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(DivNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(MinusNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.left), visit(n.right));
+	}
+
+	@Override
+	public Effect visitNode(NotNode n) {
+		if (print)
+			printNode(n);
+		return combine(visit(n.node));
+	}
+
+	@Override
+	public Effect visitNode(CallNode n) {
+		if (print)
+			printNode(n, n.id);
+		boolean pure = n.entry.type instanceof MethodTypeNode ? !impureMethods.contains(n.id)
+				: !impureFunctions.contains(n.entry);
+		List<Effect> args = visitArgs(n.arglist);
+		n.forkArgs = forkArgs(args);
+		return call(pure, args);
+	}
+
+	@Override
+	public Effect visitNode(ClassCallNode n) {
+		if (print)
+			printNode(n, n.id1 + "." + n.id2);
+		List<Effect> args = visitArgs(n.args);
+		n.forkArgs = forkArgs(args);
+		return call(!impureMethods.contains(n.id2), args);
+	}
+
+	@Override
+	public Effect visitNode(NewNode n) {
+		if (print)
+			printNode(n, n.id);
+		return combine(visitArgs(n.args).toArray(new Effect[0]));
+	}
+
+	@Override
+	public Effect visitNode(IdNode n) {
+		if (print)
+			printNode(n, n.id);
+		return LEAF;
+	}
+
+	@Override
+	public Effect visitNode(BoolNode n) {
+		if (print)
+			printNode(n, String.valueOf(n.val));
+		return LEAF;
+	}
+
+	@Override
+	public Effect visitNode(IntNode n) {
+		if (print)
+			printNode(n, String.valueOf(n.val));
+		return LEAF;
+	}
+
+	@Override
+	public Effect visitNode(EmptyNode n) {
+		if (print)
+			printNode(n);
+		return LEAF;
+	}
+}
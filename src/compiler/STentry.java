@@ -6,7 +6,9 @@ public class STentry implements Visitable {
 	final int nl; // nesting level
 	final TypeNode type; //tipo
 	final int offset; // mi permette di ricordare quale sia la variabile in considerazione
-	public STentry(int n, TypeNode t, int o) { nl = n; type = t; offset=o; }
+	final boolean isField; // true se la entry è un campo di una classe (si accede tramite object pointer)
+	public STentry(int n, TypeNode t, int o) { this(n, t, o, false); }
+	public STentry(int n, TypeNode t, int o, boolean f) { nl = n; type = t; offset=o; isField=f; }
 
 	/**
 	 * Funziona come gli altri accept dell'ast.
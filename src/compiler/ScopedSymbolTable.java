@@ -0,0 +1,145 @@
+package compiler;
+
+import java.util.*;
+import compiler.lib.*;
+
+/**
+ * Symbol table "piatta" usata da SymbolTableASTVisitor al posto della lista di hashtable.
+ * Gli identificatori vengono internati, cioè associati una volta per tutte ad un intero (il simbolo),
+ * e per ogni simbolo si tiene la pila delle sue dichiarazioni visibili: in cima c'è quella dello scope
+ * più interno, che nasconde le altre. Il lookup legge quindi solo la cima della pila, senza scorrere
+ * le tabelle degli scope racchiudenti.
+ *
+ * Ogni dichiarazione viene anche annotata in un log (undo log): uscendo da uno scope si tolgono dalle
+ * pile solo i simboli dichiarati dopo esserci entrati, in tempo proporzionale alle dichiarazioni dello
+ * scope e non al numero di simboli.
+ *
+ * Lo scope di una classe è invece uno scope "di membri": le sue dichiarazioni (campi e metodi, anche
+ * ereditati) stanno nella virtual table della classe, una PersistentMap che parte da quella della
+ * superclasse, così entrando nello scope non si copiano né si dichiarano uno ad uno i membri ereditati.
+ */
+
+class ScopedSymbolTable {
+
+	// dichiarazione di un simbolo, con quella che nasconde (dello scope racchiudente)
+	private static class Binding {
+		STentry entry;
+		final int level;
+		final Binding hidden;
+
+		Binding(STentry entry, int level, Binding hidden) {
+			this.entry = entry;
+			this.level = level;
+			this.hidden = hidden;
+		}
+	}
+
+	private final Map<String, Integer> symbols = new HashMap<>();
+	private Binding[] bindings = new Binding[64]; // cima della pila di ogni simbolo, null se non visibile
+	private int[] log = new int[64]; // simboli dichiarati, nell'ordine
+	private int logSize = 0;
+	private int[] scopeStart = new int[16]; // per ogni scope aperto, la dimensione del log all'ingresso
+	private int level = -1; // scope corrente, -1 se non ce ne sono
+	private PersistentMap<STentry> members = null; // dichiarazioni dello scope di membri aperto
+	private int membersLevel = -1; // livello dello scope di membri, -1 se non ce n'è uno aperto
+
+	// simbolo dell'identificatore id
+	int intern(String id) {
+		Integer symbol = symbols.get(id);
+		if (symbol == null) {
+			symbol = symbols.size();
+			symbols.put(id, symbol);
+			if (symbol == bindings.length)
+				bindings = Arrays.copyOf(bindings, 2 * symbol);
+		}
+		return symbol;
+	}
+
+	void enterScope() {
+		if (++level == scopeStart.length)
+			scopeStart = Arrays.copyOf(scopeStart, 2 * level);
+		scopeStart[level] = logSize;
+	}
+
+	// apre uno scope di membri che inizialmente contiene members (le classi sono solo globali, quindi
+	// non ce n'è mai più di uno aperto)
+	void enterScope(PersistentMap<STentry> members) {
+		enterScope();
+		this.members = members;
+		membersLevel = level;
+	}
+
+	// dichiarazioni dello scope di membri aperto
+	PersistentMap<STentry> members() {
+		return members;
+	}
+
+	void exitScope() {
+		if (level == membersLevel) {
+			members = null;
+			membersLevel = -1;
+		}
+		int start = scopeStart[level--];
+		while (logSize > start) {
+			int symbol = log[--logSize];
+			bindings[symbol] = bindings[symbol].hidden;
+		}
+	}
+
+	/**
+	 * Dichiara id nello scope corrente, sostituendo (come Map.put) l'eventuale dichiarazione dello
+	 * stesso scope, che viene restituita; null se id non era dichiarato nello scope corrente.
+	 */
+	STentry put(String id, STentry entry) {
+		return put(intern(id), entry);
+	}
+
+	private STentry put(int symbol, STentry entry) {
+		if (level == membersLevel) {
+			STentry previous = members.get(symbol);
+			members = members.with(symbol, entry);
+			return previous;
+		}
+		Binding top = bindings[symbol];
+		if (top != null && top.level == level) {
+			STentry previous = top.entry;
+			top.entry = entry;
+			return previous;
+		}
+		bindings[symbol] = new Binding(entry, level, top);
+		if (logSize == log.length)
+			log = Arrays.copyOf(log, 2 * logSize);
+		log[logSize++] = symbol;
+		return null;
+	}
+
+	// dichiarazione visibile di id (quella dello scope più interno), null se non è dichiarato
+	STentry lookup(String id) {
+		int symbol = intern(id);
+		Binding top = bindings[symbol];
+		if (membersLevel >= 0 && (top == null || top.level < membersLevel)) {
+			STentry member = members.get(symbol);
+			if (member != null)
+				return member;
+		}
+		return top == null ? null : top.entry;
+	}
+
+	// dichiarazione di id nello scope corrente
+	STentry lookupLocal(String id) {
+		int symbol = intern(id); // prima di leggere bindings, che intern può riallocare
+		if (level == membersLevel)
+			return members.get(symbol);
+		Binding top = bindings[symbol];
+		return top != null && top.level == level ? top.entry : null;
+	}
+
+	// dichiarazione di id nello scope globale, anche se nascosta
+	STentry lookupGlobal(String id) {
+		int symbol = intern(id);
+		Binding binding = bindings[symbol];
+		while (binding != null && binding.level > 0)
+			binding = binding.hidden;
+		return binding == null ? null : binding.entry;
+	}
+}
@@ -55,31 +55,50 @@ import compiler.lib.*;
 public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 
 	/**
-	 * Symble table. E' una lista di mappe, mappa nomi di identifictori alla nostra
-	 * stEntry
+	 * Symble table. Per ogni identificatore (internato) tiene la pila delle stEntry visibili,
+	 * vedi ScopedSymbolTable
 	 */
-	private List<Map<String, STentry>> symTable = new ArrayList<>();
-	private Map<String, Map<String, STentry>> classTable = new HashMap();
+	private final ScopedSymbolTable symTable = new ScopedSymbolTable();
+	// virtual table di ogni classe dichiarata, indicizzata dal simbolo della classe; nelle virtual table
+	// (persistenti, vedi ScopedSymbolTable) campi e metodi sono indicizzati dal loro simbolo
+	private final Map<Integer, PersistentMap<STentry>> classTable = new HashMap<>();
+	private int currentClass = -1; // simbolo della classe che sto visitando, la sua virtual table è nella symTable
 	private int nestingLevel = 0; // current nesting level, quando entro in uno scope lo incremento
 	private int decOffset = -2; // counter for offset of local declarations at current nesting level. starts
 								// with -2 due to our layout choice
 	int stErrors = 0; // errori che incontriamo
 	private Set<String> onClassVisitScope;
 
+	private final CompilationContext context;
+	private final TypeFactory types; // le STentry hanno tipi canonici
+
 	SymbolTableASTVisitor() {
+		this(new CompilationContext(System.out));
 	}
 
 	SymbolTableASTVisitor(boolean debug) {
+		this(new CompilationContext(System.out), debug);
+	}
+
+	SymbolTableASTVisitor(CompilationContext context) {
+		this.context = context;
+		this.types = context.types;
+	}
+
+	SymbolTableASTVisitor(CompilationContext context, boolean debug) {
 		super(debug);
+		this.context = context;
+		this.types = context.types;
 	} // enables print for debugging
 
-	// Cerco nella SymbolTable il nesting level corrente
+	// Cerco nella SymbolTable la dichiarazione visibile al nesting level corrente
 	private STentry stLookup(String id) {
-		int j = nestingLevel;
-		STentry entry = null;
-		while (j >= 0 && entry == null)
-			entry = symTable.get(j--).get(id);
-		return entry;
+		return symTable.lookup(id);
+	}
+
+	private PersistentMap<STentry> classLookup(String id) {
+		int symbol = symTable.intern(id);
+		return symbol == currentClass ? symTable.members() : classTable.get(symbol);
 	}
 
 	/**
@@ -96,14 +115,12 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 	public Void visitNode(ProgLetInNode n) {
 		if (print)
 			printNode(n);
-		// Creo una tabella per l'ambiente globale
-		Map<String, STentry> hm = new HashMap<>();
-		// la aggiungo poi alla symTable (è vuota all'inizio)
-		symTable.add(hm);
+		// Apro lo scope dell'ambiente globale (la symTable è vuota all'inizio)
+		symTable.enterScope();
 		for (Node dec : n.declist)
 			visit(dec); // visito le dichiarazioni
 		visit(n.exp); // visito il corpo, che userà le dichiarazioni
-		symTable.remove(0);
+		symTable.exitScope();
 		return null;
 	}
 
@@ -124,32 +141,28 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 	public Void visitNode(FunNode n) {
 		if (print)
 			printNode(n);
-		Map<String, STentry> hm = symTable.get(nestingLevel); // prendo il fronte della lista (nesting level dello scope
-																// attuale)
 		List<TypeNode> parTypes = new ArrayList<>(); // gestisco i parametri
 		for (ParNode par : n.parlist)
 			parTypes.add(par.getType());
 		// ArrowTypeNode è un tipo funzionale, parTypes è una lista di parametri,
 		// retType è invece il tipo di ritorno
-		STentry entry = new STentry(nestingLevel, new ArrowTypeNode(parTypes, n.retType), decOffset--);
-		// inserimento di ID nella symtable
-		if (hm.put(n.id, entry) != null) {
-			System.out.println("Fun id " + n.id + " at line " + n.getLine() + " already declared");
+		STentry entry = new STentry(nestingLevel, types.arrow(parTypes, n.retType), decOffset--);
+		n.entry = entry;
+		// inserimento di ID nella symtable, nello scope attuale
+		if (symTable.put(n.id, entry) != null) {
+			context.report("Fun id " + n.id + " at line " + n.getLine() + " already declared");
 			stErrors++;
 		}
-		nestingLevel++; // creare una nuova hashmap per la symTable, vado al nesting nevel successivo,
-						// entrando in un nuovo scope
-		// creo una hashmap per il nuovo scope
-		Map<String, STentry> hmn = new HashMap<>();
-		symTable.add(hmn);
+		nestingLevel++; // vado al nesting nevel successivo, entrando in un nuovo scope
+		symTable.enterScope();
 		int prevNLDecOffset = decOffset; // stores counter for offset of declarations at previous nesting level
 		decOffset = -2; // resetto il mio decOffset quando entro in un nuovo livello, in quanto, sia
 						// parametri che variabili partono da -2 con il nuovo layout
 
 		int parOffset = 1; // parOffset è 1 per via del layout scelto, cresce per ogni parametro dichiarato
 		for (ParNode par : n.parlist)
-			if (hmn.put(par.id, new STentry(nestingLevel, par.getType(), parOffset++)) != null) {
-				System.out.println("Par id " + par.id + " at line " + n.getLine() + " already declared");
+			if (symTable.put(par.id, new STentry(nestingLevel, types.canonical(par.getType()), parOffset++)) != null) {
+				context.report("Par id " + par.id + " at line " + n.getLine() + " already declared");
 				stErrors++;
 			}
 		for (Node dec : n.declist)
@@ -159,8 +172,8 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 		// poi analizzo l'espressione, che usa le dichiarazioni (si ricorda il modello
 		// let/in)
 		visit(n.exp);
-		symTable.remove(nestingLevel--); // rimuovo la hashmap corrente poiche' esco dallo scope e decremento il nesting
-											// level
+		symTable.exitScope(); // tolgo le dichiarazioni dello scope corrente poiche' ne esco
+		nestingLevel--; // e decremento il nesting level
 		decOffset = prevNLDecOffset; // restores counter for offset of declarations at previous nesting level
 		return null;
 	}
@@ -186,13 +199,12 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 		// l'eccezione
 		// (nel nostro caso, aumentare il numero di errori)
 		visit(n.exp);
-		Map<String, STentry> hm = symTable.get(nestingLevel); // recupero il fronte della tabella
-		STentry entry = new STentry(nestingLevel, n.getType(), decOffset--); // creo una pallina con le informazioni
+		STentry entry = new STentry(nestingLevel, types.canonical(n.getType()), decOffset--); // creo una pallina con le informazioni
 																				// prese dalla dichiarazione
-		// inserimento di ID della variabile nella symtable (inserisco la pallina)
-		if (hm.put(n.id, entry) != null) {
+		// inserimento di ID della variabile nello scope attuale della symtable (inserisco la pallina)
+		if (symTable.put(n.id, entry) != null) {
 			// controllo se la dichiarazione è multipla
-			System.out.println("Var id " + n.id + " at line " + n.getLine() + " already declared");
+			context.report("Var id " + n.id + " at line " + n.getLine() + " already declared");
 			stErrors++;
 		}
 		return null;
@@ -312,7 +324,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 			printNode(n);
 		STentry entry = stLookup(n.id); // verifico che la funzione sia dichiarata
 		if (entry == null) {
-			System.out.println("Fun id " + n.id + " at line " + n.getLine() + " not declared");
+			context.report("Fun id " + n.id + " at line " + n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			n.entry = entry; // linking
@@ -340,7 +352,7 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 		STentry entry = stLookup(n.id);
 		// Controllo se ho trovato o meno la pallina
 		if (entry == null) {
-			System.out.println("Var or Par id " + n.id + " at line " + n.getLine() + " not declared");
+			context.report("Var or Par id " + n.id + " at line " + n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			n.entry = entry; // metto la pallina nella variabile entry, collego l'uso alla dichiarazione
@@ -352,14 +364,14 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 	@Override
 	public Void visitNode(BoolNode n) {
 		if (print)
-			printNode(n, n.val.toString());
+			printNode(n, String.valueOf(n.val));
 		return null;
 	}
 
 	@Override
 	public Void visitNode(IntNode n) {
 		if (print)
-			printNode(n, n.val.toString());
+			printNode(n, String.valueOf(n.val));
 		return null;
 	}
 
@@ -380,15 +392,14 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 
 		// DECLARATION SCOPE
 
-		var hm = symTable.get(nestingLevel); // prendo il fronte della lista (nesting level dello scope attuale)
 		List<TypeNode> parTypes = new ArrayList<>();
 		for (var par : n.parlist) {
 			parTypes.add(par.getType());
 		} // aggiorno la stentry con i tipi
 		// recupero dalla table l'id del metodo, se c'è già, vuol dire che è override,
 		// devo appurare che il tipo sia corretto
-		var overriddenMethodEntry = hm.get(n.id);
-		final TypeNode methodType = new MethodTypeNode(new ArrowTypeNode(parTypes, n.retType));
+		var overriddenMethodEntry = symTable.lookupLocal(n.id);
+		final TypeNode methodType = types.method(types.arrow(parTypes, n.retType));
 		STentry sTentry = null;
 		// se è override, mantengo l'offset del vecchio metodo
 		if (overriddenMethodEntry != null && overriddenMethodEntry.type instanceof MethodTypeNode) {
@@ -396,18 +407,17 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 		} else { // altrimenti incremento l'offset
 			sTentry = new STentry(nestingLevel, methodType, decOffset++);
 			if (overriddenMethodEntry != null) {
-				System.out.println("Cannot override method id " + n.id + " with a field");
+				context.report("Cannot override method id " + n.id + " with a field");
 				stErrors++;
 			}
 		}
 		n.offset = sTentry.offset; // setto l'offset in base a quello che ho calcolato sopra
-		hm.put(n.id, sTentry); // inserisco nella map la entry che ho creato, con id corrispondente
+		symTable.put(n.id, sTentry); // inserisco nello scope della classe la entry che ho creato, con id corrispondente
 
 		// METHOD BODY SCOPE
 
 		nestingLevel++; // scendo nel corpo, aumentando il nesting level
-		Map<String, STentry> methodsTable = new HashMap<>();
-		symTable.add(methodsTable);
+		symTable.enterScope();
 		var oldDecOffset = decOffset; // stores counter for offset of declarations at previous nesting level
 		decOffset = -2; // resetto il mio decOffset quando entro in un nuovo livello, parametri e
 						// variabili partono da -2 con il nuovo layout
@@ -415,8 +425,8 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 
 		// Parameters uses
 		for (var par : n.parlist) {
-			if (methodsTable.put(par.id, new STentry(nestingLevel, par.getType(), parOffset++)) != null) {
-				System.out.println("Par id " + par.id + " at line " + n.getLine() + " already declared");
+			if (symTable.put(par.id, new STentry(nestingLevel, types.canonical(par.getType()), parOffset++)) != null) {
+				context.report("Par id " + par.id + " at line " + n.getLine() + " already declared");
 				stErrors++;
 			}
 		}
@@ -431,8 +441,8 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 						// i parametri,
 						// poi analizzo l'espressione, che usa le dichiarazioni (si ricorda il modello
 						// let/in)
-		symTable.remove(nestingLevel--); // rimuovo la hashmap corrente poiche' esco dallo scope e decremento il nesting
-											// level
+		symTable.exitScope(); // tolgo le dichiarazioni dello scope corrente poiche' ne esco
+		nestingLevel--; // e decremento il nesting level
 		decOffset = oldDecOffset;
 		return null;
 	}
@@ -442,29 +452,28 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 			printNode(node);
 		}
 		// inizializzazione tipo, se non eredita, rimane tale
-		var classType = new ClassTypeNode(new ArrayList<>(), new ArrayList<>());
+		var classType = new ClassTypeNode(PersistentVector.empty(), PersistentVector.empty());
 		// controlla se la classe estende un'altra classe, avvalendosi della class table
-		if (node.superId != null && classTable.containsKey(node.superId)) {
+		if (node.superId != null && classLookup(node.superId) != null) {
 			// recupero la stEntry della classe da qui eredita, in modo da recuperare i
 			// campi ed i metodi.
-			STentry superClassEntry = symTable.get(0).get(node.superId);
-			// imposto il classType con i field
-			classType = new ClassTypeNode(new ArrayList<>(((ClassTypeNode) superClassEntry.type).allFields),
-					new ArrayList<>(((ClassTypeNode) superClassEntry.type).allMethods));
+			STentry superClassEntry = symTable.lookupGlobal(node.superId);
+			// imposto il classType con i field ed i metodi ereditati (condivisi con la superclasse)
+			classType = new ClassTypeNode(((ClassTypeNode) superClassEntry.type).allFields,
+					((ClassTypeNode) superClassEntry.type).allMethods);
 			// aggiorno la entry del nodo, la super entry deve partire dal livello globale!
 			node.superEntry = superClassEntry;
 		} else if (node.superId != null) {
-			System.out
-					.println("Extending class id " + node.superId + " at line " + node.getLine() + " is not declared");
+			context.report("Extending class id " + node.superId + " at line " + node.getLine() + " is not declared");
+			stErrors++;
 		}
 		// il class type varia in funzione dell'ereditarietà o meno, decOffset parte da
 		// -2 e decremento, parto dal livello globale!
 		STentry entry = new STentry(0, classType, decOffset--);
 		node.classType = classType;
-		// recupero la symTable al livello globale (dove sono dichiarate le classi)
-		Map<String, STentry> globalScopeTable = symTable.get(0);
-		if (globalScopeTable.put(node.classId, entry) != null) {
-			System.out.println("Class id " + node.classId + " at line " + node.getLine() + " already declared");
+		// dichiaro la classe nello scope globale (le classi si dichiarano solo lì)
+		if (symTable.put(node.classId, entry) != null) {
+			context.report("Class id " + node.classId + " at line " + node.getLine() + " already declared");
 			stErrors++;
 		}
 		/*
@@ -475,15 +484,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 		onClassVisitScope = new HashSet<>(); // tiene traccia dei campi e metodi che visito nella classe attuale,
 												// mi consente di identificare doppie dichiarazioni (esulano
 												// dall'overriding)
-		Map<String, STentry> virtualTable = new HashMap<>();
-		var superClassVirtualTable = classTable.get(node.superId); // se non c'è ereditarietà rimane vuota
-		if (node.superId != null) {
-			// aggiorno la class table, copiando la virtual table dalla classe da cui si
-			// eredita (copio tutto e non solo il riferimento)
-			virtualTable.putAll(superClassVirtualTable);
-		}
-		classTable.put(node.classId, virtualTable);
-		symTable.add(virtualTable);
+		// la virtual table parte da quella della classe da cui si eredita: è persistente, quindi non
+		// va copiata, le dichiarazioni della classe creano nuove versioni
+		symTable.enterScope(node.superEntry != null ? classLookup(node.superId) : PersistentMap.empty());
+		currentClass = symTable.intern(node.classId);
 
 		// --- FIELDS ---
 
@@ -492,43 +496,40 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 		 * -> -2, c -> -3; Class impl: d -> -4
 		 */
 		int fieldOffset = -1;
-		if (node.superId != null) {
-			fieldOffset = -((ClassTypeNode) symTable.get(0).get(node.superId).type).allFields.size() - 1; // l'offset
-																											// corrente
-																											// riparte
+		if (node.superEntry != null) {
+			fieldOffset = -((ClassTypeNode) node.superEntry.type).allFields.size() - 1; // l'offset corrente riparte
 		}
 		for (var field : node.fields) { // dichiarazione di campi
 			if (onClassVisitScope.contains(field.id)) { // controllo ripetizioni
-				System.out.println(
+				context.report(
 						"Field with id " + field.id + " on line " + field.getLine() + " was already declared");
 				stErrors++;
 			}
 			onClassVisitScope.add(field.id);
 			// recupero il campo dalla virtual table, se è presente, significa che è
 			// override
-			var overriddenFieldEntry = virtualTable.get(field.id);
+			var overriddenFieldEntry = symTable.lookupLocal(field.id);
 			STentry fieldEntry;
 			// appuro che si tratti di un campo e non un metodo
 			if (overriddenFieldEntry != null && !(overriddenFieldEntry.type instanceof MethodTypeNode)) {
-				fieldEntry = new STentry(nestingLevel, field.getType(), overriddenFieldEntry.offset); // mantengo il
-																										// vecchio
-																										// offset
-				classType.allFields.set(-fieldEntry.offset - 1, fieldEntry.type); // modifico il campo esistente sulla
-																					// virtual table
+				fieldEntry = new STentry(nestingLevel, types.canonical(field.getType()), overriddenFieldEntry.offset, true); // mantengo il
+																												// vecchio
+																												// offset
+				classType.allFields = classType.allFields.with(-fieldEntry.offset - 1, fieldEntry.type); // modifico il campo
+																											// esistente
 			} else {
 				// l'offset in questo caso è nuovo, quindi decremento ricordando che parte da -1
-				fieldEntry = new STentry(nestingLevel, field.getType(), fieldOffset--);
-				classType.allFields.add(-fieldEntry.offset - 1, fieldEntry.type); // aggiungo il nuovo campo alla
-																					// virtual table
+				fieldEntry = new STentry(nestingLevel, types.canonical(field.getType()), fieldOffset--, true);
+				classType.allFields = classType.allFields.plus(fieldEntry.type); // aggiungo il nuovo campo in fondo
 				if (overriddenFieldEntry != null) {
-					System.out.println("Cannot override field id " + field.id + " with a method");
+					context.report("Cannot override field id " + field.id + " with a method");
 					stErrors++;
 				}
 			}
 			/*
 			 * Add field id in symbol(virtual) table
 			 */
-			virtualTable.put(field.id, fieldEntry);
+			symTable.put(field.id, fieldEntry);
 			field.offset = fieldEntry.offset;
 		}
 		int currentDecOffset = decOffset; // salvo il valore del declaration offset corrente
@@ -538,24 +539,28 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 						// vanno da 0 a n
 		// se eredito l'offset non parte da 0, riparto da dove aveva lasciato la classe
 		// da cui eredito
-		if (node.superId != null) {
-			decOffset = ((ClassTypeNode) symTable.get(0).get(node.superId).type).allMethods.size();
+		if (node.superEntry != null) {
+			decOffset = ((ClassTypeNode) node.superEntry.type).allMethods.size();
 		}
 		for (var method : node.methods) {
 			if (onClassVisitScope.contains(method.id)) {
-				System.out.println(
+				context.report(
 						"Method with id " + method.id + " on line " + method.getLine() + " was already declared");
 				stErrors++;
 			}
 			onClassVisitScope.add(method.id);
 			visit(method); // delego il tutto al metodo, che già gestisce, come nel caso dei campi, il
 							// controllo sull'override
-			classType.allMethods.add(
+			// sostituisco il metodo ridefinito, o aggiungo in fondo quello nuovo
+			classType.allMethods = classType.allMethods.with(
 					method.offset,
-					((MethodTypeNode) virtualTable.get(method.id).type).arrowTypeNode);
+					((MethodTypeNode) symTable.lookupLocal(method.id).type).arrowTypeNode);
 		}
 		decOffset = currentDecOffset; // restores the previous declaration offset
-		symTable.remove(nestingLevel--);
+		classTable.put(currentClass, symTable.members());
+		currentClass = -1;
+		symTable.exitScope();
+		nestingLevel--;
 		decOffset = previousNestingLevelDeclarationOffset;
 		return null;
 	}
@@ -564,11 +569,11 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 	public Void visitNode(NewNode n) throws VoidException {
 		if (print)
 			printNode(n);
-		if (!classTable.containsKey(n.id)) {
-			System.out.println("Class id " + n.id + " at line " + n.getLine() + " not declared");
+		if (classLookup(n.id) == null) {
+			context.report("Class id " + n.id + " at line " + n.getLine() + " not declared");
 			stErrors++;
 		}
-		n.sTentry = symTable.get(0).get(n.id); // aggiungo informazioni al new, sulla classe da cui crea l'oggetto
+		n.sTentry = symTable.lookupGlobal(n.id); // aggiungo informazioni al new, sulla classe da cui crea l'oggetto
 		for (var arg : n.args) {
 			visit(arg);
 		}
@@ -590,8 +595,8 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 	public Void visitNode(RefTypeNode n) throws VoidException {
 		if (print)
 			printNode(n, n.id);
-		if (!classTable.containsKey(n.id)) {
-			System.out.println("Class with id " + n.id + " on line " + n.getLine() + " was not declared");
+		if (classLookup(n.id) == null) {
+			context.report("Class with id " + n.id + " on line " + n.getLine() + " was not declared");
 			stErrors++;
 		}
 		return null;
@@ -606,16 +611,16 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void, VoidException> {
 		// della static chain of access link
 		STentry entry = stLookup(node.id1);
 		if (entry == null) { // se non è dichiarata, è un errore!
-			System.out.println("Var or Par id " + node.id1 + " at line " + node.getLine() + " not declared");
+			context.report("Var or Par id " + node.id1 + " at line " + node.getLine() + " not declared");
 			stErrors++;
 		} else {
 			node.entry = entry;
 			node.nestingLevel = nestingLevel;
 			// setto la stentry di id2, cercandola nella virtual table (raggiunta tramite
 			// class table) della classe del tipo RefTypeNode di id1
-			node.methodEntry = classTable.get(((RefTypeNode) entry.type).id).get(node.id2);
+			node.methodEntry = classLookup(((RefTypeNode) entry.type).id).get(symTable.intern(node.id2));
 			if (node.methodEntry == null) { // se id1 non ha il tipo corrispondente, è un errore!
-				System.out.println("Object id " + node.id1 + " at line "
+				context.report("Object id " + node.id1 + " at line "
 						+ node.getLine() + " has no method " + node.id2);
 				stErrors++;
 			}
@@ -1,10 +1,10 @@
 package compiler;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.*;
-import compiler.lib.*;
-import compiler.exc.*;
 import svm.*;
 
 public class Test {
@@ -12,71 +12,98 @@ public class Test {
    			
     	String fileName = "bankloan.fool";
 
-    	CharStream chars = CharStreams.fromFileName(fileName);
-    	FOOLLexer lexer = new FOOLLexer(chars);
-    	CommonTokenStream tokens = new CommonTokenStream(lexer);
-    	FOOLParser parser = new FOOLParser(tokens);
-
-    	System.out.println("Generating ST via lexer and parser.");
-    	ParseTree st = parser.prog();
-    	System.out.println("You had "+lexer.lexicalErrors+" lexical errors and "+
-    		parser.getNumberOfSyntaxErrors()+" syntax errors.\n");
-
-    	System.out.println("Generating AST.");
-    	ASTGenerationSTVisitor visitor = new ASTGenerationSTVisitor(true); // use true to visualize the ST
-    	Node ast = visitor.visit(st);
-    	System.out.println("");
-
-    	System.out.println("Enriching AST via symbol table.");
-    	SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor();
-    	symtableVisitor.visit(ast);
-    	System.out.println("You had "+symtableVisitor.stErrors+" symbol table errors.\n");
-
-    	System.out.println("Visualizing Enriched AST.");
-    	new PrintEASTVisitor().visit(ast);
+    	Compiler.Options options = new Compiler.Options();
+    	options.debug = true; // use false to hide the ST and the Enriched AST
+    	options.log = System.out;
+    	options.parallel = false; // use true to evaluate independent call arguments in parallel (fork/join)
+    	options.compact = false; // use true to run the compact (variable-length) encoding of the code
+    	options.pool = null; // use ForkJoinPool.commonPool() to type check and generate the declarations in parallel
+    	options.scanner = false; // use true to lex with the hand-written FOOLScanner instead of the generated FOOLLexer
+    	options.sll = false; // use true to parse with SLL prediction first, and again with full LL only if it fails
+
+    	System.out.println("Compiling "+fileName+".");
+    	Compiler.Result result = Compiler.compile(CharStreams.fromFileName(fileName).toString(), options);
     	System.out.println("");
 
-    	System.out.println("Checking Types.");
-    	try {
-    		TypeCheckEASTVisitor typeCheckVisitor = new TypeCheckEASTVisitor();
-    		TypeNode mainType = typeCheckVisitor.visit(ast);
+    	System.out.println("You had "+result.lexicalErrors+" lexical errors and "+result.syntaxErrors+" syntax errors.");
+    	System.out.println("You had "+result.symbolTableErrors+" symbol table errors.");
+    	if (result.mainType != null) {
     		System.out.print("Type of main program expression is: ");
-    		new PrintEASTVisitor().visit(mainType);
-    	} catch (IncomplException e) {    		
-    		System.out.println("Could not determine main program expression type due to errors detected before type checking.");
-    	} catch (TypeException e) {
-    		System.out.println("Type checking error in main program expression: "+e.text); 
-    	}       	
-    	System.out.println("You had "+FOOLlib.typeErrors+" type checking errors.\n");
+    		new PrintEASTVisitor().visit(result.mainType);
+    	}
+    	System.out.println("You had "+result.typeErrors+" type checking errors.\n");
 
-    	int frontEndErrors = lexer.lexicalErrors+parser.getNumberOfSyntaxErrors()+symtableVisitor.stErrors+FOOLlib.typeErrors;
+    	int frontEndErrors = result.frontEndErrors();
 		System.out.println("You had a total of "+frontEndErrors+" front-end errors.\n");
 		
 		if ( frontEndErrors > 0) System.exit(1);   
 
-    	System.out.println("Generating code.");
-    	String code = new CodeGenerationASTVisitor().visit(ast);        
+    	if (options.parallel)
+    		System.out.println(result.forkedArgs+" call arguments will be evaluated in parallel.\n");
+
     	BufferedWriter out = new BufferedWriter(new FileWriter(fileName+".asm")); 
-    	out.write(code);
+    	out.write(result.asm);
     	out.close(); 
-    	System.out.println("");
-
-    	System.out.println("Assembling generated code.");
-    	CharStream charsASM = CharStreams.fromFileName(fileName+".asm");
-    	SVMLexer lexerASM = new SVMLexer(charsASM);
-    	CommonTokenStream tokensASM = new CommonTokenStream(lexerASM);
-    	SVMParser parserASM = new SVMParser(tokensASM);
-
-    	parserASM.assembly();
 
     	// needed only for debug
-    	System.out.println("You had: "+lexerASM.lexicalErrors+" lexical errors and "+parserASM.getNumberOfSyntaxErrors()+" syntax errors.\n");
-    	if (lexerASM.lexicalErrors+parserASM.getNumberOfSyntaxErrors()>0) System.exit(1);
+    	System.out.println("Assembling generated code: you had "+result.assemblyErrors+" errors.\n");
+    	if (result.assemblyErrors>0) System.exit(1);
+
+    	if (result.verified)
+    		System.out.println(result.bounds.report(result.functionNames)+"\n");
+    	if (result.compactSize > 0)
+    		System.out.println("Compact encoding: "+result.compactSize+" bytes instead of "+result.codeSize+" words.\n");
+    	boolean compact = result.program.isCompact();
+    	Program program = result.program;
+
+    	int batch = 0; // use N > 0 to also run N instances in lockstep, with different values of batchParameter
+    	String batchParameter = "myTradingAcc.0"; // integer argument of a constant global object (see getDataParameters)
+    	int workers = 0; // use N > 0 to run the batch on N local worker processes (BatchCoordinator) instead
+    	if (batch > 0 && (program.verified || workers > 0) && !compact && result.dataParameters.containsKey(batchParameter)) {
+    		int address = result.dataParameters.get(batchParameter);
+    		int[][] values = new int[batch][1];
+    		for (int l = 0; l < batch; l++) values[l][0] = (int) (2L * result.data[address] * l / batch); // from 0 to twice the original
+    		String[] outputs;
+    		String mode;
+    		if (workers > 0)
+    			try (BatchCoordinator coordinator = new BatchCoordinator(workers)) {
+    				outputs = coordinator.run(program, new int[] {address}, values);
+    				mode = "on "+workers+" worker processes";
+    			}
+    		else {
+    			BatchVM batchVM = new BatchVM(program, new int[] {address}, values);
+    			outputs = batchVM.run();
+    			mode = batchVM.scalarLanes()+" left lockstep";
+    		}
+    		Map<String, Integer> distinct = new TreeMap<>();
+    		for (String output : outputs) distinct.merge(output.trim().replace('\n', ' '), 1, Integer::sum);
+    		System.out.println("Batch of "+batch+" runs varying "+batchParameter+" ("+mode+"): "+distinct+"\n");
+    	}
 
     	System.out.println("Running generated code via Stack Virtual Machine.");
-    	ExecuteVM vm = new ExecuteVM(parserASM.code);
-    	vm.cpu();
+    	int runs = 1; // use more than 1 to run concurrent invocations of the same program on a VMExecutor
+    	boolean timeSliced = false; // use true to interleave the invocations on a Scheduler instead
+    	long maxFuel = ExecuteVM.UNLIMITED; // with timeSliced, use a limit to stop each invocation after that many instructions (forks included)
+    	if (runs == 1 && options.parallel)
+    		new ExecuteVM(program, program.memSize + 100 * ExecuteVM.STACKSIZE, System.out, ForkJoinPool.commonPool()).run();
+    	else if (runs == 1)
+    		new ExecuteVM(program).run();
+    	else {
+    		int threads = Runtime.getRuntime().availableProcessors();
+    		List<Future<String>> results = new ArrayList<>();
+    		if (timeSliced)
+    			try (Scheduler scheduler = new Scheduler(threads, Scheduler.QUANTUM, maxFuel)) {
+    				for (int i = 0; i < runs; i++) results.add(scheduler.submit(program));
+    			}
+    		else
+    			try (VMExecutor executor = new VMExecutor(threads)) {
+    				for (int i = 0; i < runs; i++) results.add(executor.submit(program));
+    			}
+    		System.out.print(results.get(0).get());
+    		int same = 0;
+    		for (Future<String> run : results) if (run.get().equals(results.get(0).get())) same++;
+    		System.out.println(same+" of "+runs+" runs produced the same output.");
+    	}
 
     }
 }
-
@@ -4,10 +4,13 @@ import compiler.AST.*;
 import compiler.exc.*;
 import compiler.lib.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Stream;
 
-import static compiler.TypeRels.*;
+import static compiler.TypeFactory.*;
 
 /**
  * visitNode(n) fa il type checking di un Node n e ritorna:
@@ -27,17 +30,46 @@ import static compiler.TypeRels.*;
  * un sottotipo del tipo del corrispondente parametro.
  *
  * I metodi visit visitano l'AST non i nodi dell'EAST.
+ *
+ * Con un ForkJoinPool le dichiarazioni del programma vengono controllate in parallelo: dopo la symbol
+ * table ognuna dipende solo dalle STentry e dai ClassTypeNode già costruiti, e la relazione di sottotipo
+ * viene completata prima di iniziare. Ogni dichiarazione ha un proprio visitor ed un proprio contesto
+ * (CompilationContext.fork), la diagnostica viene riunita nell'ordine delle dichiarazioni.
  */
 public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeException> {
 
+	private final CompilationContext context;
+	private final TypeRels typeRels;
+	private final TypeFactory types; // i tipi restituiti dalle visite sono canonici
+	private ForkJoinPool pool; // null se le dichiarazioni vengono controllate in sequenza
+
 	TypeCheckEASTVisitor() {
+		this(new CompilationContext(System.out));
+	}
+
+	TypeCheckEASTVisitor(boolean debug) {
+		this(new CompilationContext(System.out), debug);
+	}
+
+	TypeCheckEASTVisitor(CompilationContext context) {
 		super(true);
+		this.context = context;
+		this.typeRels = context.typeRels;
+		this.types = context.types;
 	} // enables incomplete tree exceptions
 
-	TypeCheckEASTVisitor(boolean debug) {
+	TypeCheckEASTVisitor(CompilationContext context, boolean debug) {
 		super(true, debug);
+		this.context = context;
+		this.typeRels = context.typeRels;
+		this.types = context.types;
 	} // enables print for debugging
 
+	TypeCheckEASTVisitor(CompilationContext context, ForkJoinPool pool) {
+		this(context);
+		this.pool = pool;
+	} // checks declarations in parallel
+
 	// checks that a type object is visitable (not incomplete)
 	private TypeNode ckvisit(TypeNode t) throws TypeException {
 		visit(t);
@@ -64,16 +96,42 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 	public TypeNode visitNode(ProgLetInNode n) throws TypeException {
 		if (print)
 			printNode(n);
+		List<ClassNode> classes = new ArrayList<>(); // le classi sono solo globali: la gerarchia è nota prima di ogni controllo
 		for (Node dec : n.declist)
-			try {
-				visit(dec); // controlli interni che abbiamo citato (le visite tornano null)
-			} catch (IncomplException e) {
-			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
-			}
+			if (dec instanceof ClassNode)
+				classes.add((ClassNode) dec);
+		typeRels.setHierarchy(classes);
+		if (pool != null && !print)
+			checkInParallel(n.declist);
+		else
+			for (Node dec : n.declist)
+				checkDeclaration(dec);
 		return visit(n.exp); // visito il corpo del programma e ne ritorno il tipo
 	}
 
+	private void checkDeclaration(Node dec) {
+		try {
+			visit(dec); // controlli interni che abbiamo citato (le visite tornano null)
+		} catch (IncomplException e) {
+		} catch (TypeException e) {
+			context.typeError("a declaration", e);
+		}
+	}
+
+	private void checkInParallel(List<DecNode> declist) {
+		List<CompilationContext> parts = new ArrayList<>();
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (Node dec : declist) {
+			CompilationContext part = context.fork();
+			parts.add(part);
+			tasks.add(pool.submit(() -> new TypeCheckEASTVisitor(part).checkDeclaration(dec)));
+		}
+		for (int i = 0; i < tasks.size(); i++) {
+			tasks.get(i).join();
+			context.join(parts.get(i));
+		}
+	}
+
 	/**
 	 * Programma senza dichiarazioni
 	 */
@@ -106,9 +164,9 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 				visit(dec);
 			} catch (IncomplException e) {
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a function declaration: " + e.text);
+				context.typeError("a function declaration", e);
 			}
-		if (!isSubtype(visit(n.exp), ckvisit(n.retType))) // faccio il check sul tipo di ritorno
+		if (!typeRels.isSubtype(visit(n.exp), types.canonical(ckvisit(n.retType)))) // faccio il check sul tipo di ritorno
 			throw new TypeException("Wrong return type for function " + n.id, n.getLine());
 		return null;
 	}
@@ -123,9 +181,9 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 				visit(dec);
 			} catch (IncomplException e) {
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a method declaration: " + e.text);
+				context.typeError("a method declaration", e);
 			}
-		if (!isSubtype(visit(n.exp), ckvisit(n.retType))) // check sul tipo di ritorno
+		if (!typeRels.isSubtype(visit(n.exp), types.canonical(ckvisit(n.retType)))) // check sul tipo di ritorno
 			throw new TypeException("Wrong return type for function " + n.id, n.getLine());
 		return null;
 	}
@@ -144,16 +202,16 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 			try {
 				visit(method);
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a class declaration: " + e.text);
+				context.typeError("a class declaration", e);
 			}
 
 		}
-		if (n.superId != null) {
-			superType.put(n.classId, n.superId); // OTTIMIZZAZIONE: utile per il calcolo del lowestCommonAncestor
+		if (n.superEntry != null) { // null anche se la superclasse non è dichiarata (errore della symbol table)
+			// la gerarchia (utile per il calcolo del lowestCommonAncestor) è già stata indicizzata in ProgLetInNode
 			ClassTypeNode classTypeNode = n.classType;
 			ClassTypeNode superEntry = (ClassTypeNode) n.superEntry.type;
 			List<TypeException> wrongFieldExceptions = n.fields.stream()
-					.filter((field) -> -field.offset - 1 < superEntry.allMethods.size()) // attraverso il controllo
+					.filter((field) -> -field.offset - 1 < superEntry.allFields.size()) // attraverso il controllo
 																							// sulla posizione (a
 																							// sinistra), recupero solo
 																							// i campi che fanno
@@ -161,7 +219,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 					.flatMap((field) -> { // eseguo il controllo sul tipo, se si manifestano errori, vengono
 											// collezionati in modo ordinato
 						int position = -field.offset - 1;
-						return !isSubtype(classTypeNode.allFields.get(position), superEntry.allFields.get(position))
+						return !typeRels.isSubtype(classTypeNode.allFields.get(position), superEntry.allFields.get(position))
 								? Stream.of(new TypeException("Wrong type for field " + field.id, field.getLine()))
 								: Stream.empty();
 					})
@@ -178,7 +236,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 					.flatMap((method) -> { // eseguo il controllo sul tipo, se si manifestano errori, vengono
 											// collezionati in modo ordinato
 						int position = method.offset;
-						return !isSubtype(classTypeNode.allMethods.get(position), superEntry.allMethods.get(position))
+						return !typeRels.isSubtype(classTypeNode.allMethods.get(position), superEntry.allMethods.get(position))
 								? Stream.of(new TypeException("Wrong type for method " + method.id, method.getLine()))
 								: Stream.empty();
 					})
@@ -200,7 +258,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 	public TypeNode visitNode(VarNode n) throws TypeException {
 		if (print)
 			printNode(n, n.id);
-		if (!isSubtype(visit(n.exp), ckvisit(n.getType())))
+		if (!typeRels.isSubtype(visit(n.exp), types.canonical(ckvisit(n.getType()))))
 			throw new TypeException("Incompatible value for variable " + n.id, n.getLine());
 		return null;
 	}
@@ -224,11 +282,11 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 	public TypeNode visitNode(IfNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		if (!(isSubtype(visit(n.cond), new BoolTypeNode())))
+		if (!(typeRels.isSubtype(visit(n.cond), BOOL)))
 			throw new TypeException("Non boolean condition in if", n.getLine());
 		TypeNode t = visit(n.th);
 		TypeNode e = visit(n.el);
-		var lowestCommonAncestor = lowestCommonAncestor(t, e);
+		var lowestCommonAncestor = typeRels.lowestCommonAncestor(t, e);
 		if (lowestCommonAncestor == null) {
 			throw new TypeException("Failed typecheking for if-else statement ", n.getLine());
 		}
@@ -260,29 +318,29 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 			printNode(n);
 		TypeNode l = visit(n.left);
 		TypeNode r = visit(n.right);
-		if (!(isSubtype(l, r) || isSubtype(r, l)))
+		if (!(typeRels.isSubtype(l, r) || typeRels.isSubtype(r, l)))
 			throw new TypeException("Incompatible types in equal", n.getLine());
-		return new BoolTypeNode();
+		return BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(TimesNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		if (!(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())))
+		if (!(typeRels.isSubtype(visit(n.left), INT)
+				&& typeRels.isSubtype(visit(n.right), INT)))
 			throw new TypeException("Non integers in multiplication", n.getLine());
-		return new IntTypeNode();
+		return INT;
 	}
 
 	@Override
 	public TypeNode visitNode(PlusNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		if (!(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())))
+		if (!(typeRels.isSubtype(visit(n.left), INT)
+				&& typeRels.isSubtype(visit(n.right), INT)))
 			throw new TypeException("Non integers in sum", n.getLine());
-		return new IntTypeNode();
+		return INT;
 	}
 
 	@Override
@@ -291,9 +349,9 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 			printNode(n);
 		TypeNode l = visit(n.left);
 		TypeNode r = visit(n.right);
-		if (!(isSubtype(l, r) || isSubtype(r, l)))
+		if (!(typeRels.isSubtype(l, r) || typeRels.isSubtype(r, l)))
 			throw new TypeException("Incompatible types in greater or equal", n.getLine());
-		return new BoolTypeNode();
+		return BOOL;
 	}
 
 	@Override
@@ -302,57 +360,57 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 			printNode(n);
 		TypeNode l = visit(n.left);
 		TypeNode r = visit(n.right);
-		if (!(isSubtype(l, r) || isSubtype(r, l)))
+		if (!(typeRels.isSubtype(l, r) || typeRels.isSubtype(r, l)))
 			throw new TypeException("Incompatible types in less or equal", n.getLine());
-		return new BoolTypeNode();
+		return BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(NotNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		if (!isSubtype(visit(n.node), new BoolTypeNode())) {
+		if (!typeRels.isSubtype(visit(n.node), BOOL)) {
 			throw new TypeException("Non boolean in not condition", n.getLine());
 		}
-		return new BoolTypeNode();
+		return BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(MinusNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		if (!(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())))
+		if (!(typeRels.isSubtype(visit(n.left), INT)
+				&& typeRels.isSubtype(visit(n.right), INT)))
 			throw new TypeException("Non integers in sub", n.getLine());
-		return new IntTypeNode();
+		return INT;
 	}
 
 	@Override
 	public TypeNode visitNode(OrNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		if (!(isSubtype(visit(n.left), new BoolTypeNode())
-				&& isSubtype(visit(n.right), new BoolTypeNode())))
+		if (!(typeRels.isSubtype(visit(n.left), BOOL)
+				&& typeRels.isSubtype(visit(n.right), BOOL)))
 			throw new TypeException("Non booleans in or", n.getLine());
-		return new BoolTypeNode();
+		return BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(DivNode n) throws TypeException {
-		if (!(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())))
+		if (!(typeRels.isSubtype(visit(n.left), INT)
+				&& typeRels.isSubtype(visit(n.right), INT)))
 			throw new TypeException("Non integers in div", n.getLine());
-		return new IntTypeNode();
+		return INT;
 	}
 
 	@Override
 	public TypeNode visitNode(AndNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		if (!(isSubtype(visit(n.left), new BoolTypeNode())
-				&& isSubtype(visit(n.right), new BoolTypeNode())))
+		if (!(typeRels.isSubtype(visit(n.left), BOOL)
+				&& typeRels.isSubtype(visit(n.right), BOOL)))
 			throw new TypeException("Non booleans in AND", n.getLine());
-		return new BoolTypeNode();
+		return BOOL;
 	}
 
 	/**
@@ -392,17 +450,17 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 		// Controllo 2: verifico, argomento per argomento, che il tipo del parametro sia
 		// consistente
 		for (int i = 0; i < n.args.size(); i++)
-			if (!(isSubtype(visit(n.args.get(i)), ct.allFields.get(i))))
+			if (!(typeRels.isSubtype(visit(n.args.get(i)), ct.allFields.get(i))))
 				throw new TypeException("Wrong type for " + (i + 1) + "-th parameter in the invocation of " + n.id,
 						n.getLine());
-		return new RefTypeNode(n.id);
+		return types.ref(n.id);
 	}
 
 	@Override
 	public TypeNode visitNode(EmptyNode n) throws TypeException {
 		if (print)
 			printNode(n);
-		return new EmptyTypeNode();
+		return EMPTY;
 	}
 
 	@Override
@@ -431,7 +489,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 		if (!(at.parlist.size() == n.arglist.size())) // controllo il numero di argomenti
 			throw new TypeException("Wrong number of parameters in the invocation of " + n.id, n.getLine());
 		for (int i = 0; i < n.arglist.size(); i++)
-			if (!(isSubtype(visit(n.arglist.get(i)), at.parlist.get(i))))
+			if (!(typeRels.isSubtype(visit(n.arglist.get(i)), at.parlist.get(i))))
 				throw new TypeException("Wrong type for " + (i + 1) + "-th parameter in the invocation of " + n.id,
 						n.getLine());
 		return at.ret;
@@ -451,7 +509,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 			throw new TypeException("Wrong number of parameters in the invocation of " + node.id2, node.getLine());
 		}
 		for (var i = 0; i < node.args.size(); i++) {
-			if (!isSubtype(visit(node.args.get(i)), arrowType.parlist.get(i))) {
+			if (!typeRels.isSubtype(visit(node.args.get(i)), arrowType.parlist.get(i))) {
 				throw new TypeException(
 						"Wrong type for " + (i + 1) + "-th parameter in the invocation of " + node.id2, node.getLine());
 			}
@@ -483,15 +541,15 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode, TypeExceptio
 	@Override
 	public TypeNode visitNode(BoolNode n) {
 		if (print)
-			printNode(n, n.val.toString());
-		return new BoolTypeNode();
+			printNode(n, String.valueOf(n.val));
+		return BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(IntNode n) {
 		if (print)
-			printNode(n, n.val.toString());
-		return new IntTypeNode();
+			printNode(n, String.valueOf(n.val));
+		return INT;
 	}
 
 	// Gestione tipi incompleti (se lo sono lancia eccezione)
@@ -0,0 +1,64 @@
+package compiler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import compiler.AST.*;
+import compiler.lib.*;
+
+/**
+ * Tipi canonici (hash consing): ogni tipo che la symbol table mette nelle STentry e che il type checking
+ * calcola è l'unica istanza della sua struttura. int, bool e il tipo di null sono singoletti, c'è un
+ * RefTypeNode per nome di classe e un ArrowTypeNode (o MethodTypeNode) per ogni combinazione di tipi
+ * canonici di parametri e ritorno. Due tipi canonici sono quindi uguali se e solo se sono lo stesso
+ * oggetto, e il type checking non alloca tipi.
+ *
+ * I tipi scritti nel sorgente restano nodi dell'AST distinti, perché hanno la linea per i messaggi di
+ * errore: canonical ne restituisce il rappresentante. I ClassTypeNode non vengono internati (ce n'è uno
+ * per classe).
+ * Ce n'è una per compilazione (in CompilationContext), usata anche dai thread del type checking parallelo.
+ */
+
+public class TypeFactory {
+
+	public static final IntTypeNode INT = new IntTypeNode();
+	public static final BoolTypeNode BOOL = new BoolTypeNode();
+	public static final EmptyTypeNode EMPTY = new EmptyTypeNode();
+
+	private record ArrowKey(List<TypeNode> parlist, TypeNode ret) {} // di tipi canonici, confrontati per identità
+
+	private final Map<String, RefTypeNode> refs = new ConcurrentHashMap<>();
+	private final Map<ArrowKey, ArrowTypeNode> arrows = new ConcurrentHashMap<>();
+	private final Map<ArrowTypeNode, MethodTypeNode> methods = new ConcurrentHashMap<>();
+
+	RefTypeNode ref(String id) {
+		return refs.computeIfAbsent(id, RefTypeNode::new);
+	}
+
+	ArrowTypeNode arrow(List<TypeNode> parlist, TypeNode ret) {
+		List<TypeNode> pars = new ArrayList<>(parlist.size());
+		for (TypeNode par : parlist)
+			pars.add(canonical(par));
+		return arrows.computeIfAbsent(new ArrowKey(pars, canonical(ret)), key -> new ArrowTypeNode(key.parlist, key.ret));
+	}
+
+	MethodTypeNode method(ArrowTypeNode arrow) {
+		return methods.computeIfAbsent((ArrowTypeNode) canonical(arrow), MethodTypeNode::new);
+	}
+
+	// rappresentante canonico di t (null se t è null, cioè incompleto)
+	TypeNode canonical(TypeNode t) {
+		if (t instanceof IntTypeNode)
+			return INT;
+		if (t instanceof BoolTypeNode)
+			return BOOL;
+		if (t instanceof EmptyTypeNode)
+			return EMPTY;
+		if (t instanceof RefTypeNode)
+			return ref(((RefTypeNode) t).id);
+		if (t instanceof ArrowTypeNode)
+			return arrow(((ArrowTypeNode) t).parlist, ((ArrowTypeNode) t).ret);
+		if (t instanceof MethodTypeNode)
+			return method(((MethodTypeNode) t).arrowTypeNode);
+		return t; // ClassTypeNode
+	}
+}
@@ -3,71 +3,183 @@ package compiler;
 import compiler.AST.*;
 import compiler.lib.*;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relazione di sottotipo tra i tipi di FOOL.
+ *
+ * La gerarchia delle classi viene indicizzata una volta per programma (setHierarchy), dopo la symbol
+ * table e prima di ogni controllo: ogni classe ha un id numerico e la gerarchia (una foresta, sotto una
+ * radice virtuale) viene visitata in profondità una sola volta, ricavando
+ * - per ogni classe l'intervallo [pre, post] degli istanti di ingresso e uscita dalla visita: A <= B se e
+ *   solo se l'intervallo di A è contenuto in quello di B, quindi isSubtype è O(1);
+ * - il giro di Euler della foresta, su cui il lowest common ancestor di due classi è il nodo di profondità
+ *   minima tra le loro prime occorrenze: con una sparse table dei minimi anche lowestCommonAncestor è O(1).
+ * Dopo setHierarchy TypeRels viene solo letto, quindi è condiviso dai thread del type checking parallelo.
+ *
+ * I tipi confrontati sono canonici (vedi TypeFactory): tipi uguali sono lo stesso oggetto.
+ */
 
 public class TypeRels {
 
-	// valuta se il tipo "a" e' <= al tipo "b", dove "a" e "b" sono tipi di base: IntTypeNode o BoolTypeNode
+	private record TypePair(TypeNode a, TypeNode b) {} // confronto per identità dei tipi
 
-	public static Map<String,String> superType = new HashMap<>();
+	final TypeFactory types;
+	private final Map<String, Integer> classIds = new HashMap<>();
+	private RefTypeNode[] classTypes = new RefTypeNode[0]; // un RefTypeNode per classe, restituito dal LCA
+	private int[] pre = new int[0];
+	private int[] post = new int[0];
+	private int[] depth = new int[0];
+	private int[] first = new int[0]; // prima occorrenza di ogni classe nel giro di Euler
+	private int[][] minDepth = new int[0][]; // minDepth[k][i]: nodo meno profondo in euler[i .. i+2^k-1]
+	private final Map<TypePair, Boolean> arrowSubtypes = new ConcurrentHashMap<>(); // memo dei confronti tra ArrowTypeNode
+
+	TypeRels(TypeFactory types) {
+		this.types = types;
+	}
+
+	/**
+	 * Indicizza la gerarchia delle classi dichiarate, nell'ordine di dichiarazione. Una classe può
+	 * estendere solo una classe dichiarata prima (la symbol table collega solo quelle, in superEntry),
+	 * quindi la gerarchia non ha cicli; per una classe dichiarata più volte vale la prima dichiarazione.
+	 */
+	void setHierarchy(List<ClassNode> classes) {
+		List<Integer> parents = new ArrayList<>();
+		for (ClassNode c : classes) {
+			if (classIds.containsKey(c.classId))
+				continue;
+			Integer parent = c.superEntry != null ? classIds.get(c.superId) : null;
+			classIds.put(c.classId, parents.size());
+			parents.add(parent);
+		}
+		int n = parents.size(), root = n; // radice virtuale, padre delle classi che non ne estendono altre
+		List<List<Integer>> children = new ArrayList<>();
+		for (int c = 0; c <= n; c++)
+			children.add(new ArrayList<>());
+		for (int c = 0; c < n; c++)
+			children.get(parents.get(c) != null ? parents.get(c) : root).add(c);
+
+		classTypes = new RefTypeNode[n];
+		for (var entry : classIds.entrySet())
+			classTypes[entry.getValue()] = types.ref(entry.getKey());
+		pre = new int[n + 1];
+		post = new int[n + 1];
+		depth = new int[n + 1];
+		first = new int[n + 1];
+		int[] euler = new int[2 * n + 1];
+		int eulerSize = 0, time = 0;
+		// visita in profondità iterativa: le catene di ereditarietà possono essere molto lunghe
+		int[] stack = new int[n + 1], next = new int[n + 1];
+		int top = 0;
+		stack[0] = root;
+		pre[root] = time++;
+		first[root] = eulerSize;
+		euler[eulerSize++] = root;
+		while (top >= 0) {
+			int c = stack[top];
+			if (next[c] < children.get(c).size()) {
+				int child = children.get(c).get(next[c]++);
+				depth[child] = depth[c] + 1;
+				pre[child] = time++;
+				first[child] = eulerSize;
+				euler[eulerSize++] = child;
+				stack[++top] = child;
+			} else {
+				post[c] = time++;
+				if (--top >= 0)
+					euler[eulerSize++] = stack[top];
+			}
+		}
+
+		int levels = 32 - Integer.numberOfLeadingZeros(eulerSize);
+		minDepth = new int[levels][];
+		minDepth[0] = euler;
+		for (int k = 1; k < levels; k++) {
+			int half = 1 << (k - 1);
+			minDepth[k] = new int[eulerSize - (1 << k) + 1];
+			for (int i = 0; i < minDepth[k].length; i++)
+				minDepth[k][i] = shallower(minDepth[k - 1][i], minDepth[k - 1][i + half]);
+		}
+	}
+
+	private int shallower(int a, int b) {
+		return depth[a] <= depth[b] ? a : b;
+	}
+
+	// id della classe del tipo riferimento, -1 se non è una classe dichiarata
+	private int classId(RefTypeNode t) {
+		Integer id = classIds.get(t.id);
+		return id == null ? -1 : id;
+	}
+
+	private boolean isSubclass(int a, int b) {
+		return pre[b] <= pre[a] && post[a] <= post[b];
+	}
 
 	/**
+	 * Valuta se il tipo "a" e' <= al tipo "b".
 	 * Consideriamo i booleani essere sottotipo degli interi con l'interpretazione: true vale 1 e false vale 0.
 	 * */
 
-	public static boolean isSubtype(TypeNode a, TypeNode b) {
+	public boolean isSubtype(TypeNode a, TypeNode b) {
+		if (a == b)
+			return true;
 		if (a instanceof RefTypeNode && b instanceof RefTypeNode) {
-			String directSuperType = ((RefTypeNode) a).id;
-			while (directSuperType != null && !directSuperType.equals(((RefTypeNode) b).id)) {
-				directSuperType = superType.get(directSuperType);
-			}
-			return ((RefTypeNode) a).id.equals(((RefTypeNode) b).id) || directSuperType != null;
+			int idA = classId((RefTypeNode) a), idB = classId((RefTypeNode) b);
+			// classi non dichiarate (errore già segnalato dalla symbol table): solo a == b
+			return idA >= 0 && idB >= 0 && isSubclass(idA, idB);
 		}
-		if ((a instanceof ArrowTypeNode) && (b instanceof ArrowTypeNode)){
-			for (int i=0; i<((ArrowTypeNode) a).parlist.size(); i++) {
-				if(!isSubtype(((ArrowTypeNode) b).parlist.get(i), ((ArrowTypeNode) a).parlist.get(i))){
-					return false;
-				}
+		if ((a instanceof ArrowTypeNode) && (b instanceof ArrowTypeNode)) {
+			TypePair pair = new TypePair(a, b);
+			Boolean memo = arrowSubtypes.get(pair);
+			if (memo == null) {
+				memo = isArrowSubtype((ArrowTypeNode) a, (ArrowTypeNode) b);
+				arrowSubtypes.put(pair, memo);
 			}
-			return isSubtype(((ArrowTypeNode) a).ret, ((ArrowTypeNode) b).ret);
+			return memo;
 		}
-		return a.getClass().equals(b.getClass()) || ((a instanceof BoolTypeNode) && (b instanceof IntTypeNode))
-				|| (a instanceof EmptyTypeNode);
+		return (a == TypeFactory.BOOL && b == TypeFactory.INT) || a == TypeFactory.EMPTY;
 	}
 
-	public static TypeNode lowestCommonAncestor(TypeNode a, TypeNode b) {
-		// Check if both a and b are either RefTypeNode or EmptyTypeNode
-		if ((a instanceof RefTypeNode && b instanceof RefTypeNode) ||
-				(a instanceof EmptyTypeNode || b instanceof EmptyTypeNode)) {
+	// covarianza sul tipo di ritorno, controvarianza sui parametri
+	private boolean isArrowSubtype(ArrowTypeNode a, ArrowTypeNode b) {
+		if (a.parlist.size() != b.parlist.size())
+			return false;
+		for (int i = 0; i < a.parlist.size(); i++)
+			if (!isSubtype(b.parlist.get(i), a.parlist.get(i)))
+				return false;
+		return isSubtype(a.ret, b.ret);
+	}
 
-			// If one of them is EmptyTypeNode, return the other
-			if (a instanceof EmptyTypeNode) {
-				return b;
-			} else if (b instanceof EmptyTypeNode) {
-				return a;
-			}
+	/**
+	 * Il più piccolo supertipo comune di a e b, null se non esiste. Per due classi è la più profonda
+	 * superclasse comune (eventualmente a o b stesse).
+	 */
+	public TypeNode lowestCommonAncestor(TypeNode a, TypeNode b) {
+		// If one of them is EmptyTypeNode, return the other
+		if (a instanceof EmptyTypeNode)
+			return b;
+		if (b instanceof EmptyTypeNode)
+			return a;
 
-			// If both are RefTypeNode but with the same id, return a
-			if (((RefTypeNode) a).id.equals(((RefTypeNode) b).id)) {
+		if (a instanceof RefTypeNode && b instanceof RefTypeNode) {
+			int idA = classId((RefTypeNode) a), idB = classId((RefTypeNode) b);
+			if (idA == idB || idA < 0 || idB < 0)
+				return a == b ? a : null;
+			if (isSubclass(idB, idA))
 				return a;
-			}
-
-			// Find the common supertype if exists
-			String type = superType.get(((RefTypeNode) a).id);
-			while (type != null && isSubtype(b, new RefTypeNode(type))) {
-				type = superType.get(type);
-			}
-
-			// If a common supertype is found, return it as a RefTypeNode
-			return (type != null) ? new RefTypeNode(type) : null;
-
-		} else if ((a instanceof BoolTypeNode || a instanceof IntTypeNode) &&
-				(b instanceof BoolTypeNode || b instanceof IntTypeNode)) {
-			// If both a and b are either BoolTypeNode or IntTypeNode
+			if (isSubclass(idA, idB))
+				return b;
+			int l = Math.min(first[idA], first[idB]), r = Math.max(first[idA], first[idB]);
+			int k = 31 - Integer.numberOfLeadingZeros(r - l + 1);
+			int ancestor = shallower(minDepth[k][l], minDepth[k][r - (1 << k) + 1]);
+			return ancestor < classTypes.length ? classTypes[ancestor] : null; // la radice virtuale non è un tipo
+		}
 
+		if ((a == TypeFactory.BOOL || a == TypeFactory.INT) && (b == TypeFactory.BOOL || b == TypeFactory.INT)) {
 			// If either a or b is IntTypeNode, return IntTypeNode, otherwise return BoolTypeNode
-			return (a instanceof IntTypeNode || b instanceof IntTypeNode) ? new IntTypeNode() : new BoolTypeNode();
+			return a == TypeFactory.INT ? a : b;
 		}
 
 		// If no common ancestor found, return null
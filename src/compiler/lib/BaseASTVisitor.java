@@ -4,6 +4,7 @@ import compiler.AST.*;
 import compiler.exc.*;
 
 import static compiler.lib.FOOLlib.*;
+import static compiler.lib.NodeKind.*;
 
 /*
 Attraverso l'uso dei generici, abbiamo potuto utilizzare anche il void, ritornando semplicemente null.
@@ -23,6 +24,7 @@ public class BaseASTVisitor<S,E extends Exception> {
 	private boolean incomplExc; // enables throwing IncomplException
 	protected boolean print;    // enables printing
 	protected String indent;
+	private final StackSegments segments = new StackSegments(); // le visite possono essere molto annidate
 
 	protected BaseASTVisitor() {}
 	protected BaseASTVisitor(boolean ie) { incomplExc = ie; }
@@ -38,7 +40,9 @@ public class BaseASTVisitor<S,E extends Exception> {
 	}
 
 	public S visit(Visitable v) throws E {
-		return visit(v, "");                //performs unmarked visit
+		if (print || !(v instanceof Node))  //stampa, STentry e null: visita generica
+			return visit(v, "");            //performs unmarked visit
+		return dispatch((Node) v);
 	}
 
 	public S visit(Visitable v, String mark) throws E {   //when printing marks this visit with string mark
@@ -55,7 +59,7 @@ public class BaseASTVisitor<S,E extends Exception> {
 				return result;
 			} finally { indent = temp; } //ripristino dell'indentazione, serve nel caso in cui tiri l'eccezione
 		} else
-			return visitByAcc(v);
+			return v instanceof Node ? dispatch((Node) v) : visitByAcc(v);
 	}
 
 	/*
@@ -63,7 +67,72 @@ public class BaseASTVisitor<S,E extends Exception> {
 	* dall'accept. Quindi se ho un Integer, torna un integer
 	* */
 	S visitByAcc(Visitable v) throws E {
-		return v.accept(this);
+		if (segments.full())
+			return segments.inNewSegment(() -> visitByAcc(v));
+		segments.enter();
+		try {
+			return v.accept(this);
+		} finally {
+			segments.exit();
+		}
+	}
+
+	/*
+	* Visita senza la doppia chiamata accept -> visitNode: lo switch sul tipo del nodo (Node.kind) sceglie
+	* direttamente il visitNode da chiamare. Le visite di symbol table, type checking e generazione del
+	* codice passano tutte di qui, per ogni nodo.
+	* Come visitByAcc, conta i livelli annidati: le visite troppo profonde continuano su un nuovo
+	* segmento di stack (vedi StackSegments).
+	* */
+	S dispatch(Node n) throws E {
+		if (segments.full())
+			return segments.inNewSegment(() -> dispatch(n));
+		segments.enter();
+		try {
+			return dispatchKind(n);
+		} finally {
+			segments.exit();
+		}
+	}
+
+	private S dispatchKind(Node n) throws E {
+		switch (n.kind) {
+			case PROG_LET_IN: return visitNode((ProgLetInNode) n);
+			case PROG: return visitNode((ProgNode) n);
+			case FUN: return visitNode((FunNode) n);
+			case PAR: return visitNode((ParNode) n);
+			case VAR: return visitNode((VarNode) n);
+			case PRINT: return visitNode((PrintNode) n);
+			case IF: return visitNode((IfNode) n);
+			case EQUAL: return visitNode((EqualNode) n);
+			case TIMES: return visitNode((TimesNode) n);
+			case PLUS: return visitNode((PlusNode) n);
+			case CALL: return visitNode((CallNode) n);
+			case ID: return visitNode((IdNode) n);
+			case BOOL: return visitNode((BoolNode) n);
+			case INT: return visitNode((IntNode) n);
+			case ARROW_TYPE: return visitNode((ArrowTypeNode) n);
+			case BOOL_TYPE: return visitNode((BoolTypeNode) n);
+			case INT_TYPE: return visitNode((IntTypeNode) n);
+			case GREATER_EQUAL: return visitNode((GreaterEqualNode) n);
+			case LESS_EQUAL: return visitNode((LessEqualNode) n);
+			case NOT: return visitNode((NotNode) n);
+			case MINUS: return visitNode((MinusNode) n);
+			case OR: return visitNode((OrNode) n);
+			case DIV: return visitNode((DivNode) n);
+			case AND: return visitNode((AndNode) n);
+			case CLASS: return visitNode((ClassNode) n);
+			case FIELD: return visitNode((FieldNode) n);
+			case METHOD: return visitNode((MethodNode) n);
+			case CLASS_CALL: return visitNode((ClassCallNode) n);
+			case NEW: return visitNode((NewNode) n);
+			case EMPTY: return visitNode((EmptyNode) n);
+			case CLASS_TYPE: return visitNode((ClassTypeNode) n);
+			case METHOD_TYPE: return visitNode((MethodTypeNode) n);
+			case REF_TYPE: return visitNode((RefTypeNode) n);
+			case EMPTY_TYPE: return visitNode((EmptyTypeNode) n);
+			default: return n.accept(this);
+		}
 	}
 
 	public S visitNode(ProgLetInNode n) throws E {throw new UnimplException();}
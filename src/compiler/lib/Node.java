@@ -10,6 +10,7 @@ public abstract class Node implements Visitable {
 	 * Node dichiara di implementare visitable, la stessa cosa viene fatta per L'STEntry
 	*/
 	int line=-1;  // line -1 means unset
+	public final int kind = NodeKind.of(getClass()); // per il dispatch con switch (vedi BaseASTVisitor.dispatch)
 	
 	public void setLine(int l) { line=l; }
 
@@ -0,0 +1,92 @@
+package compiler.lib;
+
+import java.util.Map;
+
+import compiler.AST.*;
+
+/**
+ * Tipo di un nodo dell'AST come intero (campo kind di Node), calcolato una volta alla creazione del nodo.
+ * BaseASTVisitor.dispatch lo usa in uno switch per chiamare direttamente il visitNode del nodo, invece
+ * di passare da accept.
+ */
+
+public final class NodeKind {
+
+	public static final int OTHER = 0; // nodi senza un caso in dispatch: si visitano con accept
+	public static final int PROG_LET_IN = 1;
+	public static final int PROG = 2;
+	public static final int FUN = 3;
+	public static final int PAR = 4;
+	public static final int VAR = 5;
+	public static final int PRINT = 6;
+	public static final int IF = 7;
+	public static final int EQUAL = 8;
+	public static final int TIMES = 9;
+	public static final int PLUS = 10;
+	public static final int CALL = 11;
+	public static final int ID = 12;
+	public static final int BOOL = 13;
+	public static final int INT = 14;
+	public static final int ARROW_TYPE = 15;
+	public static final int BOOL_TYPE = 16;
+	public static final int INT_TYPE = 17;
+	public static final int GREATER_EQUAL = 18;
+	public static final int LESS_EQUAL = 19;
+	public static final int NOT = 20;
+	public static final int MINUS = 21;
+	public static final int OR = 22;
+	public static final int DIV = 23;
+	public static final int AND = 24;
+	public static final int CLASS = 25;
+	public static final int FIELD = 26;
+	public static final int METHOD = 27;
+	public static final int CLASS_CALL = 28;
+	public static final int NEW = 29;
+	public static final int EMPTY = 30;
+	public static final int CLASS_TYPE = 31;
+	public static final int METHOD_TYPE = 32;
+	public static final int REF_TYPE = 33;
+	public static final int EMPTY_TYPE = 34;
+
+	private static final Map<Class<?>, Integer> KINDS = Map.ofEntries(
+			Map.entry(ProgLetInNode.class, PROG_LET_IN),
+			Map.entry(ProgNode.class, PROG),
+			Map.entry(FunNode.class, FUN),
+			Map.entry(ParNode.class, PAR),
+			Map.entry(VarNode.class, VAR),
+			Map.entry(PrintNode.class, PRINT),
+			Map.entry(IfNode.class, IF),
+			Map.entry(EqualNode.class, EQUAL),
+			Map.entry(TimesNode.class, TIMES),
+			Map.entry(PlusNode.class, PLUS),
+			Map.entry(CallNode.class, CALL),
+			Map.entry(IdNode.class, ID),
+			Map.entry(BoolNode.class, BOOL),
+			Map.entry(IntNode.class, INT),
+			Map.entry(ArrowTypeNode.class, ARROW_TYPE),
+			Map.entry(BoolTypeNode.class, BOOL_TYPE),
+			Map.entry(IntTypeNode.class, INT_TYPE),
+			Map.entry(GreaterEqualNode.class, GREATER_EQUAL),
+			Map.entry(LessEqualNode.class, LESS_EQUAL),
+			Map.entry(NotNode.class, NOT),
+			Map.entry(MinusNode.class, MINUS),
+			Map.entry(OrNode.class, OR),
+			Map.entry(DivNode.class, DIV),
+			Map.entry(AndNode.class, AND),
+			Map.entry(ClassNode.class, CLASS),
+			Map.entry(FieldNode.class, FIELD),
+			Map.entry(MethodNode.class, METHOD),
+			Map.entry(ClassCallNode.class, CLASS_CALL),
+			Map.entry(NewNode.class, NEW),
+			Map.entry(EmptyNode.class, EMPTY),
+			Map.entry(ClassTypeNode.class, CLASS_TYPE),
+			Map.entry(MethodTypeNode.class, METHOD_TYPE),
+			Map.entry(RefTypeNode.class, REF_TYPE),
+			Map.entry(EmptyTypeNode.class, EMPTY_TYPE));
+
+	private NodeKind() {}
+
+	static int of(Class<?> nodeClass) {
+		return KINDS.getOrDefault(nodeClass, OTHER);
+	}
+}
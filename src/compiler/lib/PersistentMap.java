@@ -0,0 +1,104 @@
+package compiler.lib;
+
+/**
+ * Mappa persistente (immutabile) da interi a valori non null, realizzata come hash array mapped trie:
+ * ogni nodo ha fino a 32 figli, selezionati da 5 bit della chiave, memorizzati in un array compatto
+ * indicizzato tramite una bitmap. with restituisce una nuova mappa che condivide con questa tutti i nodi
+ * fuori dal cammino modificato, quindi costa O(log32 n) in tempo e memoria.
+ *
+ * Usata per le virtual table delle classi (chiavi = simboli internati da ScopedSymbolTable): una
+ * sottoclasse condivide con la superclasse i membri che non ridefinisce.
+ */
+
+public final class PersistentMap<V> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final PersistentMap<?> EMPTY = new PersistentMap<>(new Node(0, new Object[0]), 0);
+
+	private static final class Leaf {
+		final int key;
+		final Object value;
+
+		Leaf(int key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	// i figli sono Node o Leaf, nell'ordine dei bit accesi di bitmap
+	private static final class Node {
+		final int bitmap;
+		final Object[] children;
+
+		Node(int bitmap, Object[] children) {
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+	}
+
+	private final Node root;
+	private final int size;
+
+	private PersistentMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentMap<V> empty() {
+		return (PersistentMap<V>) EMPTY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// valore associato a key, null se non c'è
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		Node node = root;
+		for (int shift = 0; ; shift += BITS) {
+			int bit = 1 << ((key >>> shift) & MASK);
+			if ((node.bitmap & bit) == 0)
+				return null;
+			Object child = node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+			if (child instanceof Leaf leaf)
+				return leaf.key == key ? (V) leaf.value : null;
+			node = (Node) child;
+		}
+	}
+
+	// questa mappa con key associata a value
+	public PersistentMap<V> with(int key, V value) {
+		return new PersistentMap<>(with(root, 0, new Leaf(key, value)), get(key) == null ? size + 1 : size);
+	}
+
+	private static Node with(Node node, int shift, Leaf leaf) {
+		int bit = 1 << ((leaf.key >>> shift) & MASK);
+		int index = Integer.bitCount(node.bitmap & (bit - 1));
+		if ((node.bitmap & bit) == 0) {
+			Object[] children = new Object[node.children.length + 1];
+			System.arraycopy(node.children, 0, children, 0, index);
+			children[index] = leaf;
+			System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+			return new Node(node.bitmap | bit, children);
+		}
+		Object child = node.children[index];
+		Object[] children = node.children.clone();
+		if (child instanceof Leaf old)
+			children[index] = old.key == leaf.key ? leaf : merge(shift + BITS, old, leaf);
+		else
+			children[index] = with((Node) child, shift + BITS, leaf);
+		return new Node(node.bitmap, children);
+	}
+
+	// nodo con le due foglie, le cui chiavi coincidono nei bit sotto shift
+	private static Node merge(int shift, Leaf a, Leaf b) {
+		int indexA = (a.key >>> shift) & MASK;
+		int indexB = (b.key >>> shift) & MASK;
+		if (indexA == indexB)
+			return new Node(1 << indexA, new Object[] { merge(shift + BITS, a, b) });
+		return new Node((1 << indexA) | (1 << indexB), indexA < indexB ? new Object[] { a, b } : new Object[] { b, a });
+	}
+}
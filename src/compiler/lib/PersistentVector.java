@@ -0,0 +1,120 @@
+package compiler.lib;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Vettore persistente (immutabile): plus e with restituiscono un nuovo vettore che condivide con
+ * questo tutta la struttura non modificata. Gli elementi stanno nelle foglie di un albero con 32 figli
+ * per nodo, più una "coda" di al massimo 32 elementi non ancora inserita nell'albero; una modifica
+ * copia solo il cammino dalla radice alla foglia, cioè O(log32 n) nodi.
+ *
+ * Usato per i membri di ClassTypeNode: una sottoclasse condivide con la superclasse i campi e i metodi
+ * che non ridefinisce.
+ */
+
+public final class PersistentVector<T> extends AbstractList<T> {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, new Object[0], new Object[0]);
+
+	private final int size;
+	private final int shift; // livello della radice (BITS per un albero con sole foglie sotto la radice)
+	private final Object[] root;
+	private final Object[] tail;
+
+	private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+		this.tail = tail;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> PersistentVector<T> empty() {
+		return (PersistentVector<T>) EMPTY;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// indice del primo elemento della coda
+	private int tailOffset() {
+		return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		Objects.checkIndex(index, size);
+		if (index >= tailOffset())
+			return (T) tail[index & MASK];
+		Object[] node = root;
+		for (int level = shift; level > 0; level -= BITS)
+			node = (Object[]) node[(index >>> level) & MASK];
+		return (T) node[index & MASK];
+	}
+
+	// questo vettore con value aggiunto in fondo
+	public PersistentVector<T> plus(T value) {
+		if (size - tailOffset() < WIDTH) {
+			Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+			newTail[tail.length] = value;
+			return new PersistentVector<>(size + 1, shift, root, newTail);
+		}
+		// la coda è piena: entra nell'albero, aggiungendo un livello se la radice è piena
+		Object[] newRoot;
+		int newShift = shift;
+		if ((size >>> BITS) > (1 << shift)) {
+			newRoot = new Object[] { root, newPath(shift, tail) };
+			newShift += BITS;
+		} else
+			newRoot = pushTail(shift, root, tail);
+		return new PersistentVector<>(size + 1, newShift, newRoot, new Object[] { value });
+	}
+
+	private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+		int child = ((size - 1) >>> level) & MASK;
+		Object[] node = Arrays.copyOf(parent, Math.max(parent.length, child + 1));
+		if (level == BITS)
+			node[child] = tailNode;
+		else
+			node[child] = child < parent.length
+					? pushTail(level - BITS, (Object[]) parent[child], tailNode)
+					: newPath(level - BITS, tailNode);
+		return node;
+	}
+
+	private static Object[] newPath(int level, Object[] node) {
+		return level == 0 ? node : new Object[] { newPath(level - BITS, node) };
+	}
+
+	// questo vettore con value in posizione index (in fondo se index è la dimensione)
+	public PersistentVector<T> with(int index, T value) {
+		if (index == size)
+			return plus(value);
+		Objects.checkIndex(index, size);
+		if (index >= tailOffset()) {
+			Object[] newTail = tail.clone();
+			newTail[index & MASK] = value;
+			return new PersistentVector<>(size, shift, root, newTail);
+		}
+		return new PersistentVector<>(size, shift, with(shift, root, index, value), tail);
+	}
+
+	private static Object[] with(int level, Object[] node, int index, Object value) {
+		Object[] copy = node.clone();
+		if (level == 0)
+			copy[index & MASK] = value;
+		else {
+			int child = (index >>> level) & MASK;
+			copy[child] = with(level - BITS, (Object[]) node[child], index, value);
+		}
+		return copy;
+	}
+}
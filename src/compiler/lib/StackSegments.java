@@ -0,0 +1,116 @@
+package compiler.lib;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Ricorsione di profondità arbitraria senza -Xss: le visite contano i livelli annidati e, ogni
+ * SEGMENT_DEPTH livelli, continuano su un nuovo segmento di stack, cioè un thread con stack di
+ * SEGMENT_STACK byte, mentre il thread chiamante ne attende il risultato. Un solo thread per volta
+ * esegue la visita (gli altri sono in join), quindi lo stato del visitor non va sincronizzato;
+ * le eccezioni tornano al chiamante come se la visita fosse rimasta sullo stesso stack.
+ *
+ * Costo: i thread non vengono riusati, quindi ogni passata su un albero profondo (generazione
+ * dell'AST, symbol table, type checking, ...) crea e avvia un nuovo thread con stack di SEGMENT_STACK
+ * byte (4MB) ogni SEGMENT_DEPTH livelli. I segmenti sono annidati, quindi nel punto più profondo di
+ * una visita di profondità d sono vivi insieme circa d/SEGMENT_DEPTH thread, tutti in join tranne
+ * l'ultimo: circa 400 thread, e 1,6GB di stack riservato, su 100000 livelli. Con più visite
+ * contemporanee (BatchCompiler -j, fasi eseguite su un ForkJoinPool) il picco è per visita.
+ * Un worker di un ForkJoinPool attende il suo segmento con ForkJoinPool.managedBlock, così il pool
+ * può attivare un altro worker al suo posto invece di restare senza thread liberi.
+ *
+ * Ogni visitor ne ha uno (vedi BaseASTVisitor): ha senso solo per la visita che lo usa.
+ */
+
+public final class StackSegments {
+
+	// una visita, che può tirare l'eccezione E del visitor
+	public interface Frame<T, E extends Exception> {
+		T run() throws E;
+	}
+
+	// il primo segmento è lo stack del chiamante, ad esempio di un thread di un pool (1MB di default):
+	// SEGMENT_DEPTH livelli ne usano al più qualche centinaio di KB
+	public static final int SEGMENT_DEPTH = 256;
+	public static final long SEGMENT_STACK = 4L << 20;
+
+	private int depth = 0; // livelli nel segmento corrente
+
+	// true se il prossimo livello va eseguito su un nuovo segmento
+	public boolean full() {
+		return depth >= SEGMENT_DEPTH;
+	}
+
+	public void enter() {
+		depth++;
+	}
+
+	public void exit() {
+		depth--;
+	}
+
+	// esegue frame su un nuovo segmento, attendendone la fine
+	public <T, E extends Exception> T inNewSegment(Frame<T, E> frame) throws E {
+		int saved = depth;
+		depth = 0;
+		try {
+			return withStack(SEGMENT_STACK, frame);
+		} finally {
+			depth = saved;
+		}
+	}
+
+	/**
+	 * Esegue frame su un thread con stack di stackSize byte e ne ritorna il risultato, oppure tira
+	 * l'eccezione che ha tirato frame. Il thread chiamante resta in attesa.
+	 */
+	public static <T, E extends Exception> T withStack(long stackSize, Frame<T, E> frame) throws E {
+		Object[] result = new Object[1];
+		Throwable[] failure = new Throwable[1];
+		Thread segment = new Thread(null, () -> {
+			try {
+				result[0] = frame.run();
+			} catch (Throwable t) {
+				failure[0] = t;
+			}
+		}, "fool-stack-segment", stackSize);
+		segment.start();
+		// fuori da un ForkJoinPool managedBlock si limita a chiamare block
+		ForkJoinPool.ManagedBlocker joiner = new ForkJoinPool.ManagedBlocker() {
+			@Override
+			public boolean block() throws InterruptedException {
+				segment.join();
+				return true;
+			}
+
+			@Override
+			public boolean isReleasable() {
+				return !segment.isAlive();
+			}
+		};
+		boolean interrupted = false;
+		while (true)
+			try {
+				ForkJoinPool.managedBlock(joiner);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true; // la visita non è interrompibile: si attende comunque la sua fine
+			}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure[0] instanceof RuntimeException e)
+			throw e;
+		if (failure[0] instanceof Error e)
+			throw e;
+		if (failure[0] != null)
+			throw StackSegments.<E>rethrow((Exception) failure[0]);
+		@SuppressWarnings("unchecked")
+		T value = (T) result[0];
+		return value;
+	}
+
+	// l'unica eccezione controllata che frame.run può tirare è E
+	@SuppressWarnings("unchecked")
+	private static <E extends Exception> E rethrow(Exception e) throws E {
+		throw (E) e;
+	}
+}
@@ -0,0 +1,252 @@
+package svm;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Distribuisce dei job (programma più valori di alcune parole del segmento dati) su più processi
+ * BatchWorker, collegati con socket locali, e ne raccoglie gli output.
+ *
+ * Ogni worker ha una coda di job ed un thread del coordinatore che la serve: i job vengono assegnati
+ * a rotazione e un thread che ha svuotato la propria coda ruba dal fondo della coda più lunga (work
+ * stealing), così i worker più veloci prendono più lavoro.
+ * Se la connessione con un worker si interrompe, il worker viene riavviato (o ricontattato, se non è un
+ * processo del coordinatore) ed il job viene rimesso in coda, fino a MAX_ATTEMPTS tentativi.
+ *
+ * I worker avviati dal coordinatore sono JVM sulla stessa macchina, con lo stesso classpath; con
+ * BatchCoordinator(List) ci si collega invece a worker già in ascolto, anche su altri nodi.
+ * */
+
+public class BatchCoordinator implements AutoCloseable {
+
+    public static final int MAX_ATTEMPTS = 3;
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final List<Deque<Job>> queues = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final Map<Program, Integer> programIds = new IdentityHashMap<>();
+    private int next;      // coda del prossimo job sottomesso
+    private int alive;     // thread dei worker ancora attivi
+    private boolean closed;
+
+    // un job: l'esecuzione di program con values al posto delle parole dataAddresses
+    private static class Job {
+        final Program program;
+        final int id;
+        final int[] dataAddresses;
+        final int[] values;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        int attempts;
+
+        Job(Program program, int id, int[] dataAddresses, int[] values) {
+            this.program = program;
+            this.id = id;
+            this.dataAddresses = dataAddresses;
+            this.values = values;
+        }
+    }
+
+    // avvia count processi worker su questa macchina
+    public BatchCoordinator(int count) throws IOException {
+        for (int w = 0; w < count; w++) workers.add(new Worker(null));
+        start();
+    }
+
+    // si collega a worker già in ascolto (BatchWorker con la porta come argomento)
+    public BatchCoordinator(List<InetSocketAddress> addresses) throws IOException {
+        for (InetSocketAddress address : addresses) workers.add(new Worker(address));
+        start();
+    }
+
+    private void start() throws IOException {
+        try {
+            for (Worker worker : workers) worker.connect();
+        } catch (IOException e) {
+            for (Worker worker : workers) worker.stop();
+            throw e;
+        }
+        for (int w = 0; w < workers.size(); w++) {
+            int index = w;
+            queues.add(new ArrayDeque<>());
+            Thread thread = new Thread(() -> serve(index), "batch-worker-" + w);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        alive = threads.size();
+        threads.forEach(Thread::start);
+    }
+
+    // il risultato è l'output stampato dall'esecuzione (print ed eventuali errori)
+    public synchronized CompletableFuture<String> submit(Program program, int[] dataAddresses, int[] values) {
+        if (program.isCompact())
+            throw new IllegalArgumentException("Batch execution needs word-encoded code");
+        if (closed) throw new IllegalStateException("Coordinator closed");
+        Job job = new Job(program, programIds.computeIfAbsent(program, p -> programIds.size()), dataAddresses, values);
+        if (alive == 0)
+            job.result.completeExceptionally(new IOException("No worker available"));
+        else {
+            queues.get(next).addLast(job);
+            next = (next + 1) % queues.size();
+            notifyAll();
+        }
+        return job.result;
+    }
+
+    /**
+     * Un job per ogni riga di values, come le corsie di BatchVM: ritorna l'output di ognuno, oppure
+     * l'errore per i job falliti MAX_ATTEMPTS volte.
+     * */
+    public String[] run(Program program, int[] dataAddresses, int[][] values) throws InterruptedException {
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int[] lane : values) results.add(submit(program, dataAddresses, lane));
+        String[] outputs = new String[values.length];
+        for (int l = 0; l < values.length; l++)
+            try {
+                outputs[l] = results.get(l).get();
+            } catch (ExecutionException e) {
+                outputs[l] = "Error: " + e.getCause().getMessage() + "\n";
+            }
+        return outputs;
+    }
+
+    // prossimo job del worker w: dalla propria coda, altrimenti rubato; null quando il coordinatore è chiuso
+    private synchronized Job take(int w) throws InterruptedException {
+        while (true) {
+            Job job = queues.get(w).pollFirst();
+            if (job != null) return job;
+            Deque<Job> victim = null;
+            for (Deque<Job> queue : queues)
+                if (victim == null || queue.size() > victim.size()) victim = queue;
+            if (!victim.isEmpty()) return victim.pollLast();
+            if (closed) return null;
+            wait();
+        }
+    }
+
+    private synchronized void retry(int w, Job job, IOException e) {
+        if (++job.attempts >= MAX_ATTEMPTS)
+            job.result.completeExceptionally(e);
+        else {
+            queues.get(w).addFirst(job);
+            notifyAll();
+        }
+    }
+
+    // il worker w non è più raggiungibile: la sua coda viene rubata dagli altri, se non ce ne sono i job falliscono
+    private synchronized void retire(IOException e) {
+        if (--alive == 0)
+            for (Deque<Job> queue : queues)
+                while (!queue.isEmpty()) queue.pollFirst().result.completeExceptionally(e);
+        notifyAll();
+    }
+
+    private void serve(int w) {
+        Worker worker = workers.get(w);
+        try {
+            Job job;
+            while ((job = take(w)) != null) {
+                try {
+                    job.result.complete(worker.execute(job));
+                } catch (IOException e) {
+                    retry(w, job, e);
+                    try {
+                        worker.restart();
+                    } catch (IOException restartFailed) {
+                        retire(restartFailed);
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker.stop();
+    }
+
+    // attende i job sottomessi, poi chiude le connessioni e ferma i processi worker
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads)
+            while (true)
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true; // i job sottomessi vanno comunque completati
+                }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    // un processo worker, oppure un worker remoto se address non è null
+    private static class Worker {
+        private final InetSocketAddress address;
+        private Process process;
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+        private final Set<Integer> programs = new HashSet<>(); // programmi già trasmessi
+
+        Worker(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void connect() throws IOException {
+            InetSocketAddress target = address;
+            if (target == null) {
+                String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+                process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), BatchWorker.class.getName())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                String port = new BufferedReader(new InputStreamReader(process.getInputStream())).readLine();
+                if (port == null) throw new IOException("Worker process exited before listening");
+                target = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port.trim()));
+            }
+            socket = new Socket(target.getAddress(), target.getPort());
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            programs.clear();
+        }
+
+        String execute(Job job) throws IOException {
+            out.writeInt(job.id);
+            boolean send = !programs.contains(job.id);
+            out.writeBoolean(send);
+            if (send) {
+                out.writeInt(job.program.memSize);
+                BatchWorker.writeInts(out, job.program.code);
+                BatchWorker.writeInts(out, job.program.data);
+            }
+            BatchWorker.writeInts(out, job.dataAddresses);
+            BatchWorker.writeInts(out, job.values);
+            out.flush();
+            String output = BatchWorker.readString(in);
+            programs.add(job.id);
+            return output;
+        }
+
+        void restart() throws IOException {
+            stop();
+            connect();
+        }
+
+        void stop() {
+            try {
+                if (socket != null) socket.close();
+            } catch (IOException e) {
+                // la connessione è comunque persa
+            }
+            if (process != null) process.destroy();
+        }
+    }
+}
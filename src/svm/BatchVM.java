@@ -0,0 +1,324 @@
+package svm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Esegue in lockstep molte istanze (corsie) dello stesso programma, che differiscono solo per alcune
+ * parole del segmento dati (ad esempio i campi degli oggetti costanti globali).
+ *
+ * Finché le corsie seguono lo stesso flusso di controllo, anche ip, sp, fp, hp e ra coincidono: sono
+ * registri unici, mentre ogni parola di memoria e tm hanno un valore per corsia. La memoria è disposta
+ * per indirizzo, memory[address * lanes + corsia], quindi ogni istruzione aritmetica è un ciclo sulle
+ * corsie su parole contigue, che il compilatore JIT vettorizza.
+ *
+ * Quando le corsie non concordano (condizione di beq/bleq, indirizzo di lw, sw, js, getfield o
+ * invokevirtual, valore di sra, sfp, shp, divisione per zero) la maggioranza prosegue in lockstep e le
+ * altre corsie escono: il loro stato viene copiato in un ExecuteVM che riparte dall'istruzione corrente.
+ * Anche fork e join fanno uscire tutte le corsie.
+ *
+ * Come ExecuteVM con il codice verificato, non controlla il fetch ma controlla ciò che dipende dai valori:
+ * se un'istruzione uscirebbe dalla memoria (indirizzo di lw, sw, getfield o invokevirtual, stack vuoto o
+ * dentro lo heap, heap pointer) o dal codice (destinazione di js o invokevirtual), tutte le corsie escono
+ * e l'errore lo segnala ExecuteVM.
+ * */
+
+public class BatchVM {
+
+    private final Program program;
+    private final int[] code;
+    private final int lanes;
+    private final int memSize;
+    private final int[] memory;  // memory[address * lanes + corsia]
+    private final int[] tm;      // registro tm di ogni corsia
+    private final boolean[] active; // corsie ancora in lockstep
+    private int activeCount;
+    private final ByteArrayOutputStream[] outputs;
+    private final PrintStream[] out;
+    private int scalarLanes;     // corsie uscite dal lockstep
+
+    private int ip = 0;
+    private int sp;
+    private int hp;
+    private int fp;
+    private int ra;
+
+    /**
+     * Una corsia per ogni riga di values: values[corsia][k] sostituisce la parola dataAddresses[k]
+     * del segmento dati. Il programma deve essere verificato e nella codifica a parole.
+     * */
+    public BatchVM(Program program, int[] dataAddresses, int[][] values) {
+        if (!program.verified || program.isCompact())
+            throw new IllegalArgumentException("Batch execution needs verified, word-encoded code");
+        this.program = program;
+        this.code = program.code;
+        this.lanes = values.length;
+        this.memSize = program.memSize;
+        this.memory = new int[memSize * lanes];
+        this.tm = new int[lanes];
+        this.active = new boolean[lanes];
+        this.outputs = new ByteArrayOutputStream[lanes];
+        this.out = new PrintStream[lanes];
+        for (int l = 0; l < lanes; l++) {
+            active[l] = true;
+            outputs[l] = new ByteArrayOutputStream();
+            out[l] = new PrintStream(outputs[l]);
+        }
+        activeCount = lanes;
+        for (int a = 0; a < program.data.length; a++) fill(a, program.data[a]);
+        for (int l = 0; l < lanes; l++)
+            for (int k = 0; k < dataAddresses.length; k++) memory[dataAddresses[k] * lanes + l] = values[l][k];
+        hp = program.data.length;
+        sp = memSize;
+        fp = memSize;
+    }
+
+    public int scalarLanes() {
+        return scalarLanes;
+    }
+
+    // ritorna l'output di ogni corsia (print ed eventuali errori)
+    public String[] run() {
+        lockstep();
+        String[] result = new String[lanes];
+        for (int l = 0; l < lanes; l++) {
+            out[l].flush();
+            result[l] = outputs[l].toString();
+        }
+        return result;
+    }
+
+    private void lockstep() {
+        while (activeCount > 0) {
+            int at = ip; // le corsie che escono dal lockstep ripartono da questa istruzione
+            int bytecode = code[ip++];
+            if (ExecuteVM.pops(bytecode, ExecuteVM.hasOperand(bytecode) ? code[ip] : 0) > memSize - sp || sp <= hp) {
+                leaveAll(at);
+                return;
+            }
+            int a, b, address;
+            switch (bytecode) {
+                case SVMParser.PUSH:
+                    fill(--sp, code[ip++]);
+                    break;
+                case SVMParser.POP:
+                    sp++;
+                    break;
+                case SVMParser.ADD:
+                    b = sp * lanes;
+                    a = ++sp * lanes;
+                    for (int l = 0; l < lanes; l++) memory[a + l] += memory[b + l];
+                    break;
+                case SVMParser.SUB:
+                    b = sp * lanes;
+                    a = ++sp * lanes;
+                    for (int l = 0; l < lanes; l++) memory[a + l] -= memory[b + l];
+                    break;
+                case SVMParser.MULT:
+                    b = sp * lanes;
+                    a = ++sp * lanes;
+                    for (int l = 0; l < lanes; l++) memory[a + l] *= memory[b + l];
+                    break;
+                case SVMParser.DIV:
+                    b = sp * lanes;
+                    for (int l = 0; l < lanes; l++)
+                        if (active[l] && memory[b + l] == 0) leave(l, at); // l'errore lo gestisce ExecuteVM
+                    if (activeCount == 0) return;
+                    a = ++sp * lanes;
+                    for (int l = 0; l < lanes; l++) memory[a + l] = memory[b + l] == 0 ? 0 : memory[a + l] / memory[b + l];
+                    break;
+                case SVMParser.STOREW:
+                    address = agree(sp, at);
+                    if (!isAddress(address)) {
+                        leaveAll(at);
+                        return;
+                    }
+                    copy(sp + 1, address);
+                    sp += 2;
+                    break;
+                case SVMParser.LOADW:
+                    address = agree(sp, at);
+                    if (!isAddress(address)) {
+                        leaveAll(at);
+                        return;
+                    }
+                    copy(address, sp);
+                    break;
+                case SVMParser.BRANCH:
+                    ip = code[ip];
+                    break;
+                case SVMParser.BRANCHEQ:
+                case SVMParser.BRANCHLESSEQ:
+                    address = code[ip++];
+                    if (branch(bytecode == SVMParser.BRANCHEQ, at)) ip = address;
+                    sp += 2;
+                    break;
+                case SVMParser.JS:
+                    address = agree(sp, at); // prima di togliere il valore: chi esce riparte da at
+                    if (!isCallTarget(address)) {
+                        leaveAll(at);
+                        return;
+                    }
+                    sp++;
+                    ra = ip;
+                    ip = address;
+                    break;
+                case SVMParser.STORERA:
+                    ra = agree(sp, at);
+                    sp++;
+                    break;
+                case SVMParser.LOADRA:
+                    fill(--sp, ra);
+                    break;
+                case SVMParser.STORETM:
+                    System.arraycopy(memory, sp++ * lanes, tm, 0, lanes);
+                    break;
+                case SVMParser.LOADTM:
+                    System.arraycopy(tm, 0, memory, --sp * lanes, lanes);
+                    break;
+                case SVMParser.LOADFP:
+                    fill(--sp, fp);
+                    break;
+                case SVMParser.STOREFP:
+                    fp = agree(sp, at);
+                    sp++;
+                    break;
+                case SVMParser.COPYFP:
+                    fp = sp;
+                    break;
+                case SVMParser.LOADHP:
+                    fill(--sp, hp);
+                    break;
+                case SVMParser.STOREHP:
+                    address = agree(sp, at);
+                    if (address < 0 || address > sp + 1) {
+                        leaveAll(at);
+                        return;
+                    }
+                    hp = address;
+                    sp++;
+                    break;
+                case SVMParser.PRINT:
+                    for (int l = 0; l < lanes; l++)
+                        if (active[l]) out[l].println(sp < memSize ? memory[sp * lanes + l] : "Empty stack!");
+                    break;
+                case SVMParser.HALT:
+                    return;
+                case SVMParser.ALLOC:
+                    a = code[ip++];
+                    if (a >= sp - hp) {
+                        for (int l = 0; l < lanes; l++)
+                            if (active[l]) out[l].println("Error: Out of memory");
+                        return;
+                    }
+                    copy(sp++, hp + a); // dispatch pointer
+                    for (int j = 0; j < a; j++) copy(sp++, hp + j);
+                    fill(--sp, hp + a);
+                    hp += a + 1;
+                    break;
+                case SVMParser.GETFIELD:
+                    address = agree(sp, at) + code[ip++];
+                    if (!isAddress(address)) {
+                        leaveAll(at);
+                        return;
+                    }
+                    copy(address, sp);
+                    break;
+                case SVMParser.INVOKEVIRTUAL:
+                    address = sp;
+                    for (int k = 0; k < 3; k++) { // object pointer, dispatch pointer, poi indirizzo del metodo
+                        if (!isAddress(address)) {
+                            leaveAll(at);
+                            return;
+                        }
+                        address = agree(address, at) + (k == 1 ? code[ip] : 0);
+                    }
+                    ip++;
+                    if (!isCallTarget(address)) {
+                        leaveAll(at);
+                        return;
+                    }
+                    ra = ip;
+                    ip = address;
+                    break;
+                default: // fork e join: le corsie proseguono con ExecuteVM
+                    leaveAll(at);
+                    return;
+            }
+        }
+    }
+
+    private boolean isAddress(int address) {
+        return address >= 0 && address < memSize;
+    }
+
+    // destinazione ammessa di js ed invokevirtual (vedi Program)
+    private boolean isCallTarget(int address) {
+        return address >= 0 && address < code.length && program.callTarget[address];
+    }
+
+    private void fill(int address, int v) {
+        int base = address * lanes;
+        for (int l = 0; l < lanes; l++) memory[base + l] = v;
+    }
+
+    private void copy(int from, int to) {
+        System.arraycopy(memory, from * lanes, memory, to * lanes, lanes);
+    }
+
+    /**
+     * Valore della parola address, su cui le corsie attive devono concordare: quelle con un valore
+     * diverso da quello della maggioranza escono dal lockstep ripartendo dall'istruzione at.
+     * */
+    private int agree(int address, int at) {
+        int base = address * lanes;
+        int first = -1;
+        boolean uniform = true;
+        for (int l = 0; l < lanes; l++)
+            if (active[l]) {
+                if (first < 0) first = l;
+                else if (memory[base + l] != memory[base + first]) uniform = false;
+            }
+        if (uniform) return memory[base + first];
+        Map<Integer, Integer> counts = new HashMap<>();
+        int majority = memory[base + first];
+        for (int l = 0; l < lanes; l++)
+            if (active[l] && counts.merge(memory[base + l], 1, Integer::sum) > counts.getOrDefault(majority, 0))
+                majority = memory[base + l];
+        for (int l = 0; l < lanes; l++)
+            if (active[l] && memory[base + l] != majority) leave(l, at);
+        return majority;
+    }
+
+    // condizione di beq (eq) o bleq sui due valori in cima: le corsie in minoranza escono dal lockstep
+    private boolean branch(boolean eq, int at) {
+        int v1 = sp * lanes, v2 = (sp + 1) * lanes;
+        int taken = 0;
+        for (int l = 0; l < lanes; l++)
+            if (active[l] && (eq ? memory[v2 + l] == memory[v1 + l] : memory[v2 + l] <= memory[v1 + l])) taken++;
+        boolean majority = taken * 2 >= activeCount;
+        if (taken != 0 && taken != activeCount)
+            for (int l = 0; l < lanes; l++)
+                if (active[l] && (eq ? memory[v2 + l] == memory[v1 + l] : memory[v2 + l] <= memory[v1 + l]) != majority)
+                    leave(l, at);
+        return majority;
+    }
+
+    // tutte le corsie attive escono dal lockstep, dall'istruzione at
+    private void leaveAll(int at) {
+        for (int l = 0; l < lanes; l++)
+            if (active[l]) leave(l, at);
+    }
+
+    // la corsia l esce dal lockstep e prosegue da sola, dall'istruzione at
+    private void leave(int l, int at) {
+        int[] laneMemory = new int[memSize];
+        for (int address = 0; address < memSize; address++) laneMemory[address] = memory[address * lanes + l];
+        active[l] = false;
+        activeCount--;
+        scalarLanes++;
+        new ExecuteVM(program, laneMemory, at, sp, fp, hp, ra, tm[l], out[l]).run();
+    }
+}
@@ -0,0 +1,131 @@
+package svm;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Processo worker di BatchCoordinator: riceve dei job su una socket, li esegue e risponde con l'output.
+ *
+ * Un job è un programma più i valori di alcune parole del segmento dati (come le corsie di BatchVM).
+ * Il worker tiene i programmi già ricevuti, indicizzati con l'id assegnato dal coordinatore: un programma
+ * viene trasmesso solo la prima volta, poi i job lo indicano con il solo id.
+ *
+ * Senza argomenti ascolta su una porta libera del loopback, la scrive su stdout, serve una sola
+ * connessione e termina quando il coordinatore la chiude. Con una porta come argomento serve una
+ * connessione dopo l'altra, per i worker avviati a mano: anche in questo caso ascolta sul loopback, a meno
+ * che il secondo argomento non sia l'indirizzo su cui ascoltare (ad esempio per coordinatori su altre
+ * macchine).
+ *
+ * Il codice ricevuto non è fidato: viene sempre eseguito con tutti i controlli dinamici (ExecuteVM.cpu()),
+ * e un job che fallisce (ad esempio per indirizzi fuori dal segmento dati) risponde con l'errore, senza
+ * fermare il worker.
+ *
+ * Protocollo, con DataOutputStream: richiesta = id, flag del programma, [memSize, code, data],
+ * indirizzi, valori; risposta = output. Gli array sono preceduti dalla lunghezza.
+ * */
+
+public class BatchWorker {
+
+    public static final int MAX_MEMSIZE = 1 << 24; // parole di memoria di un job
+
+    private final Map<Integer, Program> programs = new HashMap<>();
+
+    public static void main(String[] args) throws IOException {
+        BatchWorker worker = new BatchWorker();
+        if (args.length == 0)
+            try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                System.out.println(server.getLocalPort());
+                System.out.flush();
+                worker.serve(server.accept());
+            }
+        else
+            try (ServerSocket server = new ServerSocket(Integer.parseInt(args[0]), 50,
+                    args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress())) {
+                while (true) {
+                    worker.programs.clear(); // un nuovo coordinatore assegna nuovi id
+                    worker.serve(server.accept());
+                }
+            }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException e) {
+                    return; // il coordinatore ha chiuso la connessione
+                }
+                if (in.readBoolean()) {
+                    int memSize = in.readInt();
+                    programs.put(id, new Program(readInts(in), readInts(in), false, memSize));
+                }
+                Program program = programs.get(id);
+                if (program == null) throw new IOException("Unknown program " + id);
+                int[] dataAddresses = readInts(in);
+                int[] values = readInts(in);
+                String output;
+                try {
+                    output = execute(program, dataAddresses, values);
+                } catch (RuntimeException e) {
+                    output = "Error: " + e.getMessage() + "\n";
+                }
+                writeString(out, output);
+                out.flush();
+            }
+        }
+    }
+
+    // una esecuzione di program, con values al posto delle parole dataAddresses del segmento dati
+    static String execute(Program program, int[] dataAddresses, int[] values) {
+        if (program.memSize < program.data.length || program.memSize > MAX_MEMSIZE)
+            throw new IllegalArgumentException("Invalid memory size " + program.memSize);
+        if (dataAddresses.length != values.length)
+            throw new IllegalArgumentException("Expected " + dataAddresses.length + " values");
+        for (int address : dataAddresses)
+            if (address < 0 || address >= program.data.length)
+                throw new IllegalArgumentException("Data address " + address + " outside the data segment");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output);
+        int[] memory = new int[program.memSize];
+        System.arraycopy(program.data, 0, memory, 0, program.data.length);
+        for (int k = 0; k < dataAddresses.length; k++) memory[dataAddresses[k]] = values[k];
+        new ExecuteVM(program, memory, 0, program.memSize, program.memSize, program.data.length, 0, 0, out).run();
+        out.flush();
+        return output.toString();
+    }
+
+    static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int v : a) out.writeInt(v);
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid array length " + length);
+        int[] a = new int[length];
+        for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+        return a;
+    }
+
+    // writeUTF è limitato a 64KB, l'output di un programma no
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
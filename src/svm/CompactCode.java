@@ -0,0 +1,106 @@
+package svm;
+
+import java.util.Set;
+
+/**
+ * Codifica compatta, a lunghezza variabile, del codice prodotto dall'assemblatore.
+ *
+ * Ogni istruzione occupa un byte per l'opcode (le costanti di SVMParser stanno in un byte),
+ * seguito, solo per le istruzioni con argomento, da un intero in formato varint zigzag
+ * (7 bit per byte, il bit alto indica che segue un altro byte): i valori piccoli, positivi
+ * o negativi, occupano un solo byte.
+ *
+ * Gli indirizzi di codice diventano offset in byte:
+ * - i salti (b, beq, bleq) usano un offset relativo all'istruzione successiva;
+ * - le push di una label (indirizzi di funzione usati da js) ed i riferimenti a label nel
+ *   segmento dati contengono l'offset assoluto in byte.
+ * Poiché la lunghezza di un offset dipende dalla posizione delle istruzioni, le lunghezze degli
+ * operandi vengono calcolate iterativamente finché non si stabilizzano (possono solo crescere,
+ * un varint più lungo del necessario viene decodificato correttamente).
+ * */
+
+public class CompactCode {
+
+    public final byte[] code;
+    public final int[] data;
+    public final int[] entries; // ingressi di funzione (vedi Verifier.functionEntries), in byte
+
+    private CompactCode(byte[] code, int[] data, int[] entries) {
+        this.code = code;
+        this.data = data;
+        this.entries = entries;
+    }
+
+    /**
+     * codeSize è il numero di parole usate in code, codeRefs e dataRefs sono le posizioni
+     * di code e data che contengono indirizzi di codice (da tradurre in offset in byte).
+     * */
+    public static CompactCode encode(int[] code, int codeSize, Set<Integer> codeRefs, int[] data, Set<Integer> dataRefs) {
+        int[] position = new int[codeSize + 1]; // offset in byte di ogni parola che inizia un'istruzione
+        int[] length = new int[codeSize];       // lunghezza in byte dell'operando dell'istruzione in j
+        for (int j = 0; j < codeSize; j += ExecuteVM.hasOperand(code[j]) ? 2 : 1)
+            if (ExecuteVM.hasOperand(code[j])) length[j] = 1;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int pos = 0;
+            for (int j = 0; j < codeSize; j++) {
+                position[j] = pos;
+                pos += 1 + length[j];
+                if (ExecuteVM.hasOperand(code[j])) position[++j] = pos;
+            }
+            position[codeSize] = pos;
+            for (int j = 0; j < codeSize; j += ExecuteVM.hasOperand(code[j]) ? 2 : 1) {
+                if (!ExecuteVM.hasOperand(code[j])) continue;
+                int needed = varintLength(zigzag(operand(code, j, position, codeRefs)));
+                if (needed > length[j]) {
+                    length[j] = needed;
+                    changed = true;
+                }
+            }
+        }
+        byte[] compact = new byte[position[codeSize]];
+        for (int j = 0; j < codeSize; j += ExecuteVM.hasOperand(code[j]) ? 2 : 1) {
+            int pos = position[j];
+            compact[pos++] = (byte) code[j];
+            if (ExecuteVM.hasOperand(code[j]))
+                writeVarint(compact, pos, zigzag(operand(code, j, position, codeRefs)), length[j]);
+        }
+        int[] compactData = data.clone();
+        for (int j : dataRefs) compactData[j] = position[data[j]];
+        int[] entries = Verifier.functionEntries(code, codeRefs, data, dataRefs);
+        for (int i = 0; i < entries.length; i++) entries[i] = position[entries[i]];
+        return new CompactCode(compact, compactData, entries);
+    }
+
+    // operando dell'istruzione in j, con gli indirizzi di codice tradotti in offset in byte
+    private static int operand(int[] code, int j, int[] position, Set<Integer> codeRefs) {
+        switch (code[j]) {
+            case SVMParser.BRANCH:
+            case SVMParser.BRANCHEQ:
+            case SVMParser.BRANCHLESSEQ:
+                return position[code[j + 1]] - position[j + 2]; // relativo all'istruzione successiva
+            default:
+                return codeRefs.contains(j + 1) ? position[code[j + 1]] : code[j + 1];
+        }
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int varintLength(int v) {
+        int len = 1;
+        while ((v >>>= 7) != 0) len++;
+        return len;
+    }
+
+    // scrive v in esattamente len byte, eventualmente con byte di continuazione ridondanti
+    private static void writeVarint(byte[] b, int pos, int v, int len) {
+        for (int k = 0; k < len - 1; k++) {
+            b[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[pos] = (byte) (v & 0x7F);
+    }
+}
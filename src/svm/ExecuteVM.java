@@ -1,5 +1,11 @@
 package svm;
 
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 /**
  * Questa classe contiene il ciclo fetch-execute delle istruzioni.
  * Usa dei registri, implementati attraverso dei campi. L'indirizzo ip (instruction pointer) contiene
@@ -12,23 +18,70 @@ package svm;
  * (grandezza) codesize e l'altra viene usata per la memoria, usata per lo stack.
  * Quando faccio una push punto alla cima della memoria. Dunque quando pusho, prima decremento, poi aggiungo
  * il valore.
+ *
+ * Il codice sta in un Program immutabile, condivisibile tra più esecuzioni: un ExecuteVM contiene solo
+ * lo stato di una esecuzione (memoria e registri) e l'output su cui stampa.
+ *
+ * fork e join valutano in parallelo gli argomenti indipendenti di una chiamata: fork crea una esecuzione
+ * figlia, che condivide la memoria, parte con il frame pointer corrente ed usa un proprio segmento di
+ * stack (vedi ParallelMemory); join ne attende il risultato. Senza un ForkJoinPool, o quando ci sono già
+ * abbastanza esecuzioni in attesa, la figlia viene eseguita subito, sotto la cima dello stack.
+ * La figlia esegue con gli stessi controlli del padre (run() o cpu()). In una esecuzione con carburante
+ * limitato (run(long) o cpu(long) con fuel < UNLIMITED) i fork vengono sempre eseguiti subito, con il
+ * carburante rimasto al padre, a cui vengono addebitate le istruzioni della figlia: se il carburante
+ * finisce durante la figlia, la chiamata successiva riprende dalla figlia.
  * */
 
 public class ExecuteVM {
     
     public static final int CODESIZE = 10000;
     public static final int MEMSIZE = 10000;
+    public static final long UNLIMITED = Long.MAX_VALUE; // carburante di un'esecuzione senza limiti
+    public static final int STACKSIZE = 1000; // segmento di stack minimo di una esecuzione parallela
+    public static final int SEGMENTS = 8;     // con la ricorsione un segmento di stack è 1/SEGMENTS della memoria
+    public static final int CHUNK = 256;      // blocco di heap di una esecuzione parallela
+    private static final int SURPLUS = 4;     // oltre questi task in coda i fork vengono eseguiti subito
     
-    private int[] code;
-    private int[] memory = new int[MEMSIZE];
+    private final Program program;
+    private final int[] code;
+    private final byte[] compactCode; // codifica compatta (vedi CompactCode), in alternativa a code
+    private final boolean[] boundary; // true se in quella posizione inizia un'istruzione
+    private final boolean[] callTarget; // destinazioni ammesse di js ed invokevirtual (vedi Program)
+    private final int[] memory;
+    private final PrintStream out;
+    private final ForkJoinPool pool;      // null se l'esecuzione è sequenziale
+    private final ParallelMemory shared;  // null se l'esecuzione è sequenziale
     
     private int ip = 0; //instruction pointer
-    private int sp = MEMSIZE;   //stack pointer
+    private int sp;   //stack pointer, parte dalla fine della memoria
     
     private int hp = 0; //heap pointer
-    private int fp = MEMSIZE; //frame pointer
+    private int fp; //frame pointer
     private int ra; //return address
     private int tm; //temporary storage
+    private boolean halted; // eseguita halt oppure fermata da un errore
+    private boolean failed; // fermata da un errore
+    private int heapEnd;    // esecuzione parallela: fine del blocco di heap in uso
+    private int stackLimit; // esecuzione parallela: fondo del segmento di stack
+    private final Deque<Fork> forks = new ArrayDeque<>(); // fork in attesa di join, l'ultimo in cima
+    private ExecuteVM inline;   // figlia eseguita subito e non ancora terminata, da riprendere prima del padre
+    private boolean limited;    // carburante limitato: i fork vengono eseguiti subito (vedi fork)
+    private long remaining;     // carburante rimasto alla fine dell'ultima execute
+
+    // un fork: il segnaposto del risultato, l'esecuzione figlia e, se eseguita in parallelo, task e segmento
+    private static class Fork {
+      final int slot;
+      final ExecuteVM child;
+      final ForkJoinTask<?> task;
+      final int segment;
+
+      Fork(int slot, ExecuteVM child, ForkJoinTask<?> task, int segment) {
+        this.slot = slot;
+        this.child = child;
+        this.task = task;
+        this.segment = segment;
+      }
+    }
 
     /**
      * Il code verrà passato al costruttore, dall'assemblatore. code contiene il codice da eseguire.
@@ -39,115 +92,459 @@ public class ExecuteVM {
      * l'utilizzo dello switch
      * */
     public ExecuteVM(int[] code) {
-      this.code = code;
+      this(code, new int[0]);
+    }
+
+    /**
+     * Come sopra, ma il segmento dati prodotto dall'assemblatore (dispatch table ed oggetti costanti)
+     * viene copiato all'inizio dello heap con un'unica copia; hp punta alla prima parola libera.
+     * */
+    public ExecuteVM(int[] code, int[] data) {
+      this(code, data, MEMSIZE);
+    }
+
+    /**
+     * memSize è la dimensione della memoria (heap più stack), ad esempio quella calcolata da
+     * ResourceBounds.memorySize() invece di MEMSIZE.
+     * */
+    public ExecuteVM(int[] code, int[] data, int memSize) {
+      this(new Program(code, data, false, memSize));
+    }
+
+    /**
+     * Esegue direttamente la codifica compatta: ip è un offset in byte dentro compactCode.
+     * */
+    public ExecuteVM(CompactCode program) {
+      this(new Program(program, false, MEMSIZE, ResourceBounds.UNBOUNDED));
+    }
+
+    public ExecuteVM(Program program) {
+      this(program, program.memSize, System.out);
+    }
+
+    /**
+     * Una esecuzione di program con memSize parole di memoria, che stampa su out.
+     * */
+    public ExecuteVM(Program program, int memSize, PrintStream out) {
+      this(program, memSize, out, null);
+    }
+
+    /**
+     * Come sopra, ma i fork vengono eseguiti in parallelo su pool. La memoria viene divisa in segmenti di
+     * stack e blocchi di heap, quindi deve essere più grande di quella di una esecuzione sequenziale.
+     * Ogni segmento ha lo stack di un'intera esecuzione (Program.stackBound, almeno STACKSIZE parole) oppure,
+     * se il programma ricorre, 1/SEGMENTS della memoria: uno stack che supera il proprio segmento è un
+     * errore (Stack overflow), come uno stack che invade lo heap in una esecuzione sequenziale.
+     * */
+    public ExecuteVM(Program program, int memSize, PrintStream out, ForkJoinPool pool) {
+      if (memSize < program.data.length)
+        throw new IllegalArgumentException("Memory size " + memSize + " too small for a data segment of " + program.data.length + " words");
+      this.program = program;
+      this.code = program.code;
+      this.compactCode = program.compactCode;
+      this.boundary = program.boundary;
+      this.callTarget = program.callTarget;
+      this.out = out;
+      this.pool = pool;
+      memory = new int[memSize];
+      System.arraycopy(program.data, 0, memory, 0, program.data.length);
+      hp = program.data.length;
+      if (pool == null) {
+        shared = null;
+        sp = memSize;
+      } else {
+        int segment = program.stackBound != ResourceBounds.UNBOUNDED ? program.stackBound : memSize / SEGMENTS;
+        shared = new ParallelMemory(memSize, hp, Math.max(segment, STACKSIZE));
+        sp = shared.allocStack();
+        if (sp < 0) throw new IllegalArgumentException("Memory size " + memSize + " too small for a parallel run");
+        stackLimit = sp - shared.stackSize;
+        heapEnd = hp;
+      }
+      fp = sp;
+    }
+
+    // esecuzione che riprende dallo stato di una corsia uscita dal lockstep di BatchVM
+    ExecuteVM(Program program, int[] memory, int ip, int sp, int fp, int hp, int ra, int tm, PrintStream out) {
+      this.program = program;
+      this.code = program.code;
+      this.compactCode = program.compactCode;
+      this.boundary = program.boundary;
+      this.callTarget = program.callTarget;
+      this.memory = memory;
+      this.out = out;
+      this.pool = null;
+      this.shared = null;
+      this.ip = ip;
+      this.sp = sp;
+      this.fp = fp;
+      this.hp = hp;
+      this.ra = ra;
+      this.tm = tm;
+    }
+
+    // esecuzione figlia creata da fork: condivide la memoria e parte dal frame del padre
+    private ExecuteVM(ExecuteVM parent, int ip, int sp, int stackLimit) {
+      this.program = parent.program;
+      this.code = parent.code;
+      this.compactCode = parent.compactCode;
+      this.boundary = parent.boundary;
+      this.callTarget = parent.callTarget;
+      this.memory = parent.memory;
+      this.out = parent.out;
+      this.pool = parent.pool;
+      this.shared = parent.shared;
+      this.ip = ip;
+      this.sp = sp;
+      this.fp = parent.fp;
+      this.stackLimit = stackLimit;
+      this.limited = parent.limited;
+    }
+
+    // salta i controlli dinamici dimostrati da Verifier solo per il codice verificato
+    public void run() {
+      run(UNLIMITED);
+    }
+
+    /**
+     * Esegue al più fuel istruzioni. Ritorna true se l'esecuzione è terminata, false se ha esaurito il
+     * carburante: i registri e la memoria restano nell'oggetto, quindi una chiamata successiva riprende
+     * dall'istruzione in ip. Permette di alternare molte esecuzioni sugli stessi thread (vedi Scheduler).
+     * */
+    public boolean run(long fuel) {
+      limited = fuel != UNLIMITED;
+      return execute(fuel, !program.verified);
+    }
+
+    public boolean isHalted() {
+      return halted;
+    }
+
+    // true se l'istruzione è seguita da un argomento (intero o indirizzo)
+    public static boolean hasOperand(int bytecode) {
+      switch ( bytecode ) {
+        case SVMParser.PUSH:
+        case SVMParser.BRANCH:
+        case SVMParser.BRANCHEQ:
+        case SVMParser.BRANCHLESSEQ:
+        case SVMParser.ALLOC:
+        case SVMParser.GETFIELD:
+        case SVMParser.INVOKEVIRTUAL:
+        case SVMParser.FORK:
+        case SVMParser.JOIN:
+          return true;
+        default:
+          return false;
+      }
     }
     
+    // parole tolte dallo stack dall'istruzione (con argomento operand)
+    public static int pops(int bytecode, int operand) {
+      switch ( bytecode ) {
+        case SVMParser.POP: case SVMParser.LOADW: case SVMParser.JS: case SVMParser.STORERA:
+        case SVMParser.STORETM: case SVMParser.STOREFP: case SVMParser.STOREHP: case SVMParser.GETFIELD:
+          return 1;
+        case SVMParser.ADD: case SVMParser.SUB: case SVMParser.MULT: case SVMParser.DIV:
+        case SVMParser.STOREW: case SVMParser.BRANCHEQ: case SVMParser.BRANCHLESSEQ:
+          return 2;
+        case SVMParser.ALLOC: // un argomento non valido toglie più di quanto possa contenere lo stack
+          return operand >= 0 && operand < Integer.MAX_VALUE ? operand + 1 : Integer.MAX_VALUE;
+        default:
+          return 0;
+      }
+    }
+
+    /**
+     * Ciclo fetch-execute con tutti i controlli dinamici: opcode validi, salti all'inizio di un'istruzione,
+     * stack che non esce dalla memoria e non invade lo heap, accessi in memoria nei limiti,
+     * divisione per zero. In caso di errore stampa il messaggio e ferma l'esecuzione.
+     *
+     * Per il codice accettato da Verifier (run()) si saltano solo i controlli che Verifier dimostra: il
+     * controllo di ogni fetch (opcode valido all'inizio di un'istruzione: i salti b, beq, bleq e fork vanno
+     * all'inizio di un'istruzione e l'esecuzione non esce dal codice) e quelli sugli argomenti. Restano i
+     * controlli su ciò che dipende dai valori calcolati: accessi in memoria, stack, divisore e
+     * destinazioni di js ed invokevirtual, lette dallo stack o dalla memoria.
+     * */
     public void cpu() {
-      while ( true ) {
-        int bytecode = code[ip++]; // fetch
-        int v1,v2;
-        int address;
-        switch ( bytecode ) {
-          case SVMParser.PUSH:
-            /* devo mettere nello stack ciò che viene dopo */
-            push( code[ip++] );
-            break;
-          case SVMParser.POP:
-            pop();
-            break;
-          case SVMParser.ADD :
-            v1=pop();
-            v2=pop();
-            push(v2 + v1);
-            break;
-          case SVMParser.MULT :
-            v1=pop();
-            v2=pop();
-            push(v2 * v1);
-            break;
-          case SVMParser.DIV :
-            v1=pop();
-            v2=pop();
-            push(v2 / v1);
-            break;
-          case SVMParser.SUB :
-            v1=pop();
-            v2=pop();
-            push(v2 - v1);
-            break;
-          case SVMParser.STOREW :       //legge due cose dallo stack,
-            address = pop();            //prima l'indirizzo in cui mettere il valore,
-            memory[address] = pop();    //poi la seconda è il valore da mettere in quell'indirizzo
-            break;
-          case SVMParser.LOADW : //prende dallo stack con una pop l'indirizzo e accede alla memoria, a quell'indirizzo.
-            push(memory[pop()]); // Da lì carica il valore nello stack.
-            break;
-          case SVMParser.BRANCH : // fa un salto incondizionato, aggiorno l'instruction pointer
-            address = code[ip];
-            ip = address;
-            break;
-          case SVMParser.BRANCHEQ :
-            address = code[ip++];  //visto che il salto è condizionato, faccio post-incremento
-            v1=pop();
-            v2=pop();
-            if (v2 == v1) ip = address;
-            break;
-          case SVMParser.BRANCHLESSEQ :
-            address = code[ip++];
-            v1=pop();
-            v2=pop();
-            if (v2 <= v1) ip = address;
-            break;
+      cpu(UNLIMITED);
+    }
+
+    // come cpu(), ma esegue al più fuel istruzioni (vedi run(long))
+    public boolean cpu(long fuel) {
+      limited = fuel != UNLIMITED;
+      return execute(fuel, true);
+    }
+
+    /**
+     * L'unico ciclo fetch-execute, per entrambe le codifiche: fetch(), operand() e target() leggono
+     * opcode, argomenti e destinazioni dei salti dalla codifica a parole o da quella compatta (opcode
+     * di un byte, argomenti varint e salti relativi, vedi CompactCode). Con checked vengono fatti anche i
+     * controlli dimostrati da Verifier.
+     * */
+    private boolean execute(long fuel, boolean checked) {
+      if (halted) return true;
+      try {
+        if (inline != null && (fuel = resumeInline(fuel, checked)) == 0) return false;
+        while ( fuel-- > 0 ) {
+          if (checked) checkInstruction(ip);
+          int bytecode = fetch();
+          int v1,v2;
+          int address;
+          switch ( bytecode ) {
+            case SVMParser.PUSH:
+              /* devo mettere nello stack ciò che viene dopo */
+              push( operand() );
+              break;
+            case SVMParser.POP:
+              pop();
+              break;
+            case SVMParser.ADD :
+              v1=pop();
+              v2=pop();
+              push(v2 + v1);
+              break;
+            case SVMParser.MULT :
+              v1=pop();
+              v2=pop();
+              push(v2 * v1);
+              break;
+            case SVMParser.DIV :
+              v1=pop();
+              v2=pop();
+              if (v1 == 0) throw new VMError("Division by zero");
+              push(v2 / v1);
+              break;
+            case SVMParser.SUB :
+              v1=pop();
+              v2=pop();
+              push(v2 - v1);
+              break;
+            case SVMParser.STOREW :       //legge due cose dallo stack,
+              address = pop();            //prima l'indirizzo in cui mettere il valore,
+              v1 = pop();                 //poi la seconda è il valore da mettere in quell'indirizzo
+              memory[checkAddress(address)] = v1;
+              break;
+            case SVMParser.LOADW : //prende dallo stack con una pop l'indirizzo e accede alla memoria, a quell'indirizzo.
+              push(memory[checkAddress(pop())]); // Da lì carica il valore nello stack.
+              break;
+            case SVMParser.BRANCH : // fa un salto incondizionato, aggiorno l'instruction pointer
+              address = operand();
+              ip = target(address);
+              break;
+            case SVMParser.BRANCHEQ :
+              address = target(operand());
+              v1=pop();
+              v2=pop();
+              if (v2 == v1) ip = address;
+              break;
+            case SVMParser.BRANCHLESSEQ :
+              address = target(operand());
+              v1=pop();
+              v2=pop();
+              if (v2 <= v1) ip = address;
+              break;
             //Differenza JS e BRANCH -> il js è un jump di subroutine, significa che implicitamente
             // voglio tornare indietro prima o poi prendo l'indirizzo dallo stack
             case SVMParser.JS :
-            address = pop();
-            ra = ip;    //memorizzo l'indirizzo di ritorno in ra
-            ip = address;   //torno indietro
-            break;
-         case SVMParser.STORERA : //
-            ra=pop();
-            break;
-         case SVMParser.LOADRA : //
-            push(ra);
-            break;
-         case SVMParser.STORETM : //prendo il valore che poppo dallo stack e lo metto sulla tm
-            tm=pop();
-            break;
-         case SVMParser.LOADTM : //carico il registro TM sullo stack
-            push(tm);
-            break;
-         case SVMParser.LOADFP : //
-            push(fp);
-            break;
-         case SVMParser.STOREFP : //
-            fp=pop();
-            break;
-         //E' comodo avere copyFp, che prende la cima attuale dello stack e lo copia dentro fp.
-         case SVMParser.COPYFP : //FP punta a frame, ovvero pezzi dello stack.
-            fp=sp;
-            break;
-         case SVMParser.STOREHP : //
-            hp=pop();
-            break;
-         case SVMParser.LOADHP : //
-            push(hp);
-            break;
-         case SVMParser.PRINT : // stampa il valore che c'è nella cima nello stack
-             //Devo verificare che lo stack non sia vuoto. se sp < MEMSIZE, non è vuoto
-            System.out.println((sp<MEMSIZE)?memory[sp]:"Empty stack!");
-            break;
-         case SVMParser.HALT :
-            return;
+              address = pop();
+              checkCallTarget(address);
+              ra = ip;    //memorizzo l'indirizzo di ritorno in ra
+              ip = address;
+              break;
+            case SVMParser.STORERA :
+              ra=pop();
+              break;
+            case SVMParser.LOADRA :
+              push(ra);
+              break;
+            case SVMParser.STORETM : //prendo il valore che poppo dallo stack e lo metto sulla tm
+              tm=pop();
+              break;
+            case SVMParser.LOADTM : //carico il registro TM sullo stack
+              push(tm);
+              break;
+            case SVMParser.LOADFP :
+              push(fp);
+              break;
+            case SVMParser.STOREFP :
+              fp=pop();
+              break;
+            //E' comodo avere copyFp, che prende la cima attuale dello stack e lo copia dentro fp.
+            case SVMParser.COPYFP : //FP punta a frame, ovvero pezzi dello stack.
+              fp=sp;
+              break;
+            case SVMParser.STOREHP :
+              hp=pop();
+              if (hp < 0 || hp > sp) throw new VMError("Invalid heap pointer " + hp);
+              break;
+            case SVMParser.LOADHP :
+              push(hp);
+              break;
+            case SVMParser.PRINT : // stampa il valore che c'è nella cima nello stack
+              out.println((sp<memory.length)?memory[sp]:"Empty stack!");
+              break;
+            case SVMParser.HALT :
+              halted = true;
+              return true;
+            // Alloca un oggetto: sullo stack ci sono gli n campi e, in cima, il dispatch pointer.
+            // I campi vengono scritti a partire da hp, il dispatch pointer subito dopo; l'object pointer
+            // punta al dispatch pointer e hp viene aggiornato una sola volta.
+            case SVMParser.ALLOC :
+              v1 = operand();           // numero di campi
+              if (checked && v1 < 0 || v1 >= heapLimit() - hp && !newChunk(v1 + 1)) // lo heap non deve sovrapporsi allo stack
+                throw new VMError("Out of memory");
+              address = pop();          // dispatch pointer
+              for (int j = 0; j < v1; j++) memory[hp + j] = pop();
+              memory[hp + v1] = address;
+              push(hp + v1);            // object pointer
+              hp += v1 + 1;
+              break;
+            case SVMParser.GETFIELD : // prende l'object pointer dallo stack e carica il campo all'offset indicato
+              v1 = operand();
+              push(memory[checkAddress(pop() + v1)]);
+              break;
+            // Come JS, ma l'indirizzo del metodo viene letto dalla dispatch table dell'oggetto in cima
+            // allo stack, che resta sullo stack come access link del nuovo frame.
+            case SVMParser.INVOKEVIRTUAL :
+              v1 = operand();
+              if (sp >= memory.length) throw new VMError("Stack underflow");
+              // object pointer -> dispatch pointer -> metodo
+              address = memory[checkAddress(checkAddress(memory[checkAddress(memory[sp])]) + v1)];
+              checkCallTarget(address);
+              ra = ip;
+              ip = address;
+              break;
+            // Valuta su un'esecuzione figlia il codice alla label, fino ad halt. Sullo stack resta un
+            // segnaposto, in cui join scriverà il risultato.
+            case SVMParser.FORK :
+              address = operand();
+              if (checked) checkInstruction(address);
+              push(0);
+              fork(address, checked);
+              if (inline != null && (fuel = resumeInline(fuel, checked)) == 0) return false;
+              break;
+            case SVMParser.JOIN :
+              v1 = operand();
+              if (v1 < 0 || v1 > forks.size()) throw new VMError("Join without fork");
+              if (!join(v1)) {
+                halted = failed = true;
+                return true;
+              }
+              break;
+            default:
+              throw new VMError("Invalid opcode " + bytecode);
+          }
+        }
+      } catch (VMError e) {
+        out.println("Error: " + e.getMessage());
+        halted = failed = true;
+      } finally {
+        remaining = Math.max(fuel, 0);
+      }
+      return halted;
+    }
+
+    /**
+     * fork: il segnaposto per il risultato è in cima allo stack. Se c'è un pool e non ci sono già troppi
+     * task in attesa, la figlia riceve un segmento di stack ed un task; altrimenti viene eseguita subito,
+     * sotto il segnaposto, usando lo stesso blocco di heap del padre.
+     * */
+    private void fork(int address, boolean checked) {
+      int segment = pool != null && !limited && ForkJoinTask.getSurplusQueuedTaskCount() < SURPLUS
+          ? shared.allocStack() : -1;
+      if (segment < 0) { // eseguita da resumeInline
+        inline = new ExecuteVM(this, address, sp, stackLimit);
+        inline.hp = hp;
+        inline.heapEnd = heapEnd;
+      } else {
+        ExecuteVM child = new ExecuteVM(this, address, segment, segment - shared.stackSize);
+        ForkJoinTask<?> task = ForkJoinTask.adapt(() -> child.execute(UNLIMITED, checked));
+        if (ForkJoinTask.getPool() == pool) task.fork(); else pool.execute(task);
+        forks.push(new Fork(sp, child, task, segment));
+      }
+    }
+
+    /**
+     * Esegue la figlia eseguita subito con al più fuel istruzioni e ritorna il carburante rimasto; se
+     * termina, il padre riprende il suo blocco di heap ed il risultato va nel segnaposto. Se il carburante
+     * finisce prima, la figlia resta in inline e ritorna 0.
+     * */
+    private long resumeInline(long fuel, boolean checked) {
+      ExecuteVM child = inline;
+      if (!child.execute(fuel, checked)) return 0;
+      inline = null;
+      hp = child.hp;
+      heapEnd = child.heapEnd;
+      if (!child.failed) memory[sp] = memory[child.sp]; // il suo stack verrà sovrascritto dal padre
+      forks.push(new Fork(sp, child, null, -1));
+      return child.remaining;
+    }
+
+    // join: attende gli ultimi n fork e scrive i loro risultati nei segnaposto, false se uno è fallito
+    private boolean join(int n) {
+      boolean ok = true;
+      for (int k = 0; k < n; k++) {
+        Fork f = forks.pop();
+        if (f.task == null) { // eseguita subito, il risultato è già nel segnaposto
+          ok &= !f.child.failed;
+          continue;
         }
+        f.task.join();
+        if (f.child.failed) ok = false;
+        else memory[f.slot] = memory[f.child.sp];
+        shared.freeStack(f.segment);
       }
-    } 
+      return ok;
+    }
+
+    // lo heap può crescere fino allo stack o, nelle esecuzioni parallele, fino alla fine del blocco in uso
+    private int heapLimit() {
+      return shared == null ? sp : heapEnd;
+    }
+
+    // nuovo blocco di heap per un'esecuzione parallela, false se la memoria è esaurita
+    private boolean newChunk(int words) {
+      if (shared == null || words <= 0) return false; // words <= 0: v1 + 1 è andato in overflow
+      int size = Math.max(words, CHUNK);
+      int start = shared.allocHeap(size);
+      if (start < 0) return false;
+      hp = start;
+      heapEnd = start + size;
+      return true;
+    }
+
+    // opcode dell'istruzione in ip, avanzando ip
+    private int fetch() {
+      return compactCode != null ? compactCode[ip++] : code[ip++];
+    }
+
+    // argomento dell'istruzione, avanzando ip
+    private int operand() {
+      return compactCode != null ? readOperand() : code[ip++];
+    }
+
+    // destinazione di un salto con argomento address: nella codifica compatta è relativo all'istruzione successiva
+    private int target(int address) {
+      return compactCode != null ? ip + address : address;
+    }
+
+    // decodifica il varint zigzag che segue l'opcode, avanzando ip
+    private int readOperand() {
+      int v = 0, shift = 0, b;
+      do {
+        b = compactCode[ip++];
+        v |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return (v >>> 1) ^ -(v & 1);
+    }
 
     /**
      * Gli faccio tornare l'elemento di indice sp, poi con il post-incremento, lo faccio
      * puntare al prossimo valore in cima allo stack.
+     * Lo stack non può svuotarsi oltre la fine della memoria.
      * */
     private int pop() {
+      if (sp >= memory.length) throw new VMError("Stack underflow");
       return memory[sp++];
     }
 
@@ -156,9 +553,34 @@ public class ExecuteVM {
      *
      * 1. Decremento lo stack pointer
      * 2. Aggiungo il valore
+     *
+     * Lo stack non può crescere dentro lo heap (o sotto il suo segmento, nelle esecuzioni parallele).
      * */
     private void push(int v) {
+      if (sp <= (shared == null ? hp : stackLimit)) throw new VMError("Stack overflow");
       memory[--sp] = v;
     }
-    
-}
\ No newline at end of file
+
+    private int checkAddress(int address) {
+      if (address < 0 || address >= memory.length) throw new VMError("Invalid memory address " + address);
+      return address;
+    }
+
+    // in address deve iniziare un'istruzione del codice
+    private void checkInstruction(int address) {
+      if (address < 0 || address >= boundary.length || !boundary[address])
+        throw new VMError("Invalid instruction address " + address);
+    }
+
+    // js ed invokevirtual: in address deve iniziare una funzione o l'istruzione dopo una chiamata (ritorno)
+    private void checkCallTarget(int address) {
+      if (address < 0 || address >= callTarget.length || !callTarget[address])
+        throw new VMError("Invalid call target " + address);
+    }
+
+    // errore rilevato da un controllo dinamico
+    private static class VMError extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+      VMError(String message) { super(message); }
+    }
+}
@@ -0,0 +1,46 @@
+package svm;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Memoria condivisa dalle esecuzioni parallele (vedi fork in ExecuteVM).
+ *
+ * Ogni esecuzione ha un proprio segmento di stack, di stackSize parole, ed alloca lo heap
+ * a blocchi: i segmenti vengono presi dalla fine della memoria verso il basso, i blocchi di heap dopo il
+ * segmento dati verso l'alto. I segmenti rilasciati da join vengono riusati, i blocchi di heap no
+ * (come nella VM sequenziale, lo heap non viene mai liberato).
+ * */
+
+final class ParallelMemory {
+
+    final int stackSize;     // parole di un segmento di stack
+    private final Deque<Integer> freeStacks = new ArrayDeque<>();
+    private int heapTop;     // prima parola non ancora assegnata ad un blocco di heap
+    private int stackBottom; // fondo dell'ultimo segmento di stack assegnato
+
+    ParallelMemory(int memSize, int dataSize, int stackSize) {
+        this.stackSize = stackSize;
+        this.heapTop = dataSize;
+        this.stackBottom = memSize;
+    }
+
+    // cima di un segmento di stack libero, -1 se la memoria è esaurita
+    synchronized int allocStack() {
+        if (!freeStacks.isEmpty()) return freeStacks.pop();
+        if (stackBottom - stackSize < heapTop) return -1;
+        stackBottom -= stackSize;
+        return stackBottom + stackSize;
+    }
+
+    synchronized void freeStack(int top) {
+        freeStacks.push(top);
+    }
+
+    // inizio di un blocco di words parole di heap, -1 se la memoria è esaurita
+    synchronized int allocHeap(int words) {
+        if (words > stackBottom - heapTop) return -1;
+        heapTop += words;
+        return heapTop - words;
+    }
+}
@@ -0,0 +1,98 @@
+package svm;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Programma caricato nella VM: codice, segmento dati e ciò che si calcola una sola volta al caricamento
+ * (le posizioni in cui inizia un'istruzione, le destinazioni ammesse delle chiamate, l'esito della
+ * verifica, la memoria necessaria).
+ *
+ * È immutabile: gli array vengono copiati dal costruttore e non vengono mai modificati, quindi lo stesso
+ * Program può essere eseguito da più ExecuteVM, anche contemporaneamente su thread diversi.
+ * Ogni ExecuteVM contiene solo lo stato di una esecuzione (memoria e registri).
+ * */
+
+public final class Program {
+
+    final int[] code;          // null se il programma usa la codifica compatta
+    final byte[] compactCode;  // null se il programma usa la codifica a parole
+    final int[] data;
+    final boolean[] boundary;  // per cpu(): true se in quella posizione (parola o byte) inizia un'istruzione
+    final boolean[] callTarget; // destinazioni ammesse di js ed invokevirtual: ingressi di funzione e punti di ritorno
+    public final boolean verified; // accettato da Verifier, si può eseguire senza controlli dinamici
+    public final int memSize;      // memoria di una esecuzione (heap più stack)
+    public final int stackBound;   // parole di stack di una esecuzione, ResourceBounds.UNBOUNDED se non è noto
+
+    /**
+     * verified va passato a true solo se Verifier ha accettato il codice; memSize è ad esempio
+     * ResourceBounds.memorySize() oppure ExecuteVM.MEMSIZE.
+     * Gli ingressi di funzione non sono noti: js ed invokevirtual possono saltare ad ogni istruzione.
+     * */
+    public Program(int[] code, int[] data, boolean verified, int memSize) {
+        this(code, data, null, verified, memSize, ResourceBounds.UNBOUNDED);
+    }
+
+    /**
+     * entries sono gli ingressi di funzione (vedi Verifier.functionEntries), null se non sono noti;
+     * stackBound è ResourceBounds.stackBound del codice verificato (dimensiona i segmenti di stack delle
+     * esecuzioni parallele).
+     * */
+    public Program(int[] code, int[] data, int[] entries, boolean verified, int memSize, int stackBound) {
+        this.code = code.clone();
+        this.compactCode = null;
+        this.data = data.clone();
+        this.boundary = new boolean[code.length];
+        for (int j = 0; j < code.length; j += ExecuteVM.hasOperand(code[j]) ? 2 : 1) boundary[j] = true;
+        this.callTarget = callTargets(boundary, entries, at -> code[at]);
+        this.verified = verified;
+        this.memSize = memSize;
+        this.stackBound = stackBound;
+    }
+
+    // come sopra, ma con la codifica compatta: verified va passato a true solo se Verifier ha accettato il codice da cui è prodotta
+    public Program(CompactCode compact, boolean verified, int memSize, int stackBound) {
+        this.code = null;
+        this.compactCode = compact.code.clone();
+        this.data = compact.data.clone();
+        this.boundary = new boolean[compactCode.length];
+        int j = 0;
+        while (j < compactCode.length) { // l'argomento (varint) di un'istruzione deve stare nel codice
+            int next = j + 1;
+            if (ExecuteVM.hasOperand(compactCode[j])) {
+                while (next < compactCode.length && (compactCode[next] & 0x80) != 0) next++;
+                next++;
+            }
+            if (next > compactCode.length) break;
+            boundary[j] = true;
+            j = next;
+        }
+        this.callTarget = callTargets(boundary, compact.entries, at -> compactCode[at]);
+        this.verified = verified;
+        this.memSize = memSize;
+        this.stackBound = stackBound;
+    }
+
+    /**
+     * Un js salta ad un ingresso di funzione (chiamata) o all'istruzione che segue un js o un
+     * invokevirtual (ritorno, l'indirizzo salvato in ra); invokevirtual solo ad un ingresso di funzione,
+     * ma la dispatch table è in memoria e la si controlla come js. Senza entries ogni istruzione è ammessa.
+     * */
+    private static boolean[] callTargets(boolean[] boundary, int[] entries, IntUnaryOperator opcode) {
+        if (entries == null) return boundary;
+        boolean[] target = new boolean[boundary.length];
+        for (int entry : entries)
+            if (entry >= 0 && entry < boundary.length && boundary[entry]) target[entry] = true;
+        int previous = -1; // istruzione precedente
+        for (int j = 0; j < boundary.length; j++)
+            if (boundary[j]) {
+                if (previous >= 0 && (opcode.applyAsInt(previous) == SVMParser.JS || opcode.applyAsInt(previous) == SVMParser.INVOKEVIRTUAL))
+                    target[j] = true;
+                previous = j;
+            }
+        return target;
+    }
+
+    public boolean isCompact() {
+        return compactCode != null;
+    }
+}
@@ -0,0 +1,137 @@
+package svm;
+
+import java.util.*;
+
+/**
+ * Limiti statici di memoria di un programma, per dimensionare la memoria della VM.
+ *
+ * Per ogni funzione Verifier calcola (FunctionUsage), a partire dal codice generato:
+ * - maxDepth: massima profondità dello stack sopra l'ingresso (return address, dichiarazioni locali
+ *   e temporanei);
+ * - frameBelow: parole sotto l'ingresso che la funzione rimuove (control link, parametri, access link);
+ * - maxCallDepth: massima profondità a cui la funzione chiama un'altra funzione;
+ * - allocWords: parole di heap allocate da una sua invocazione (le alloc del suo codice).
+ *
+ * Il grafo delle chiamate lo fornisce il compilatore, perché nel codice le chiamate passano per indirizzi
+ * letti dalla memoria. FOOL non ha cicli, quindi ogni istruzione viene eseguita al più una volta per
+ * invocazione della funzione che la contiene: se il grafo delle chiamate raggiungibile dal programma
+ * principale è aciclico,
+ * - stack(f) = max(maxDepth(f), maxCallDepth(f) + max stack(g) sui chiamati g);
+ * - il numero di invocazioni di g è la somma, su ogni punto di chiamata che può chiamare g, delle
+ *   invocazioni del chiamante, da cui lo heap usato dalle alloc.
+ * In presenza di ricorsione (o di salti all'indietro nel codice) i limiti non esistono.
+ * */
+
+public class ResourceBounds {
+
+    public static class FunctionUsage {
+        public final int entry;
+        public int maxDepth;
+        public int minDepth;
+        public int frameBelow;
+        public int maxCallDepth;
+        public long allocWords;
+        public boolean loops;
+
+        FunctionUsage(int entry) {
+            this.entry = entry;
+        }
+    }
+
+    public static final int UNBOUNDED = -1;
+
+    public final Map<Integer, FunctionUsage> usage;
+    public final int dataSize;
+    public final int stackBound;  // parole di stack, UNBOUNDED se non esiste un limite
+    public final int heapBound;   // parole di heap, compreso il segmento dati, UNBOUNDED se non esiste un limite
+    private final Map<Integer, Integer> stack = new HashMap<>();
+
+    /**
+     * callSites associa ad ogni ingresso di funzione (0 è il programma principale) la lista dei possibili
+     * chiamati di ogni suo punto di chiamata: un ingresso per ogni chiamato possibile di ogni chiamata.
+     * */
+    public ResourceBounds(Map<Integer, FunctionUsage> usage, Map<Integer, List<Integer>> callSites, int dataSize) {
+        this.usage = usage;
+        this.dataSize = dataSize;
+        List<Integer> order = new ArrayList<>(); // chiamati prima dei chiamanti
+        boolean acyclic = topologicalOrder(0, callSites, new HashSet<>(), new HashSet<>(), order);
+        if (!acyclic) {
+            stackBound = UNBOUNDED;
+            heapBound = UNBOUNDED;
+            return;
+        }
+        for (int f : order) {
+            FunctionUsage u = usage.get(f);
+            int callees = 0;
+            for (int g : callSites.getOrDefault(f, List.of())) callees = Math.max(callees, stack.get(g));
+            stack.put(f, callees > 0 ? Math.max(u.maxDepth, u.maxCallDepth + callees) : u.maxDepth);
+        }
+        stackBound = stack.get(0);
+
+        Map<Integer, Long> invocations = new HashMap<>();
+        invocations.put(0, 1L);
+        long heap = dataSize;
+        boolean loops = false;
+        for (int i = order.size() - 1; i >= 0; i--) { // chiamanti prima dei chiamati
+            int f = order.get(i);
+            long n = invocations.getOrDefault(f, 0L);
+            for (int g : callSites.getOrDefault(f, List.of())) invocations.merge(g, n, ResourceBounds::sum);
+            heap = sum(heap, product(n, usage.get(f).allocWords));
+            loops |= usage.get(f).loops && usage.get(f).allocWords > 0;
+        }
+        heapBound = loops || heap > Integer.MAX_VALUE ? UNBOUNDED : (int) heap;
+    }
+
+    // somma e prodotto di valori non negativi, saturati a LIMIT: oltre Integer.MAX_VALUE il limite è UNBOUNDED
+    private static final long LIMIT = Integer.MAX_VALUE + 1L;
+
+    private static long sum(long a, long b) {
+        return Math.min(a + b, LIMIT);
+    }
+
+    private static long product(long a, long b) {
+        return a == 0 || b <= LIMIT / a ? Math.min(a * b, LIMIT) : LIMIT;
+    }
+
+    // visita in profondità, ritorna false se trova un ciclo
+    private static boolean topologicalOrder(int f, Map<Integer, List<Integer>> callSites, Set<Integer> visiting,
+            Set<Integer> done, List<Integer> order) {
+        if (done.contains(f)) return true;
+        if (!visiting.add(f)) return false;
+        for (int g : callSites.getOrDefault(f, List.of()))
+            if (!topologicalOrder(g, callSites, visiting, done, order)) return false;
+        visiting.remove(f);
+        done.add(f);
+        order.add(f);
+        return true;
+    }
+
+    public boolean bounded() {
+        return stackBound != UNBOUNDED && heapBound != UNBOUNDED;
+    }
+
+    // memoria sufficiente per l'esecuzione: heap e stack crescono uno verso l'altro
+    public int memorySize() {
+        long size = (long) heapBound + stackBound;
+        return bounded() && size <= Integer.MAX_VALUE ? (int) size : ExecuteVM.MEMSIZE;
+    }
+
+    /**
+     * names associa agli ingressi di funzione il nome da stampare.
+     * */
+    public String report(Map<Integer, String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (FunctionUsage u : usage.values()) {
+            sb.append(names.getOrDefault(u.entry, String.valueOf(u.entry)))
+                    .append(": max stack depth ").append(u.maxDepth)
+                    .append(", frame ").append(u.frameBelow).append("+").append(u.maxDepth).append(" words");
+            if (stack.containsKey(u.entry)) sb.append(", with calls ").append(stack.get(u.entry));
+            if (u.allocWords > 0) sb.append(", allocates ").append(u.allocWords).append(" heap words");
+            sb.append("\n");
+        }
+        sb.append("Stack bound: ").append(stackBound == UNBOUNDED ? "unbounded (recursion)" : stackBound + " words").append("\n");
+        sb.append("Heap bound: ").append(heapBound == UNBOUNDED ? "unbounded" : heapBound + " words")
+                .append(" (data segment ").append(dataSize).append(" words)");
+        return sb.toString();
+    }
+}
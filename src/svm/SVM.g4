@@ -16,15 +16,31 @@ public int lexicalErrors=0;
 }
 
 /**
-Generiamo il codice oggetto dentro l'array d'interi code. Lo creiamo vuoto, usando come size una
-costante, definita nella VM (e modificabile), di dimensione 10.000. In breve riempio l'array
-con le varie istruzioni. Indirizzo 0 = prima istruzione*/
+Generiamo il codice oggetto dentro l'array d'interi code. Lo creiamo vuoto, usando come size iniziale
+una costante, definita nella VM (e modificabile), di dimensione 10.000; emit raddoppia l'array quando è
+pieno, quindi la dimensione del codice non è limitata. In breve riempio l'array con le varie istruzioni.
+Indirizzo 0 = prima istruzione*/
 
 @parser::members { 
 public int[] code = new int[ExecuteVM.CODESIZE];    
 private int i = 0;
 private Map<String,Integer> labelDef = new HashMap<>();
 private Map<Integer,String> labelRef = new HashMap<>();
+
+public int[] data; // segmento dati, copiato all'inizio dello heap prima dell'esecuzione
+private List<Integer> dataWords = new ArrayList<>();
+private Map<Integer,String> dataLabelRef = new HashMap<>();
+
+private void emit(int word) {
+    if (i == code.length) code = Arrays.copyOf(code, 2 * code.length);
+    code[i++] = word;
+}
+
+public int codeSize() { return i; }
+public Integer labelAddress(String label) { return labelDef.get(label); }
+// posizioni di code e data che contengono indirizzi di codice (label risolte)
+public Set<Integer> codeAddressRefs() { return labelRef.keySet(); }
+public Set<Integer> dataAddressRefs() { return dataLabelRef.keySet(); }
 }
 
 /*------------------------------------------------------------------
@@ -42,6 +58,10 @@ riempio tutti con le dichiarazioni.
 
 assembly: instruction* EOF 	{ for (Integer j: labelRef.keySet()) 
 								code[j]=labelDef.get(labelRef.get(j)); 
+							  for (Integer j: dataLabelRef.keySet())
+								dataWords.set(j,labelDef.get(dataLabelRef.get(j)));
+							  data = new int[dataWords.size()];
+							  for (int j = 0; j < data.length; j++) data[j] = dataWords.get(j);
 							} ;
 
 /**
@@ -78,7 +98,7 @@ string è l'etichetta.
 /**
 Gestione jump (branch)
 
-1. Nella push label, lascio un buco quindi, faccio i++ e aggiungo l'indirizzo del buco in labelRef.
+1. Nella push label, lascio un buco (emit(0)) e aggiungo l'indirizzo del buco in labelRef.
 Stesso discorso vale sia per i salti condizionati che incondizionati;
 2.In l=LABEL COL, aggiungo la dichiarazione. E devo farlo puntare alla prossima istruzione, con i, visto che
 l'ho post-incrementato;
@@ -88,36 +108,49 @@ l'ho post-incrementato;
 */
 
 instruction : 
-        PUSH n=INTEGER   {code[i++] = PUSH; 
-			              code[i++] = Integer.parseInt($n.text);}
-	  | PUSH l=LABEL    {code[i++] = PUSH; 
-	    		             labelRef.put(i++,$l.text);} 		     
-	  | POP		    {code[i++] = POP;}	
-	  | ADD		    {code[i++] = ADD;}
-	  | SUB		    {code[i++] = SUB;}
-	  | MULT	    {code[i++] = MULT;}
-	  | DIV		    {code[i++] = DIV;}
-	  | STOREW	  {code[i++] = STOREW;} //
-	  | LOADW           {code[i++] = LOADW;} //
+        PUSH n=INTEGER   {emit(PUSH); 
+			              emit(Integer.parseInt($n.text));}
+	  | PUSH l=LABEL    {emit(PUSH); 
+	    		             labelRef.put(i,$l.text); emit(0);} 		     
+	  | POP		    {emit(POP);}	
+	  | ADD		    {emit(ADD);}
+	  | SUB		    {emit(SUB);}
+	  | MULT	    {emit(MULT);}
+	  | DIV		    {emit(DIV);}
+	  | STOREW	  {emit(STOREW);} //
+	  | LOADW           {emit(LOADW);} //
 	  | l=LABEL COL     {labelDef.put($l.text,i);}
-	  | BRANCH l=LABEL  {code[i++] = BRANCH;
-                       labelRef.put(i++,$l.text);}
-	  | BRANCHEQ l=LABEL {code[i++] = BRANCHEQ;
-                        labelRef.put(i++,$l.text);}
-	  | BRANCHLESSEQ l=LABEL {code[i++] = BRANCHLESSEQ;
-                          labelRef.put(i++,$l.text);}
-	  | JS              {code[i++] = JS;}		     //
-	  | LOADRA          {code[i++] = LOADRA;}    //
-	  | STORERA         {code[i++] = STORERA;}   //
-	  | LOADTM          {code[i++] = LOADTM;}   
-	  | STORETM         {code[i++] = STORETM;}   
-	  | LOADFP          {code[i++] = LOADFP;}   //
-	  | STOREFP         {code[i++] = STOREFP;}   //
-	  | COPYFP          {code[i++] = COPYFP;}   //
-	  | LOADHP          {code[i++] = LOADHP;}   //
-	  | STOREHP         {code[i++] = STOREHP;}   //
-	  | PRINT           {code[i++] = PRINT;}
-	  | HALT            {code[i++] = HALT;}
+	  | BRANCH l=LABEL  {emit(BRANCH);
+                       labelRef.put(i,$l.text); emit(0);}
+	  | BRANCHEQ l=LABEL {emit(BRANCHEQ);
+                        labelRef.put(i,$l.text); emit(0);}
+	  | BRANCHLESSEQ l=LABEL {emit(BRANCHLESSEQ);
+                          labelRef.put(i,$l.text); emit(0);}
+	  | JS              {emit(JS);}		     //
+	  | LOADRA          {emit(LOADRA);}    //
+	  | STORERA         {emit(STORERA);}   //
+	  | LOADTM          {emit(LOADTM);}   
+	  | STORETM         {emit(STORETM);}   
+	  | LOADFP          {emit(LOADFP);}   //
+	  | STOREFP         {emit(STOREFP);}   //
+	  | COPYFP          {emit(COPYFP);}   //
+	  | LOADHP          {emit(LOADHP);}   //
+	  | STOREHP         {emit(STOREHP);}   //
+	  | PRINT           {emit(PRINT);}
+	  | HALT            {emit(HALT);}
+	  | ALLOC n=INTEGER {emit(ALLOC);
+	                     emit(Integer.parseInt($n.text));}
+	  | GETFIELD n=INTEGER {emit(GETFIELD);
+	                        emit(Integer.parseInt($n.text));}
+	  | INVOKEVIRTUAL n=INTEGER {emit(INVOKEVIRTUAL);
+	                             emit(Integer.parseInt($n.text));}
+	  | FORK l=LABEL    {emit(FORK);
+	                     labelRef.put(i,$l.text); emit(0);}
+	  | JOIN n=INTEGER  {emit(JOIN);
+	                     emit(Integer.parseInt($n.text));}
+	  | DATA n=INTEGER  {dataWords.add(Integer.parseInt($n.text));}
+	  | DATA l=LABEL    {dataLabelRef.put(dataWords.size(),$l.text);
+	                     dataWords.add(0);}
 	  ;
 	  
 /*------------------------------------------------------------------
@@ -153,6 +186,27 @@ STOREHP	 : 'shp' ;
 PRINT	 : 'print' ;	
 HALT	 : 'halt' ;	
 
+/**
+Istruzioni per il modello ad oggetti: sostituiscono le sequenze di lhp/sw/shp e lw usate per creare
+oggetti, leggere campi ed invocare metodi tramite dispatch table.
+*/
+ALLOC	 : 'alloc' ;
+GETFIELD : 'getfield' ;
+INVOKEVIRTUAL : 'invokevirtual' ;
+
+/**
+Valutazione parallela: fork mette sullo stack un segnaposto ed esegue il codice alla label su uno stack
+separato (fino ad halt), join n attende gli ultimi n fork e scrive i loro risultati nei segnaposto.
+*/
+FORK	 : 'fork' ;
+JOIN	 : 'join' ;
+
+/**
+Segmento dati: ogni direttiva data aggiunge una parola (intero o indirizzo di una label) all'immagine
+iniziale dello heap, che la VM copia in memoria a partire dall'indirizzo 0 prima di eseguire il codice.
+*/
+DATA	 : 'data' ;
+
  /** : ci serve per separare l1 dall'istruzione a cui punta. Lavoreremo con numeri interi, ci sono anche i
  negativi. ? -> metto il - opzionale.*/
 COL	 : ':' ;
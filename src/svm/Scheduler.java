@@ -0,0 +1,109 @@
+package svm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Alterna molte esecuzioni di programmi su pochi thread.
+ *
+ * Ogni esecuzione viene eseguita a fette di quantum istruzioni (ExecuteVM.run(long)): alla fine di una
+ * fetta, se il programma non è terminato, l'esecuzione torna in fondo alla coda dei thread, dietro a
+ * tutte quelle già in attesa. Così un programma che ricorre a lungo non occupa un thread oltre la sua
+ * fetta e le altre esecuzioni avanzano comunque (round robin).
+ * Un'esecuzione che supera maxFuel istruzioni in totale viene fermata con un errore.
+ * */
+
+public class Scheduler implements AutoCloseable {
+
+    public static final int QUANTUM = 10000;
+
+    private final ExecutorService carriers;
+    private final int quantum;
+    private final long maxFuel;
+    private final Set<CompletableFuture<String>> running = ConcurrentHashMap.newKeySet();
+
+    public Scheduler(int threads, int quantum, long maxFuel) {
+        this.carriers = Executors.newFixedThreadPool(threads); // coda FIFO: le fette vengono servite in ordine
+        this.quantum = quantum;
+        this.maxFuel = maxFuel;
+    }
+
+    public Scheduler(int threads) {
+        this(threads, QUANTUM, ExecuteVM.UNLIMITED);
+    }
+
+    // il risultato è l'output stampato dall'esecuzione (print ed eventuali errori)
+    public CompletableFuture<String> submit(Program program) {
+        return submit(program, program.memSize);
+    }
+
+    public CompletableFuture<String> submit(Program program, int memSize) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        running.add(result);
+        carriers.execute(new Slice(program, memSize, result));
+        return result;
+    }
+
+    // una esecuzione: ogni run() ne esegue una fetta e, se non è terminata, la rimette in coda
+    private class Slice implements Runnable {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final PrintStream out = new PrintStream(output);
+        private final ExecuteVM vm;
+        private final CompletableFuture<String> result;
+        private long fuel = maxFuel;
+
+        Slice(Program program, int memSize, CompletableFuture<String> result) {
+            this.vm = new ExecuteVM(program, memSize, out);
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long slice = Math.min(quantum, fuel);
+                boolean halted = vm.run(slice);
+                fuel -= slice;
+                if (!halted && fuel == 0) {
+                    out.println("Error: Out of fuel");
+                    halted = true;
+                }
+                if (halted) {
+                    out.flush();
+                    result.complete(output.toString());
+                    running.remove(result);
+                } else
+                    carriers.execute(this);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                running.remove(result);
+            }
+        }
+    }
+
+    // attende la fine delle esecuzioni sottomesse, poi ferma i thread
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        for (CompletableFuture<String> result : running)
+            while (true)
+                try {
+                    result.get();
+                    break;
+                } catch (ExecutionException e) {
+                    break; // l'errore è già nel risultato dell'esecuzione
+                } catch (InterruptedException e) {
+                    interrupted = true; // le esecuzioni non sono interrompibili: si attende comunque la loro fine
+                }
+        carriers.shutdown();
+        while (true)
+            try {
+                if (carriers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
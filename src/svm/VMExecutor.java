@@ -0,0 +1,63 @@
+package svm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.*;
+
+/**
+ * Esegue molte invocazioni, anche concorrenti, di programmi già caricati (Program) su un pool limitato
+ * di thread. Ogni invocazione crea solo un nuovo ExecuteVM, con memoria e registri propri: il codice
+ * non viene né riassemblato né copiato.
+ *
+ * La coda delle invocazioni in attesa è limitata: quando è piena l'invocazione viene eseguita dal thread
+ * che la sottomette, che quindi rallenta. La memoria di ogni esecuzione è quella del programma, ma non può
+ * superare maxMemSize.
+ * */
+
+public class VMExecutor implements AutoCloseable {
+
+    private final ExecutorService pool;
+    private final int maxMemSize;
+
+    public VMExecutor(int threads, int queueCapacity, int maxMemSize) {
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.maxMemSize = maxMemSize;
+    }
+
+    public VMExecutor(int threads) {
+        this(threads, 16 * threads, ExecuteVM.MEMSIZE);
+    }
+
+    // il risultato è l'output stampato dall'esecuzione (print ed eventuali errori)
+    public Future<String> submit(Program program) {
+        return submit(program, program.memSize);
+    }
+
+    public Future<String> submit(Program program, int memSize) {
+        if (memSize > maxMemSize)
+            throw new IllegalArgumentException("Memory size " + memSize + " exceeds the limit of " + maxMemSize + " words");
+        return pool.submit(() -> {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(output);
+            new ExecuteVM(program, memSize, out).run();
+            out.flush();
+            return output.toString();
+        });
+    }
+
+    // attende la fine delle esecuzioni sottomesse, poi ferma i thread
+    @Override
+    public void close() {
+        pool.shutdown();
+        boolean interrupted = false;
+        while (true)
+            try {
+                if (pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true; // le esecuzioni non sono interrompibili: si attende comunque la loro fine
+            }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
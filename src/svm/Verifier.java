@@ -0,0 +1,363 @@
+package svm;
+
+import java.util.*;
+
+/**
+ * Verificatore del codice prodotto dall'assemblatore, eseguito al caricamento.
+ *
+ * Controlla che:
+ * - ogni istruzione abbia un opcode valido ed il suo argomento non esca dal codice;
+ * - i salti (b, beq, bleq) atterrino all'inizio di un'istruzione;
+ * - gli indirizzi di codice messi sullo stack (push di label) o nel segmento dati, ovvero i soli
+ *   possibili target di js ed invokevirtual, siano ingressi di funzione validi;
+ * - la profondità dello stack sia coerente;
+ * - alloc n non tolga dallo stack più degli n + 1 valori messi dalla funzione (n è quindi minore della
+ *   profondità, e le parole allocate, sommate in long da ResourceBounds, non vanno in overflow).
+ *
+ * L'ultimo controllo è un'interpretazione astratta: per ogni basic block calcoliamo la profondità
+ * dello stack relativa all'ingresso della funzione che lo contiene, ed alcune informazioni sul contenuto
+ * degli slot (valore di $fp, valore di $ra, altro). Quando più cammini raggiungono lo stesso blocco
+ * la profondità deve coincidere.
+ * js ed invokevirtual seguono il layout dell'activation record generato dal compilatore:
+ * - un js che salta ad un valore caricato con lra è un ritorno da funzione, tutti i ritorni di una
+ *   funzione devono avvenire alla stessa profondità;
+ * - un js che salta ad una costante (push di un numero che non è una label) viene rifiutato, perché
+ *   non è un ingresso di funzione, come le operazioni aritmetiche su un indirizzo di codice (push di
+ *   una label), che lo sposterebbero nel mezzo di una funzione;
+ * - altrimenti è una chiamata: il chiamato rimuove access link, parametri e control link (l'ultimo
+ *   valore di $fp sotto l'access link) e lascia il risultato, da cui la profondità al ritorno.
+ * Il programma principale non può mai scendere sotto lo stack vuoto, una funzione non può scendere
+ * sotto il control link che il chiamante le ha passato.
+ * Il codice eseguito da fork parte, come il programma principale, da uno stack vuoto e deve arrivare ad
+ * halt lasciando sullo stack solo il risultato; per i limiti di memoria conta come una chiamata, perché
+ * può essere eseguito sullo stack di chi fa fork.
+ *
+ * Nelle chiamate l'indirizzo viene letto dalla memoria (dal frame o dalla dispatch table) e dipende
+ * quindi dall'esecuzione, come gli indirizzi di lw, sw e getfield, i divisori e la profondità raggiunta
+ * dalla ricorsione: la verifica non li limita, li controlla ExecuteVM anche per un programma verificato
+ * (le destinazioni di js ed invokevirtual devono essere ingressi di funzione, functionEntries, o punti
+ * di ritorno: vedi Program).
+ * Un programma verificato viene eseguito senza il controllo di ogni fetch (vedi ExecuteVM.cpu()).
+ * */
+
+public class Verifier {
+
+    // contenuto (astratto) di uno slot dello stack; CODE è un indirizzo di codice (push di una label)
+    private static final byte OTHER = 0, FP = 1, RA = 2, CONST = 3, CODE = 4;
+
+    // stato astratto all'inizio di un basic block
+    private static class State {
+        final int function;   // ingresso della funzione a cui appartiene il blocco
+        final int depth;      // profondità dello stack rispetto all'ingresso della funzione
+        final int base;       // kinds[base + d] è il contenuto dello slot a profondità d (anche negativa)
+        final byte[] kinds;   // contenuto degli slot, quelli sotto -base sono sconosciuti
+        final byte tm;        // contenuto del registro tm
+        final int forks;      // fork della funzione in attesa di join
+
+        State(int function, int depth, int base, byte[] kinds, byte tm, int forks) {
+            this.function = function;
+            this.depth = depth;
+            this.base = base;
+            this.kinds = kinds;
+            this.tm = tm;
+            this.forks = forks;
+        }
+
+        byte kind(int d) {
+            return d + base >= 0 ? kinds[d + base] : OTHER;
+        }
+    }
+
+    private final int[] code;
+    private final int codeSize;
+    private final boolean[] boundary;   // true se in quella posizione inizia un'istruzione
+    private final boolean[] leader;     // true se in quella posizione inizia un basic block
+    private final Map<Integer, State> blockStates = new HashMap<>();
+    private final Deque<Integer> worklist = new ArrayDeque<>();
+    private final Map<Integer, Integer> returnDepth = new HashMap<>();
+    private final Map<Integer, ResourceBounds.FunctionUsage> usage = new TreeMap<>();
+    private final Set<Integer> allocs = new HashSet<>(); // alloc già conteggiate in allocWords
+    private final Set<Integer> forked = new HashSet<>(); // ingressi del codice eseguito da fork
+    private Set<Integer> codeRefs;                        // argomenti di push che sono label
+
+    private Verifier(int[] code, int codeSize) {
+        this.code = code;
+        this.codeSize = codeSize;
+        this.boundary = new boolean[codeSize + 1];
+        this.leader = new boolean[codeSize + 1];
+    }
+
+    /**
+     * codeRefs e dataRefs sono le posizioni di code e data che contengono indirizzi di codice
+     * (vedi SVMParser.codeAddressRefs() e SVMParser.dataAddressRefs()).
+     * Ritorna, per ogni ingresso di funzione (0 è il programma principale), l'uso dello stack
+     * e dello heap calcolato durante la verifica, da cui ResourceBounds ricava i limiti del programma.
+     * */
+    public static Map<Integer, ResourceBounds.FunctionUsage> verify(int[] code, int codeSize, Set<Integer> codeRefs,
+            int[] data, Set<Integer> dataRefs) throws VerifyException {
+        Verifier verifier = new Verifier(code, codeSize);
+        verifier.run(codeRefs, data, dataRefs);
+        return verifier.usage;
+    }
+
+    private void run(Set<Integer> codeRefs, int[] data, Set<Integer> dataRefs) throws VerifyException {
+        this.codeRefs = codeRefs;
+        // 1. confini delle istruzioni e validità degli opcode
+        int j = 0;
+        while (j < codeSize) {
+            if (code[j] < SVMParser.PUSH || code[j] > SVMParser.JOIN)
+                throw new VerifyException("Invalid opcode " + code[j], j);
+            boundary[j] = true;
+            j += ExecuteVM.hasOperand(code[j]) ? 2 : 1;
+        }
+        if (j > codeSize)
+            throw new VerifyException("Missing operand", codeSize - 1);
+
+        // 2. target dei salti
+        for (j = 0; j < codeSize; j += ExecuteVM.hasOperand(code[j]) ? 2 : 1)
+            if (isBranch(code[j])) {
+                checkTarget(code[j + 1], j);
+                leader[code[j + 1]] = true;
+            } else if ((code[j] == SVMParser.ALLOC || code[j] == SVMParser.JOIN) && code[j + 1] < 0)
+                throw new VerifyException("Negative operand", j);
+
+        // 3. ingressi di funzione: il programma principale e gli indirizzi di codice usati come valori
+        Set<Integer> entries = new TreeSet<>();
+        for (int entry : functionEntries(code, codeRefs, data, dataRefs)) entries.add(entry);
+        for (int ref : codeRefs)
+            if (code[ref - 1] == SVMParser.FORK) forked.add(code[ref]);
+        entries.addAll(forked);
+        for (int entry : entries) {
+            checkTarget(entry, entry);
+            if (entry == codeSize)
+                throw new VerifyException("Function entry at the end of the code", entry);
+            leader[entry] = true;
+        }
+        enter(0, new State(0, 0, 0, new byte[0], OTHER, 0), 0);
+        for (int entry : entries)
+            if (entry != 0) enter(entry, new State(entry, 0, 0, new byte[0], OTHER, 0), entry);
+
+        // 4. interpretazione astratta della profondità dello stack
+        while (!worklist.isEmpty())
+            interpret(worklist.pop());
+        for (var e : returnDepth.entrySet()) { // una funzione non consuma più di quanto le ha passato il chiamante
+            if (usage.get(e.getKey()).minDepth < e.getValue() - 1)
+                throw new VerifyException("Stack underflow below the caller's frame", e.getKey());
+            usage.get(e.getKey()).frameBelow = -e.getValue() + 1;
+        }
+    }
+
+    /**
+     * Ingressi di funzione, cioè le sole destinazioni di una chiamata (js, invokevirtual): le label messe
+     * sullo stack con push o nel segmento dati. Sono quelli che Program controlla durante l'esecuzione.
+     * */
+    public static int[] functionEntries(int[] code, Set<Integer> codeRefs, int[] data, Set<Integer> dataRefs) {
+        Set<Integer> entries = new TreeSet<>();
+        for (int ref : codeRefs)
+            if (code[ref - 1] == SVMParser.PUSH) entries.add(code[ref]);
+        for (int ref : dataRefs) entries.add(data[ref]);
+        int[] result = new int[entries.size()];
+        int i = 0;
+        for (int entry : entries) result[i++] = entry;
+        return result;
+    }
+
+    private static boolean isBranch(int bytecode) {
+        return bytecode == SVMParser.BRANCH || bytecode == SVMParser.BRANCHEQ || bytecode == SVMParser.BRANCHLESSEQ;
+    }
+
+    private void checkTarget(int target, int at) throws VerifyException {
+        if (target < 0 || target > codeSize || (target < codeSize && !boundary[target]))
+            throw new VerifyException("Jump target " + target + " is not an instruction", at);
+    }
+
+    // registra lo stato all'ingresso del blocco che inizia in ip, confrontandolo con quelli già visti
+    private void enter(int ip, State s, int at) throws VerifyException {
+        if (ip >= codeSize)
+            throw new VerifyException("Execution falls off the end of the code", at);
+        State old = blockStates.get(ip);
+        if (old == null) {
+            blockStates.put(ip, s);
+            worklist.push(ip);
+            return;
+        }
+        if (old.function != s.function)
+            throw new VerifyException("Code shared by functions " + old.function + " and " + s.function, ip);
+        if (old.depth != s.depth)
+            throw new VerifyException("Inconsistent stack depth (" + old.depth + " and " + s.depth + ")", ip);
+        if (old.forks != s.forks)
+            throw new VerifyException("Inconsistent number of pending forks", ip);
+        // slot per slot, il contenuto resta noto solo se coincide su entrambi i cammini; un indirizzo di
+        // codice su uno dei due resta CODE, così l'aritmetica su di esso viene rifiutata su ogni cammino
+        boolean changed = false;
+        int base = Math.min(old.base, s.base);
+        byte[] kinds = new byte[Math.max(base + old.depth, 0)];
+        for (int d = -old.base; d < old.depth; d++) {
+            byte k = d >= -base ? merge(old.kind(d), s.kind(d)) : OTHER;
+            if (k != old.kind(d)) changed = true;
+            if (d >= -base) kinds[d + base] = k;
+        }
+        byte tm = merge(old.tm, s.tm);
+        if (changed || tm != old.tm) {
+            blockStates.put(ip, new State(old.function, old.depth, base, kinds, tm, old.forks));
+            worklist.push(ip);
+        }
+    }
+
+    private static byte merge(byte a, byte b) {
+        return a == b ? a : a == CODE || b == CODE ? CODE : OTHER;
+    }
+
+    // stack astratto del blocco in esecuzione: kinds[base + d] è lo slot a profondità d
+    private byte[] kinds;
+    private int base;
+    private int forks;
+
+    // esegue in modo astratto il blocco che inizia in ip
+    private void interpret(int ip) throws VerifyException {
+        State s = blockStates.get(ip);
+        int function = s.function;
+        int depth = s.depth;
+        kinds = Arrays.copyOf(s.kinds, s.kinds.length + 8);
+        base = s.base;
+        forks = s.forks;
+        byte tm = s.tm;
+        ResourceBounds.FunctionUsage u = usage.computeIfAbsent(function, ResourceBounds.FunctionUsage::new);
+        int start = ip;
+        while (true) {
+            if (ip != start && ip < codeSize && leader[ip]) { // il blocco prosegue in un altro blocco
+                enter(ip, state(function, depth, tm), ip);
+                return;
+            }
+            if (ip >= codeSize)
+                throw new VerifyException("Execution falls off the end of the code", ip - 1);
+            int at = ip;
+            int bytecode = code[ip++];
+            int operand = ExecuteVM.hasOperand(bytecode) ? code[ip++] : 0;
+            // prima rimuovo gli operandi dallo stack: alloc non può togliere più valori di quelli messi dalla funzione
+            if (bytecode == SVMParser.ALLOC && operand >= depth)
+                throw new VerifyException("Alloc of more fields than the stack holds", at);
+            int pops = ExecuteVM.pops(bytecode, operand);
+            byte popped = OTHER;
+            boolean poppedCode = false;
+            for (int k = 0; k < pops; k++) {
+                depth--;
+                popped = depth + base >= 0 ? kinds[depth + base] : OTHER;
+                poppedCode |= popped == CODE;
+            }
+            u.minDepth = Math.min(u.minDepth, depth);
+            if ((function == 0 || forked.contains(function)) && depth < 0)
+                throw new VerifyException("Stack underflow", at);
+            // poi aggiungo i risultati e gestisco il flusso di controllo
+            byte pushed = OTHER;
+            boolean push = false;
+            switch (bytecode) {
+                case SVMParser.PUSH:
+                    push = true;
+                    pushed = codeRefs.contains(at + 1) ? CODE : CONST;
+                    break;
+                case SVMParser.ADD: case SVMParser.SUB: case SVMParser.MULT: case SVMParser.DIV:
+                    if (poppedCode) // ne risulterebbe un indirizzo nel mezzo di una funzione
+                        throw new VerifyException("Arithmetic on a code address", at);
+                    push = true;
+                    break;
+                case SVMParser.LOADW: case SVMParser.LOADHP: case SVMParser.GETFIELD:
+                    push = true;
+                    break;
+                case SVMParser.FORK: // segnaposto del risultato
+                    u.maxCallDepth = Math.max(u.maxCallDepth, depth);
+                    forks++;
+                    push = true;
+                    break;
+                case SVMParser.JOIN:
+                    if (operand > forks)
+                        throw new VerifyException("Join without fork", at);
+                    forks -= operand;
+                    break;
+                case SVMParser.LOADRA:
+                    push = true;
+                    pushed = RA;
+                    break;
+                case SVMParser.LOADFP:
+                    push = true;
+                    pushed = FP;
+                    break;
+                case SVMParser.LOADTM:
+                    push = true;
+                    pushed = tm;
+                    break;
+                case SVMParser.STORETM:
+                    tm = popped;
+                    break;
+                case SVMParser.ALLOC:
+                    push = true;
+                    if (allocs.add(at)) u.allocWords += operand + 1L;
+                    break;
+                case SVMParser.HALT:
+                    if (forked.contains(function) && (depth != 1 || forks != 0))
+                        throw new VerifyException("Forked code must leave exactly its result on the stack", at);
+                    return;
+                case SVMParser.BRANCH:
+                    if (operand <= at) u.loops = true;
+                    enter(operand, state(function, depth, tm), at);
+                    return;
+                case SVMParser.BRANCHEQ: case SVMParser.BRANCHLESSEQ:
+                    if (operand <= at) u.loops = true;
+                    enter(operand, state(function, depth, tm), at);
+                    enter(ip, state(function, depth, tm), at);
+                    return;
+                case SVMParser.JS:
+                    if (popped == RA) { // ritorno al chiamante
+                        if (function == 0 || forked.contains(function))
+                            throw new VerifyException("Return outside of a function", at);
+                        if (forks != 0)
+                            throw new VerifyException("Return with pending forks", at);
+                        Integer previous = returnDepth.putIfAbsent(function, depth);
+                        if (previous != null && previous != depth)
+                            throw new VerifyException("Inconsistent stack depth at return", at);
+                        return;
+                    }
+                    if (popped == CONST)
+                        throw new VerifyException("Call to an address that is not a function entry", at);
+                    u.maxCallDepth = Math.max(u.maxCallDepth, depth); // il chiamato parte da questa profondità
+                    enter(ip, state(function, callReturnDepth(depth, at), OTHER), at);
+                    return;
+                case SVMParser.INVOKEVIRTUAL:
+                    u.maxCallDepth = Math.max(u.maxCallDepth, depth);
+                    enter(ip, state(function, callReturnDepth(depth, at), OTHER), at);
+                    return;
+            }
+            if (push) {
+                if (depth + base < 0) { // slot sotto quelli noti: estendo kinds verso il basso
+                    int shift = -(depth + base);
+                    byte[] extended = new byte[kinds.length + shift];
+                    System.arraycopy(kinds, 0, extended, shift, kinds.length);
+                    kinds = extended;
+                    base += shift;
+                }
+                if (depth + base >= kinds.length) kinds = Arrays.copyOf(kinds, kinds.length * 2);
+                kinds[depth + base] = pushed;
+                depth++;
+                u.maxDepth = Math.max(u.maxDepth, depth);
+            }
+        }
+    }
+
+    /**
+     * Profondità dopo il ritorno di una chiamata: il chiamato rimuove l'access link (in cima),
+     * i parametri ed il control link, cioè il primo valore di $fp sotto l'access link, e mette
+     * al suo posto il risultato.
+     * */
+    private int callReturnDepth(int depth, int at) throws VerifyException {
+        for (int d = depth - 2; d >= 0; d--)
+            if (kinds[d + base] == FP) {
+                kinds[d + base] = OTHER; // risultato della chiamata
+                return d + 1;
+            }
+        throw new VerifyException("Call without control link", at);
+    }
+
+    private State state(int function, int depth, byte tm) {
+        return new State(function, depth, base, Arrays.copyOf(kinds, Math.max(depth + base, 0)), tm, forks);
+    }
+}
@@ -0,0 +1,16 @@
+package svm;
+
+public class VerifyException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public String text;
+
+    /**
+     * t è il messaggio, address l'indirizzo (nel codice) dell'istruzione rifiutata
+     * */
+    public VerifyException(String t, int address) {
+        text = t + " at address " + address;
+    }
+
+}